@@ -65,6 +65,26 @@ CREATE TABLE `tb_blog_comments`  (
 -- Records of tb_blog_comments
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for tb_cache_invalidation
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_cache_invalidation`;
+CREATE TABLE `tb_cache_invalidation`  (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `cache_key` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '要删除的Redis缓存key',
+  `local_cache_name` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '需要广播失效的本地缓存名称',
+  `local_key` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '本地缓存的key',
+  `retries` int(8) UNSIGNED NOT NULL DEFAULT 0 COMMENT '已重试次数',
+  `next_retry_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次重试时间',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_next_retry_time`(`next_retry_time`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '缓存失效本地消息表，与业务数据在同一事务中写入，失效成功后删除' ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Records of tb_cache_invalidation
+-- ----------------------------
+
 -- ----------------------------
 -- Table structure for tb_follow
 -- ----------------------------
@@ -99,6 +119,23 @@ CREATE TABLE `tb_seckill_voucher`  (
 -- Records of tb_seckill_voucher
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for tb_seckill_voucher_segment
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_seckill_voucher_segment`;
+CREATE TABLE `tb_seckill_voucher_segment`  (
+  `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '关联的优惠券的id',
+  `segment_no` int(4) UNSIGNED NOT NULL COMMENT '库存分段编号，从0开始',
+  `stock` int(8) NOT NULL COMMENT '分段库存',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`voucher_id`, `segment_no`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '秒杀优惠券分段库存表，热点券的库存拆分到多行' ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Records of tb_seckill_voucher_segment
+-- ----------------------------
+
 -- ----------------------------
 -- Table structure for tb_shop
 -- ----------------------------
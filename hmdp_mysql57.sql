@@ -54,6 +54,22 @@ CREATE TABLE `tb_blog_comments` (
   PRIMARY KEY (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4 COMMENT='探店评论表';
 
+-- ----------------------------
+-- Table structure for tb_cache_invalidation
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_cache_invalidation`;
+CREATE TABLE `tb_cache_invalidation` (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `cache_key` varchar(255) NOT NULL COMMENT '要删除的Redis缓存key',
+  `local_cache_name` varchar(64) DEFAULT NULL COMMENT '需要广播失效的本地缓存名称',
+  `local_key` varchar(255) DEFAULT NULL COMMENT '本地缓存的key',
+  `retries` int(8) UNSIGNED NOT NULL DEFAULT 0 COMMENT '已重试次数',
+  `next_retry_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次重试时间',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_next_retry_time` (`next_retry_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='缓存失效本地消息表，与业务数据在同一事务中写入，失效成功后删除';
+
 -- ----------------------------
 -- Table structure for tb_follow
 -- ----------------------------
@@ -80,6 +96,19 @@ CREATE TABLE `tb_seckill_voucher` (
   PRIMARY KEY (`voucher_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='秒杀优惠券表，与优惠券是一对一关系';
 
+-- ----------------------------
+-- Table structure for tb_seckill_voucher_segment
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_seckill_voucher_segment`;
+CREATE TABLE `tb_seckill_voucher_segment` (
+  `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '关联的优惠券的id',
+  `segment_no` int(4) UNSIGNED NOT NULL COMMENT '库存分段编号，从0开始',
+  `stock` int(8) NOT NULL COMMENT '分段库存',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`voucher_id`, `segment_no`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='秒杀优惠券分段库存表，热点券的库存拆分到多行';
+
 -- ----------------------------
 -- Table structure for tb_shop
 -- ----------------------------
@@ -0,0 +1,49 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheInvalidationBus;
+import com.hmdp.utils.IdBloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 布隆过滤器配置（防止缓存穿透）
+ *
+ * 过滤器在应用启动完成后由各自的业务从数据库全量构建，新增数据时增量写入；
+ * local模式之后按 hmdp.bloom.local-resync-interval-ms 定时重新构建，补上丢失的新增ID广播
+ *
+ * @author sqkstwj
+ * @since 2025-10-26
+ */
+@Configuration
+public class BloomFilterConfig {
+
+    /**
+     * 商铺ID布隆过滤器
+     */
+    @Bean
+    public IdBloomFilter shopBloomFilter(StringRedisTemplate stringRedisTemplate,
+                                         CacheInvalidationBus cacheInvalidationBus,
+                                         @Value("${hmdp.bloom.mode:local}") String mode,
+                                         @Value("${hmdp.bloom.shop.expected-insertions:1000000}") long expectedInsertions,
+                                         @Value("${hmdp.bloom.shop.fpp:0.01}") double fpp,
+                                         @Value("${hmdp.bloom.local-resync-interval-ms:600000}") long resyncIntervalMillis) {
+        return new IdBloomFilter("shop", mode, expectedInsertions, fpp, stringRedisTemplate, cacheInvalidationBus,
+                resyncIntervalMillis);
+    }
+
+    /**
+     * 优惠券ID布隆过滤器
+     */
+    @Bean
+    public IdBloomFilter voucherBloomFilter(StringRedisTemplate stringRedisTemplate,
+                                            CacheInvalidationBus cacheInvalidationBus,
+                                            @Value("${hmdp.bloom.mode:local}") String mode,
+                                            @Value("${hmdp.bloom.voucher.expected-insertions:100000}") long expectedInsertions,
+                                            @Value("${hmdp.bloom.voucher.fpp:0.01}") double fpp,
+                                            @Value("${hmdp.bloom.local-resync-interval-ms:600000}") long resyncIntervalMillis) {
+        return new IdBloomFilter("voucher", mode, expectedInsertions, fpp, stringRedisTemplate, cacheInvalidationBus,
+                resyncIntervalMillis);
+    }
+}
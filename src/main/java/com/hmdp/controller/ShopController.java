@@ -1,15 +1,15 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.service.ICacheWarmUpService;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.HotKeyDetector;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * <p>
@@ -26,6 +26,12 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private ICacheWarmUpService cacheWarmUpService;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
@@ -36,6 +42,17 @@ public class ShopController {
         return shopService.queryById(id);
     }
     
+    /**
+     * 批量查询商铺信息（列表页一次请求查询所有卡片）
+     * GET /shop/batch?ids=1,2,3
+     * @param ids 商铺id，最多100个
+     * @return 和ids顺序一致的商铺列表，不存在的商铺为null
+     */
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        return shopService.queryByIds(ids);
+    }
+    
     /**
      * 缓存预热接口（测试用）
      * 用于逻辑过期方案，提前将热点数据加载到Redis
@@ -54,6 +71,42 @@ public class ShopController {
         return Result.ok("缓存预热成功");
     }
     
+    /**
+     * 手动触发缓存预热（商铺类型、秒杀券、热门商铺），Redis数据丢失后使用
+     * POST /shop/cache/warm-up
+     */
+    @PostMapping("/cache/warm-up")
+    public Result warmUpCache() {
+        return cacheWarmUpService.warmUp();
+    }
+    
+    /**
+     * 查询缓存预热进度（状态、已写入数量、耗时、吞吐量）
+     * GET /shop/cache/warm-up
+     */
+    @GetMapping("/cache/warm-up")
+    public Result queryWarmUpProgress() {
+        return cacheWarmUpService.queryProgress();
+    }
+    
+    /**
+     * 查询商铺缓存的运行统计（请求合并次数、等待超时次数等）
+     * GET /shop/cache-stats
+     */
+    @GetMapping("/cache-stats")
+    public Result queryCacheStats() {
+        return shopService.queryCacheStats();
+    }
+    
+    /**
+     * 查询热点key（商铺、店铺优惠券列表）及最近的晋升、降级事件
+     * GET /shop/hot-keys
+     */
+    @GetMapping("/hot-keys")
+    public Result queryHotKeys() {
+        return Result.ok(hotKeyDetector.stats());
+    }
+    
     /**
      * 测试接口：验证当前使用的缓存方案
      * GET /shop/test/1
@@ -94,19 +147,18 @@ public class ShopController {
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param x 经度，传入坐标时按距离由近到远排序
+     * @param y 纬度
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByType(typeId, current, x, y);
     }
 
     /**
@@ -120,11 +172,7 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        // 从本地倒排索引搜索，索引不可用时查询数据库
+        return shopService.queryShopByName(name, current);
     }
 }
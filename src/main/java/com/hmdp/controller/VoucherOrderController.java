@@ -3,6 +3,8 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.UserLockRegistry;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,6 +27,9 @@ public class VoucherOrderController {
     @Resource
     private IVoucherOrderService voucherOrderService;
     
+    @Resource
+    private UserLockRegistry userLockRegistry;
+    
     /**
      * 秒杀优惠券
      * 
@@ -45,4 +50,35 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+    
+    /**
+     * 查询秒杀订单消息队列状态
+     * 
+     * 接口说明：
+     * GET /voucher-order/seckill/stats
+     * 
+     * 返回：Stream长度、积压量(lag)、pending数量、本节点消费速度等，
+     * 用于评估每个节点需要多少消费者
+     * 
+     * @return 统计信息
+     */
+    @GetMapping("seckill/stats")
+    public Result queryOrderStreamStats() {
+        return voucherOrderService.queryOrderStreamStats();
+    }
+    
+    /**
+     * 查询用户锁（一人一单）的竞争情况
+     * 
+     * 接口说明：
+     * GET /voucher-order/lock/stats
+     * 
+     * 返回：加锁模式，以及每个业务的加锁次数、竞争次数、平均/最长等待时间
+     * 
+     * @return 统计信息
+     */
+    @GetMapping("lock/stats")
+    public Result queryUserLockStats() {
+        return Result.ok(userLockRegistry.stats());
+    }
 }
@@ -0,0 +1,68 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 商铺类型列表快照（不可变）
+ *
+ * 同时保存列表和序列化好的响应体（Result.ok(list) 的JSON），首页请求直接返回 body，
+ * 不访问Redis、不反序列化、不重新序列化；内容变化时整体替换为新的快照
+ *
+ * body 和列表中的 ShopType 由所有请求共享，不能修改
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Getter
+public final class ShopTypeSnapshot {
+
+    /**
+     * 商铺类型列表
+     */
+    private final List<ShopType> types;
+
+    /**
+     * 序列化好的响应体
+     */
+    private final byte[] body;
+
+    /**
+     * 响应体的ETag（带引号），内容不变时ETag不变
+     */
+    private final String etag;
+
+    /**
+     * 快照生成时间
+     */
+    private final long createTime;
+
+    public ShopTypeSnapshot(List<ShopType> types, byte[] body, String etag) {
+        this.types = Collections.unmodifiableList(types);
+        this.body = body;
+        this.etag = etag;
+        this.createTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 判断客户端的 If-None-Match 是否包含当前的ETag（可能有多个值，或者带弱校验前缀 W/）
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
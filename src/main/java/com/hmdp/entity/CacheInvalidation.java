@@ -0,0 +1,66 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 缓存失效本地消息表，与业务数据在同一事务中写入，失效成功后删除
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_cache_invalidation")
+public class CacheInvalidation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 要删除的Redis缓存key
+     */
+    private String cacheKey;
+
+    /**
+     * 需要广播失效的本地缓存名称
+     */
+    private String localCacheName;
+
+    /**
+     * 本地缓存的key
+     */
+    private String localKey;
+
+    /**
+     * 已重试次数
+     */
+    private Integer retries;
+
+    /**
+     * 下次重试时间
+     */
+    private LocalDateTime nextRetryTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+
+}
@@ -0,0 +1,53 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 秒杀优惠券分段库存表，热点券的库存拆分到多行（联合主键 voucher_id + segment_no）
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_seckill_voucher_segment")
+public class SeckillVoucherSegment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 关联的优惠券的id
+     */
+    private Long voucherId;
+
+    /**
+     * 库存分段编号，从0开始
+     */
+    private Integer segmentNo;
+
+    /**
+     * 分段库存
+     */
+    private Integer stock;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+
+
+}
@@ -90,6 +90,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private LocalDateTime endTime;
 
+    /**
+     * 库存分段数（仅新增秒杀券时使用，大于1时把数据库库存拆分到多行，分散超热点券的行锁）
+     */
+    @TableField(exist = false)
+    private Integer stockSegments;
+
     /**
      * 创建时间
      */
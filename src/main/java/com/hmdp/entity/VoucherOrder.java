@@ -1,6 +1,7 @@
 package com.hmdp.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -77,5 +78,11 @@ public class VoucherOrder implements Serializable {
      */
     private LocalDateTime updateTime;
 
+    /**
+     * 扣减的数据库库存分段编号（分段库存的秒杀券才有；订单消息中为用户的主分段，异步写库时从这个分段开始扣减）
+     */
+    @TableField(exist = false)
+    private Integer stockSegment;
+
 
 }
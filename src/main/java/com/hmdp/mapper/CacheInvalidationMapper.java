@@ -0,0 +1,16 @@
+package com.hmdp.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.entity.CacheInvalidation;
+
+/**
+ * <p>
+ * 缓存失效本地消息表 Mapper 接口
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+public interface CacheInvalidationMapper extends BaseMapper<CacheInvalidation> {
+
+}
@@ -0,0 +1,16 @@
+package com.hmdp.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.entity.SeckillVoucherSegment;
+
+/**
+ * <p>
+ * 秒杀优惠券分段库存表 Mapper 接口
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+public interface SeckillVoucherSegmentMapper extends BaseMapper<SeckillVoucherSegment> {
+
+}
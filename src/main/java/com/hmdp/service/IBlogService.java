@@ -1,6 +1,7 @@
 package com.hmdp.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 
 /**
@@ -13,4 +14,9 @@ import com.hmdp.entity.Blog;
  */
 public interface IBlogService extends IService<Blog> {
 
+    Result likeBlog(Long id);
+
+    Result queryBlogLikes(Long id);
+
+    Result queryHotBlog(Integer current);
 }
@@ -0,0 +1,35 @@
+package com.hmdp.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.entity.CacheInvalidation;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存失效服务类
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+public interface ICacheInvalidationService extends IService<CacheInvalidation> {
+
+    /**
+     * 删除Redis缓存，并广播删除所有节点的本地缓存
+     *
+     * 在事务中调用时，事务提交后才删除（回滚时不删除），并在延迟一段时间后再删除一次；
+     * 删除失败时由本地消息表定时重试。不在事务中时立即删除
+     *
+     * @param cacheKey       Redis缓存key
+     * @param localCacheName 本地缓存名称（CacheInvalidationBus中注册的名称），没有本地缓存时为null
+     * @param localKey       本地缓存的key
+     */
+    void invalidate(String cacheKey, String localCacheName, String localKey);
+
+    /**
+     * 查询缓存失效的统计信息
+     * @return 立即删除、延迟删除、重试的次数，以及待重试的消息数量
+     */
+    Map<String, Object> stats();
+}
@@ -0,0 +1,26 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.Result;
+
+/**
+ * <p>
+ *  缓存预热服务类
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+public interface ICacheWarmUpService {
+
+    /**
+     * 手动触发缓存预热（异步执行）
+     * @return 是否已开始
+     */
+    Result warmUp();
+
+    /**
+     * 查询最近一次缓存预热的进度
+     * @return 进度、耗时、吞吐量
+     */
+    Result queryProgress();
+}
@@ -0,0 +1,47 @@
+package com.hmdp.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.entity.SeckillVoucherSegment;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 秒杀优惠券分段库存表 服务类
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+public interface ISeckillVoucherSegmentService extends IService<SeckillVoucherSegment> {
+
+    /**
+     * 把库存平均拆分成若干段（余数分给前面的分段）
+     * @param stock 总库存
+     * @param segments 分段数
+     * @return 每个分段的库存
+     */
+    static int[] split(int stock, int segments) {
+        int[] result = new int[segments];
+        for (int i = 0; i < segments; i++) {
+            result[i] = stock / segments + (i < stock % segments ? 1 : 0);
+        }
+        return result;
+    }
+
+    /**
+     * 查询秒杀券的所有分段（按分段编号排序），未分段的券返回空列表
+     * @param voucherId 优惠券ID
+     * @return 分段列表
+     */
+    List<SeckillVoucherSegment> listSegments(Long voucherId);
+
+    /**
+     * 扣减某个分段的库存（乐观锁：stock >= count 时才扣减）
+     * @param voucherId 优惠券ID
+     * @param segmentNo 分段编号
+     * @param count 扣减数量
+     * @return 是否扣减成功
+     */
+    boolean deductStock(Long voucherId, Integer segmentNo, int count);
+}
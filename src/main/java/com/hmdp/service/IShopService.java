@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,7 +18,19 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
     
+    Result queryByIds(List<Long> ids);
+    
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+    
+    Result queryShopByName(String name, Integer current);
+    
+    long loadShopGeo();
+    
     Result update(Shop shop);
     
     void saveShopToRedis(Long id, Long expireSeconds);
+    
+    void saveShopsToRedis(List<Shop> shops);
+    
+    Result queryCacheStats();
 }
@@ -3,10 +3,13 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * <p>
@@ -25,4 +28,12 @@ public interface IUserService extends IService<User> {
     Result logout(HttpServletRequest request);
     
     Result setPassword(String phone, String code, String password);
+
+    /**
+     * 批量查询用户的昵称、头像（列表页展示作者、点赞用户等）
+     *
+     * @param ids 用户id，可以重复
+     * @return 用户id -> 用户，不存在的用户不包含在结果中
+     */
+    Map<Long, UserDTO> queryUserProfiles(Collection<Long> ids);
 }
@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -27,4 +29,29 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
      * @return 订单ID
      */
     Result createVoucherOrder(Long voucherId);
+    
+    /**
+     * 创建优惠券订单（异步写库）
+     * @param voucherOrder 订单信息
+     */
+    void createVoucherOrder(VoucherOrder voucherOrder);
+    
+    /**
+     * 批量创建优惠券订单（组提交：合并扣库存 + 多行插入）
+     * @param voucherOrders 订单列表
+     */
+    void createVoucherOrderBatch(List<VoucherOrder> voucherOrders);
+    
+    /**
+     * 查询秒杀订单消息队列状态（积压量、pending数量、消费速度）
+     * @return 统计信息
+     */
+    Result queryOrderStreamStats();
+    
+    /**
+     * 将数据库中的秒杀券信息（库存、秒杀时间、已下单用户）加载到Redis，已经加载过的库存不会被覆盖
+     * @param voucherId 优惠券ID
+     * @return 秒杀券是否存在
+     */
+    boolean preloadSeckillVoucher(Long voucherId);
 }
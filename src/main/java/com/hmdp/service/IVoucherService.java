@@ -17,4 +17,12 @@ public interface IVoucherService extends IService<Voucher> {
     Result queryVoucherOfShop(Long shopId);
 
     void addSeckillVoucher(Voucher voucher);
+
+    /**
+     * 补充秒杀库存（同时清除各节点的售罄标记）
+     * @param voucherId 优惠券ID
+     * @param count 补充数量
+     * @return 操作结果
+     */
+    Result addSeckillStock(Long voucherId, Integer count);
 }
@@ -1,20 +1,248 @@
 package com.hmdp.service.impl;
 
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.RedisLockService;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_LIKED_FLUSH_KEY;
+
 /**
  * <p>
  *  服务实现类
  * </p>
  *
+ * 点赞：
+ * - 每篇博客的点赞用户保存在有序集合 blog:liked:{id}（用户id -> 点赞时间），同一个用户再次点赞时取消
+ * - 点赞、取消点赞的同时在 blog:liked-delta（博客id -> 增量）中累加点赞数的变化，一个Lua脚本中完成
+ * - 后台任务定时把增量批量写回 tb_blog.liked，一批博客一条UPDATE，点赞请求不再锁数据库中的博客行
+ *
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    /**
+     * 点赞排行榜返回的用户数量（最早点赞的N个用户）
+     */
+    private static final int BLOG_LIKES_TOP_N = 5;
+
+    /**
+     * 点赞、取消点赞脚本
+     */
+    private static final DefaultRedisScript<Long> BLOG_LIKE_SCRIPT;
+
+    static {
+        BLOG_LIKE_SCRIPT = new DefaultRedisScript<>();
+        BLOG_LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        BLOG_LIKE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private RedisLockService redisLockService;
+
+    /**
+     * 点赞数增量写回数据库的间隔（毫秒）
+     */
+    @Value("${hmdp.blog.liked-flush-interval-ms:5000}")
+    private long likedFlushIntervalMillis;
+
+    /**
+     * 每条UPDATE更新的博客数量
+     */
+    @Value("${hmdp.blog.liked-flush-batch-size:200}")
+    private int likedFlushBatchSize;
+
+    private ScheduledExecutorService likedFlushExecutor;
+
+    /**
+     * 已经确认存在的博客id（本节点），点赞热门博客时不再每次查询数据库
+     *
+     * 只缓存存在的博客：新发布的博客不会被缓存的"不存在"拒绝；博客不会被删除，
+     * 即使数据库中的博客被手工删除，写回点赞数的 UPDATE ... IN (ids) 也只会忽略它
+     */
+    private final Cache<Long, Boolean> existingBlogIds = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
+    @PostConstruct
+    private void init() {
+        likedFlushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "blog-liked-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        likedFlushExecutor.scheduleWithFixedDelay(this::flushLikedDeltas,
+                likedFlushIntervalMillis, likedFlushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        likedFlushExecutor.shutdownNow();
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        // 1.判断博客是否存在（先查本节点已经确认存在的博客）
+        if (!blogExists(id)) {
+            return Result.fail("博客不存在！");
+        }
+        // 2.点赞或取消点赞，同时记录点赞数增量
+        Long userId = UserHolder.getUser().getId();
+        Long result = stringRedisTemplate.execute(BLOG_LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKED_DELTA_KEY),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), id.toString());
+        // 3.返回是否点赞
+        return Result.ok(result != null && result > 0);
+    }
+
+    private boolean blogExists(Long id) {
+        if (existingBlogIds.getIfPresent(id) != null) {
+            return true;
+        }
+        if (query().select("id").eq("id", id).one() == null) {
+            return false;
+        }
+        existingBlogIds.put(id, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public Result queryBlogLikes(Long id) {
+        // 1.查询最早点赞的N个用户 zrange key 0 N-1
+        Set<String> top = stringRedisTemplate.opsForZSet().range(BLOG_LIKED_KEY + id, 0, BLOG_LIKES_TOP_N - 1);
+        if (top == null || top.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.批量查询用户，按点赞时间排序
+        List<Long> ids = top.stream().map(Long::valueOf).collect(Collectors.toList());
+        Map<Long, UserDTO> users = userService.queryUserProfiles(ids);
+        List<UserDTO> userDTOs = new ArrayList<>(ids.size());
+        for (Long userId : ids) {
+            UserDTO user = users.get(userId);
+            if (user != null) {
+                userDTOs.add(user);
+            }
+        }
+        return Result.ok(userDTOs);
+    }
+
+    @Override
+    public Result queryHotBlog(Integer current) {
+        // 1.按点赞数分页查询
+        Page<Blog> page = query()
+                .orderByDesc("liked")
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+        List<Blog> records = page.getRecords();
+        // 2.一次批量查询这一页的作者
+        Map<Long, UserDTO> users = userService.queryUserProfiles(
+                records.stream().map(Blog::getUserId).collect(Collectors.toList()));
+        // 3.填充作者昵称、头像
+        for (Blog blog : records) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+        return Result.ok(records);
+    }
+
+    /**
+     * 把点赞数增量批量写回数据库
+     *
+     * 1. 集群内只有一个节点执行（分布式锁）
+     * 2. 增量hash改名为 flushing（之后的点赞写入新的增量hash）；上次写回失败留下的 flushing 先处理
+     * 3. 每批博客一条 UPDATE ... CASE id WHEN ... END，成功后从 flushing 中删除这批博客
+     *    （UPDATE 成功、HDEL 之前节点宕机时，这一批会重复写回一次）
+     */
+    private void flushLikedDeltas() {
+        // 定时任务抛出异常后调度线程池不会再执行它：获取锁、释放锁的异常都不能抛出去
+        boolean locked = false;
+        try {
+            locked = redisLockService.tryLock(LOCK_BLOG_LIKED_FLUSH_KEY);
+            if (!locked) {
+                return;
+            }
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKED_FLUSHING_KEY))) {
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKED_DELTA_KEY))) {
+                    return;
+                }
+                stringRedisTemplate.rename(BLOG_LIKED_DELTA_KEY, BLOG_LIKED_FLUSHING_KEY);
+            }
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(BLOG_LIKED_FLUSHING_KEY);
+            List<Map.Entry<Object, Object>> deltas = new ArrayList<>(entries.entrySet());
+            for (int i = 0; i < deltas.size(); i += likedFlushBatchSize) {
+                flushBatch(deltas.subList(i, Math.min(deltas.size(), i + likedFlushBatchSize)));
+            }
+        } catch (Exception e) {
+            log.error("点赞数写回数据库失败，下次继续处理", e);
+        } finally {
+            if (locked) {
+                redisLockService.unlockQuietly(LOCK_BLOG_LIKED_FLUSH_KEY);
+            }
+        }
+    }
+
+    private void flushBatch(List<Map.Entry<Object, Object>> batch) {
+        StringBuilder sql = new StringBuilder("liked = GREATEST(CAST(IFNULL(liked, 0) AS SIGNED) + CASE id");
+        List<Long> ids = new ArrayList<>(batch.size());
+        Object[] fields = new Object[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            Map.Entry<Object, Object> entry = batch.get(i);
+            long blogId = Long.parseLong(entry.getKey().toString());
+            long delta = Long.parseLong(entry.getValue().toString());
+            fields[i] = entry.getKey();
+            if (delta != 0) {
+                ids.add(blogId);
+                sql.append(" WHEN ").append(blogId).append(" THEN ").append(delta);
+            }
+        }
+        sql.append(" ELSE 0 END, 0)");
+        if (!ids.isEmpty()) {
+            update().setSql(sql.toString()).in("id", ids).update();
+        }
+        stringRedisTemplate.opsForHash().delete(BLOG_LIKED_FLUSHING_KEY, fields);
+    }
 }
@@ -0,0 +1,275 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.entity.CacheInvalidation;
+import com.hmdp.mapper.CacheInvalidationMapper;
+import com.hmdp.service.ICacheInvalidationService;
+import com.hmdp.utils.CacheInvalidationBus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 缓存失效服务实现类
+ * </p>
+ *
+ * 原来在 @Transactional 方法中先更新数据库、再删除缓存，但删除发生在事务提交之前：
+ * 删除之后、提交之前，并发的读请求未命中缓存，从数据库读到旧数据又写回缓存，旧数据会一直保留到缓存过期。
+ *
+ * 改进：
+ * 1. 事务提交后再删除缓存（TransactionSynchronization.afterCommit），事务回滚时不删除
+ * 2. 延迟双删：提交后立即删除一次，延迟 double-delete-delay-ms 后再删除一次，
+ *    覆盖提交前已经读到旧数据、提交后才写回缓存的读请求
+ * 3. 本地消息表：失效消息和业务数据在同一事务中写入 tb_cache_invalidation，最后一次删除成功后才删除消息；
+ *    Redis不可用、节点宕机导致删除没有执行时，由定时任务扫描消息重试（按重试次数指数退避）
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Slf4j
+@Service
+public class CacheInvalidationServiceImpl extends ServiceImpl<CacheInvalidationMapper, CacheInvalidation> implements ICacheInvalidationService {
+
+    /**
+     * 每次扫描最多重试的消息数量
+     */
+    private static final int RETRY_BATCH_SIZE = 100;
+
+    /**
+     * 指数退避的最长间隔（毫秒）
+     */
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 300_000L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    /**
+     * 是否写入本地消息表
+     */
+    @Value("${hmdp.cache.invalidation.outbox:true}")
+    private boolean outboxEnabled;
+
+    /**
+     * 延迟双删的延迟时间（毫秒），0表示不延迟双删
+     */
+    @Value("${hmdp.cache.invalidation.double-delete-delay-ms:500}")
+    private long doubleDeleteDelayMillis;
+
+    /**
+     * 扫描待重试消息的间隔（毫秒）
+     */
+    @Value("${hmdp.cache.invalidation.retry-interval-ms:5000}")
+    private long retryIntervalMillis;
+
+    /**
+     * 最多重试次数
+     */
+    @Value("${hmdp.cache.invalidation.max-retries:10}")
+    private int maxRetries;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 统计：提交后立即删除、延迟删除、删除失败、重试成功的次数
+     */
+    private final AtomicLong immediateCount = new AtomicLong();
+    private final AtomicLong delayedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-invalidation");
+            t.setDaemon(true);
+            return t;
+        });
+        if (outboxEnabled) {
+            scheduler.scheduleWithFixedDelay(this::retryPending, retryIntervalMillis, retryIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        // 还没执行的延迟删除直接放弃，对应的消息还在本地消息表中，由其他节点或重启后重试
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void invalidate(String cacheKey, String localCacheName, String localKey) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            // 不在事务中，立即删除
+            execute(cacheKey, localCacheName, localKey, null);
+            return;
+        }
+        // 1. 失效消息与业务数据在同一事务中写入，事务回滚时一起回滚
+        //    在提交后的删除、延迟删除都完成之前，定时任务不会重试这条消息
+        Long messageId = outboxEnabled
+                ? saveMessage(cacheKey, localCacheName, localKey, retryIntervalMillis + doubleDeleteDelayMillis)
+                : null;
+        // 2. 事务提交后删除缓存
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                execute(cacheKey, localCacheName, localKey, messageId);
+            }
+        });
+    }
+
+    /**
+     * 立即删除一次，成功后按配置延迟再删除一次，最后一次删除成功后删除失效消息
+     *
+     * @param messageId 本地消息表中的消息id，没有时为null
+     */
+    private void execute(String cacheKey, String localCacheName, String localKey, Long messageId) {
+        try {
+            delete(cacheKey, localCacheName, localKey);
+            immediateCount.incrementAndGet();
+        } catch (Exception e) {
+            onFailure(cacheKey, localCacheName, localKey, messageId, e);
+            return;
+        }
+        if (doubleDeleteDelayMillis <= 0) {
+            // afterCommit 中的连接还处于事务状态，删除消息交给后台线程执行
+            removeMessageAsync(messageId);
+            return;
+        }
+        scheduler.schedule(() -> {
+            try {
+                delete(cacheKey, localCacheName, localKey);
+                delayedCount.incrementAndGet();
+            } catch (Exception e) {
+                onFailure(cacheKey, localCacheName, localKey, messageId, e);
+                return;
+            }
+            removeMessage(messageId);
+        }, doubleDeleteDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void delete(String cacheKey, String localCacheName, String localKey) {
+        stringRedisTemplate.delete(cacheKey);
+        if (localCacheName != null) {
+            cacheInvalidationBus.publish(localCacheName, localKey);
+        }
+    }
+
+    /**
+     * 删除失败：已经有消息时等待定时任务重试，没有消息时补写一条
+     */
+    private void onFailure(String cacheKey, String localCacheName, String localKey, Long messageId, Exception e) {
+        failedCount.incrementAndGet();
+        log.warn("缓存删除失败，等待重试，key={}", cacheKey, e);
+        if (messageId != null || !outboxEnabled) {
+            return;
+        }
+        try {
+            saveMessage(cacheKey, localCacheName, localKey, 0);
+        } catch (Exception ex) {
+            log.error("缓存失效消息写入失败，key={}", cacheKey, ex);
+        }
+    }
+
+    private Long saveMessage(String cacheKey, String localCacheName, String localKey, long retryDelayMillis) {
+        CacheInvalidation message = new CacheInvalidation()
+                .setCacheKey(cacheKey)
+                .setLocalCacheName(localCacheName)
+                .setLocalKey(localKey)
+                .setRetries(0)
+                .setNextRetryTime(LocalDateTime.now().plus(retryDelayMillis, ChronoUnit.MILLIS));
+        save(message);
+        return message.getId();
+    }
+
+    private void removeMessageAsync(Long messageId) {
+        if (messageId != null) {
+            scheduler.execute(() -> removeMessage(messageId));
+        }
+    }
+
+    private void removeMessage(Long messageId) {
+        if (messageId == null) {
+            return;
+        }
+        try {
+            removeById(messageId);
+        } catch (Exception e) {
+            // 消息没有删除只会导致多删除一次缓存
+            log.warn("缓存失效消息删除失败，id={}", messageId, e);
+        }
+    }
+
+    /**
+     * 定时重试到期的失效消息
+     */
+    private void retryPending() {
+        try {
+            List<CacheInvalidation> messages = query()
+                    .le("next_retry_time", LocalDateTime.now())
+                    .lt("retries", maxRetries)
+                    .orderByAsc("next_retry_time")
+                    .last("limit " + RETRY_BATCH_SIZE)
+                    .list();
+            for (CacheInvalidation message : messages) {
+                retry(message);
+            }
+        } catch (Exception e) {
+            log.warn("扫描缓存失效消息失败", e);
+        }
+    }
+
+    private void retry(CacheInvalidation message) {
+        try {
+            delete(message.getCacheKey(), message.getLocalCacheName(), message.getLocalKey());
+            retriedCount.incrementAndGet();
+            removeMessage(message.getId());
+        } catch (Exception e) {
+            int retries = message.getRetries() + 1;
+            long backoff = Math.min(retryIntervalMillis << Math.min(retries, 16), MAX_RETRY_BACKOFF_MILLIS);
+            update().set("retries", retries)
+                    .set("next_retry_time", LocalDateTime.now().plus(backoff, ChronoUnit.MILLIS))
+                    .eq("id", message.getId())
+                    .update();
+            if (retries >= maxRetries) {
+                log.error("缓存删除重试{}次仍然失败，不再重试，key={}", retries, message.getCacheKey(), e);
+            } else {
+                log.warn("缓存删除重试失败，{}ms后再次重试，key={}", backoff, message.getCacheKey(), e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("outbox", outboxEnabled);
+        result.put("doubleDeleteDelayMs", doubleDeleteDelayMillis);
+        result.put("immediate", immediateCount.get());
+        result.put("delayed", delayedCount.get());
+        result.put("failed", failedCount.get());
+        result.put("retried", retriedCount.get());
+        if (outboxEnabled) {
+            result.put("pending", query().lt("retries", maxRetries).count());
+            result.put("exhausted", query().ge("retries", maxRetries).count());
+        }
+        return result;
+    }
+}
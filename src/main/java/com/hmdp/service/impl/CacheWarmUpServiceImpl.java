@@ -0,0 +1,315 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.ICacheWarmUpService;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 缓存预热服务实现类
+ * </p>
+ *
+ * Redis数据丢失或新版本发布后，缓存全部未命中，所有请求都会打到MySQL。
+ * 预热在应用启动时（以及手动触发时）把热点数据提前写入Redis：
+ * 1. 商铺类型列表
+ * 2. 进行中和未开始的秒杀券（库存、秒杀时间、已下单用户，已存在的库存不会被覆盖）
+ * 3. 销量、评论数最高的 shop-top-n 个商铺：主线程分页读取MySQL，
+ *    每页交给工作线程通过一次pipeline写入逻辑过期缓存；在途任务数固定，
+ *    写入跟不上时主线程等待空位（最多等到截止时间），不会一次把所有数据读进内存
+ * 4. 所有商铺的坐标，按类型导入GEO集合（附近商铺查询），同样交给工作线程执行
+ *
+ * timeout-seconds 是整个预热阶段的截止时间：主线程每读一页、每提交一个任务前都检查剩余时间，
+ * 到期后不再提交，并中断仍在执行的任务，所以启动最多被预热拖慢 timeout-seconds 秒。
+ *
+ * 启动时的预热在 ApplicationStartedEvent 中同步执行，开始时发布 ReadinessState.REFUSING_TRAFFIC，
+ * 结束（完成、超时或失败）后发布 ACCEPTING_TRAFFIC。Tomcat 在这之前已经开始接受连接，
+ * 就绪状态只对读取它的一方生效：引入 spring-boot-starter-actuator 并开启
+ * management.endpoint.health.probes.enabled 后，负载均衡或 k8s 可以通过 /actuator/health/readiness 看到它。
+ * 手动触发的预热不改变就绪状态
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Slf4j
+@Service
+public class CacheWarmUpServiceImpl implements ICacheWarmUpService {
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 启动时是否执行预热
+     */
+    @Value("${hmdp.warm-up.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 预热的商铺数量（按销量、评论数排序）
+     */
+    @Value("${hmdp.warm-up.shop-top-n:10000}")
+    private int shopTopN;
+
+    /**
+     * 每页从MySQL读取、每次pipeline写入的商铺数量
+     */
+    @Value("${hmdp.warm-up.page-size:500}")
+    private int pageSize;
+
+    /**
+     * 写入Redis的工作线程数
+     */
+    @Value("${hmdp.warm-up.threads:4}")
+    private int threads;
+
+    /**
+     * 整个预热阶段的最长时间（秒），超时后停止预热，实例照常就绪
+     */
+    @Value("${hmdp.warm-up.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Progress progress;
+
+    /**
+     * 应用启动后同步预热，预热结束前就绪状态为 REFUSING_TRAFFIC
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void warmUpOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        try {
+            runWarmUp("startup");
+        } finally {
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    @Override
+    public Result warmUp() {
+        if (running.get()) {
+            return Result.fail("缓存预热正在进行中！");
+        }
+        Thread thread = new Thread(() -> runWarmUp("manual"), "cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return Result.ok();
+    }
+
+    @Override
+    public Result queryProgress() {
+        Progress current = progress;
+        if (current == null) {
+            return Result.ok(Collections.singletonMap("state", "NOT_STARTED"));
+        }
+        return Result.ok(current.toMap());
+    }
+
+    private void runWarmUp(String trigger) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        Progress current = new Progress(trigger);
+        progress = current;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "cache-warm-up-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // 在途任务（执行中 + 排队中）的上限，主线程拿不到许可时等待，而不是自己执行任务
+        Semaphore inFlight = new Semaphore(threads * 3);
+        log.info("开始缓存预热，trigger={}，shopTopN={}，pageSize={}，threads={}，timeoutSeconds={}",
+                trigger, shopTopN, pageSize, threads, timeoutSeconds);
+        try {
+            // 1. 商铺类型
+            current.shopTypes.set(shopTypeService.saveTypeListToRedis());
+
+            // 2. 进行中和未开始的秒杀券
+            warmUpSeckillVouchers(pool, inFlight, deadline, current);
+
+            // 3. 热门商铺
+            warmUpShops(pool, inFlight, deadline, current);
+
+            // 4. 商铺坐标
+            submit(pool, inFlight, deadline, current, () -> current.geoShops.set(shopService.loadShopGeo()));
+
+            pool.shutdown();
+            if (pool.awaitTermination(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+                current.finish("DONE", null);
+            } else {
+                current.finish("TIMEOUT", "预热超过" + timeoutSeconds + "秒");
+            }
+        } catch (TimeoutException e) {
+            current.finish("TIMEOUT", "预热超过" + timeoutSeconds + "秒");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current.finish("FAILED", "预热被中断");
+        } catch (Exception e) {
+            log.error("缓存预热失败", e);
+            current.finish("FAILED", e.getMessage());
+        } finally {
+            pool.shutdownNow();
+            running.set(false);
+        }
+        log.info("缓存预热结束：{}", current.toMap());
+    }
+
+    private void warmUpSeckillVouchers(ThreadPoolExecutor pool, Semaphore inFlight, long deadline, Progress current)
+            throws InterruptedException, TimeoutException {
+        List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                .select("voucher_id")
+                .ge("end_time", LocalDateTime.now())
+                .list();
+        for (SeckillVoucher voucher : vouchers) {
+            submit(pool, inFlight, deadline, current, () -> {
+                if (voucherOrderService.preloadSeckillVoucher(voucher.getVoucherId())) {
+                    current.seckillVouchers.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private void warmUpShops(ThreadPoolExecutor pool, Semaphore inFlight, long deadline, Progress current)
+            throws InterruptedException, TimeoutException {
+        for (int page = 1; (long) (page - 1) * pageSize < shopTopN; page++) {
+            if (remainingMillis(deadline) <= 0) {
+                throw new TimeoutException();
+            }
+            List<Shop> shops = shopService.query()
+                    .orderByDesc("sold")
+                    .orderByDesc("comments")
+                    .orderByAsc("id")
+                    .page(new Page<>(page, pageSize, false))
+                    .getRecords();
+            if (shops.isEmpty()) {
+                break;
+            }
+            int remaining = shopTopN - (page - 1) * pageSize;
+            List<Shop> batch = shops.size() > remaining ? shops.subList(0, remaining) : shops;
+            current.shopPages.incrementAndGet();
+            submit(pool, inFlight, deadline, current, () -> {
+                shopService.saveShopsToRedis(batch);
+                current.shops.addAndGet(batch.size());
+            });
+            if (shops.size() < pageSize) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 等待在途任务的空位并提交，截止时间前等不到空位则抛出 TimeoutException
+     */
+    private void submit(ThreadPoolExecutor pool, Semaphore inFlight, long deadline, Progress current, Runnable task)
+            throws InterruptedException, TimeoutException {
+        if (!inFlight.tryAcquire(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException();
+        }
+        pool.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                current.failedTasks.incrementAndGet();
+                log.warn("缓存预热任务失败", e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * 预热进度
+     */
+    private static class Progress {
+        private final String trigger;
+        private final long startMillis = System.currentTimeMillis();
+        private volatile long endMillis;
+        private volatile String state = "RUNNING";
+        private volatile String error;
+        private final AtomicInteger shopTypes = new AtomicInteger();
+        private final AtomicInteger seckillVouchers = new AtomicInteger();
+        private final AtomicInteger shopPages = new AtomicInteger();
+        private final AtomicLong shops = new AtomicLong();
+        private final AtomicLong geoShops = new AtomicLong();
+        private final AtomicInteger failedTasks = new AtomicInteger();
+
+        private Progress(String trigger) {
+            this.trigger = trigger;
+        }
+
+        private void finish(String state, String error) {
+            this.endMillis = System.currentTimeMillis();
+            this.error = error;
+            this.state = state;
+        }
+
+        private Map<String, Object> toMap() {
+            long durationMillis = (endMillis == 0 ? System.currentTimeMillis() : endMillis) - startMillis;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("state", state);
+            map.put("trigger", trigger);
+            map.put("startTime", startMillis);
+            map.put("durationMs", durationMillis);
+            map.put("shopTypes", shopTypes.get());
+            map.put("seckillVouchers", seckillVouchers.get());
+            map.put("shopPages", shopPages.get());
+            map.put("shops", shops.get());
+            map.put("shopsPerSecond", durationMillis == 0 ? 0 : shops.get() * 1000 / durationMillis);
+            map.put("geoShops", geoShops.get());
+            map.put("failedTasks", failedTasks.get());
+            map.put("error", error);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.entity.SeckillVoucherSegment;
+import com.hmdp.mapper.SeckillVoucherSegmentMapper;
+import com.hmdp.service.ISeckillVoucherSegmentService;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 秒杀优惠券分段库存表 服务实现类
+ * </p>
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+@Service
+public class SeckillVoucherSegmentServiceImpl extends ServiceImpl<SeckillVoucherSegmentMapper, SeckillVoucherSegment> implements ISeckillVoucherSegmentService {
+
+    @Override
+    public List<SeckillVoucherSegment> listSegments(Long voucherId) {
+        return query()
+                .eq("voucher_id", voucherId)
+                .orderByAsc("segment_no")
+                .list();
+    }
+
+    @Override
+    public boolean deductStock(Long voucherId, Integer segmentNo, int count) {
+        return update()
+                .setSql("stock = stock - " + count)
+                .eq("voucher_id", voucherId)
+                .eq("segment_no", segmentNo)
+                .ge("stock", count)
+                .update();
+    }
+}
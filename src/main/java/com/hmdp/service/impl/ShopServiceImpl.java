@@ -1,27 +1,78 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.ICacheInvalidationService;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidationBus;
+import com.hmdp.utils.CachePolicy;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.IdBloomFilter;
+import com.hmdp.utils.RedisLockService;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.SingleFlight;
+import com.hmdp.utils.TransactionHooks;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
-import java.util.Random;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.MAX_BATCH_QUERY_SIZE;
+import static com.hmdp.utils.SystemConstants.MAX_PAGE_SIZE;
 
 
 /**
@@ -36,270 +87,823 @@ import static com.hmdp.utils.RedisConstants.*;
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
+    @Resource
+    private CacheClient cacheClient;
+    
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Resource
+    private ICacheInvalidationService cacheInvalidationService;
+    
+    /**
+     * 商铺ID布隆过滤器：拦截不存在的商铺ID，不访问Redis和MySQL
+     */
+    @Resource
+    private IdBloomFilter shopBloomFilter;
+    
+    @Resource
+    private IdBloomFilter voucherBloomFilter;
+    
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     
-    private static final Random RANDOM = new Random();
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    
+    @Resource
+    private ShopNameIndex shopNameIndex;
+    
+    @Resource
+    private RedisLockService redisLockService;
     
     /**
-     * 线程池：用于逻辑过期方案中异步重建缓存
+     * 商铺缓存策略：逻辑过期（热点数据，保证可用性），逻辑过期时间30~39分钟，
+     * 过期前按重建耗时概率性提前刷新（XFetch），热点商铺几乎不会读到过期数据
      * 
-     * 为什么需要线程池？
-     * - 逻辑过期方案中，重建缓存是异步的，不能阻塞查询线程
-     * - 使用固定大小的线程池，避免创建过多线程导致系统资源耗尽
-     * - 10个线程足够处理缓存重建任务
+     * 可选：CacheStrategy.MUTEX 互斥锁方案（保证一致性）
      */
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    private static final CachePolicy SHOP_CACHE_POLICY =
+            CachePolicy.of(CacheStrategy.LOGICAL_EXPIRE, CACHE_SHOP_TTL, 10, TimeUnit.MINUTES)
+                    .withEarlyRefresh(1.0);
     
-    @Override
-    public Result queryById(Long id) {
-        // 方案1：使用互斥锁解决缓存击穿问题（保证一致性）
-        //return queryWithMutex(id);
-        
-        // 方案2：使用逻辑过期解决缓存击穿问题（保证高可用）
-        return queryWithLogicalExpire(id);
+    /**
+     * 商铺缓存在失效广播、热点探测中的名称
+     */
+    private static final String SHOP_CACHE_NAME = "shop";
+    
+    /**
+     * 商铺本地索引（网格索引、名称索引）在失效广播中的名称
+     */
+    private static final String SHOP_INDEX_NAME = "shop-index";
+    
+    /**
+     * 构建布隆过滤器时每批查询的ID数量
+     */
+    private static final int BLOOM_REBUILD_BATCH_SIZE = 5000;
+    
+    /**
+     * 导入GEO集合时每批查询的商铺数量
+     */
+    private static final int GEO_LOAD_BATCH_SIZE = 1000;
+    
+    /**
+     * 类型id集合的占位成员（商铺id从1开始，分数为0，排在最前面）
+     */
+    private static final String TYPE_IDS_PLACEHOLDER = "0";
+    
+    /**
+     * 重建类型id集合时每条ZADD写入的商铺数量
+     */
+    private static final int TYPE_IDS_WRITE_BATCH_SIZE = 1000;
+    
+    /**
+     * 重建期间集合被修改时最多重建的次数，仍然被修改则删除集合，由下一次查询重建
+     */
+    private static final int TYPE_IDS_REBUILD_ATTEMPTS = 3;
+    
+    /**
+     * 集合存在时才添加成员的脚本
+     */
+    private static final DefaultRedisScript<Long> ZADD_IF_EXISTS_SCRIPT;
+    
+    static {
+        ZADD_IF_EXISTS_SCRIPT = new DefaultRedisScript<>();
+        ZADD_IF_EXISTS_SCRIPT.setLocation(new ClassPathResource("zadd_if_exists.lua"));
+        ZADD_IF_EXISTS_SCRIPT.setResultType(Long.class);
     }
     
     /**
-     * 使用互斥锁解决缓存击穿问题
-     * 
-     * 缓存击穿：热点key过期瞬间，大量请求同时查询数据库，导致数据库压力剧增
+     * 同一类型的id集合同时只有一个线程重建
+     */
+    private final SingleFlight<Integer, Boolean> typeIdsFlight = new SingleFlight<>();
+    
+    /**
+     * 等待其他线程重建类型id集合的最长时间
+     */
+    @Value("${hmdp.cache.single-flight-timeout-ms:3000}")
+    private long singleFlightTimeoutMillis;
+    
+    /**
+     * 按距离查询附近商铺的半径（米）
+     */
+    @Value("${hmdp.shop.geo.radius-meters:5000}")
+    private double geoRadiusMeters;
+    
+    private static final String GEO_ENGINE_LOCAL = "local";
+    
+    /**
+     * 附近商铺的查询方式：redis（GEOSEARCH，Redis异常时降级到本地网格索引）/ local（只查本地网格索引）
+     */
+    @Value("${hmdp.shop.geo.engine:redis}")
+    private String geoEngine;
+    
+    /**
+     * GEO集合是否已经全量导入（shop:geo:loaded 存在），导入完成前附近商铺查询不使用GEOSEARCH
+     */
+    private volatile boolean shopGeoLoaded;
+    
+    /**
+     * 本节点是否正在后台导入GEO集合
+     */
+    private final AtomicBoolean shopGeoLoading = new AtomicBoolean();
+    
+    /**
+     * 是否构建本节点的网格索引
+     */
+    @Value("${hmdp.shop.geo.index.enabled:true}")
+    private boolean geoIndexEnabled;
+    
+    /**
+     * 构建名称索引时每批查询的商铺数量
+     */
+    private static final int NAME_INDEX_LOAD_BATCH_SIZE = 5000;
+    
+    /**
+     * 是否构建本节点的名称索引
+     */
+    @Value("${hmdp.shop.name-index.enabled:true}")
+    private boolean nameIndexEnabled;
+    
+    /**
+     * L1本地缓存的最大条数（Caffeine，W-TinyLFU淘汰策略，热门商铺不会被偶发访问的冷门商铺挤出）
+     */
+    @Value("${hmdp.cache.shop.l1-max-size:1000}")
+    private long l1MaxSize;
+    
+    /**
+     * L1本地缓存的有效期（秒），兜底失效广播丢失的情况
+     */
+    @Value("${hmdp.cache.shop.l1-ttl-seconds:60}")
+    private long l1TtlSeconds;
+    
+    /**
+     * L1：JVM本地缓存，命中时不访问Redis，也不需要反序列化
+     */
+    private Cache<Long, Shop> shopLocalCache;
+    
+    /**
+     * 本地索引刷新线程（从数据库读取商铺，不能占用Redis发布订阅的监听线程）
+     */
+    private ExecutorService indexRefreshExecutor;
+    
+    /**
+     * 等待刷新本地索引的商铺id，同一个商铺排队期间收到的多次通知只刷新一次
+     */
+    private final Set<Long> pendingIndexRefresh = ConcurrentHashMap.newKeySet();
+    
+    @PostConstruct
+    private void initLocalCache() {
+        shopLocalCache = Caffeine.newBuilder()
+                .maximumSize(l1MaxSize)
+                .expireAfterWrite(l1TtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        // 热点商铺的本地副本从Redis缓存加载
+        hotKeyDetector.register(SHOP_CACHE_NAME,
+                key -> cacheClient.query(CACHE_SHOP_KEY, Long.valueOf(key), Shop.class, this::getById, SHOP_CACHE_POLICY));
+        // 任意节点新增、更新商铺后，所有节点删除L1中的旧数据、刷新热点副本（延迟双删时会收到两次）
+        cacheInvalidationBus.register(SHOP_CACHE_NAME, key -> {
+            shopLocalCache.invalidate(Long.valueOf(key));
+            hotKeyDetector.refresh(SHOP_CACHE_NAME, key);
+        });
+        // 网格索引和名称索引：事务提交后只广播一次，由单独的线程查询数据库后更新
+        indexRefreshExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "shop-index-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        cacheInvalidationBus.register(SHOP_INDEX_NAME, key -> submitIndexRefresh(Long.valueOf(key)));
+    }
+    
+    @PreDestroy
+    private void destroyIndexRefresh() {
+        indexRefreshExecutor.shutdownNow();
+    }
+    
+    private void submitIndexRefresh(Long id) {
+        if (!pendingIndexRefresh.add(id)) {
+            return;
+        }
+        indexRefreshExecutor.execute(() -> {
+            // 先移除再查询，查询期间的新通知会重新排队
+            pendingIndexRefresh.remove(id);
+            try {
+                refreshLocalIndexes(id);
+            } catch (Exception e) {
+                log.warn("刷新商铺本地索引失败，shopId={}", id, e);
+            }
+        });
+    }
+    
+    /**
+     * 事务提交后通知所有节点刷新商铺的网格索引和名称索引
+     */
+    private void publishIndexRefresh(Long id) {
+        TransactionHooks.afterCommit(() -> {
+            try {
+                cacheInvalidationBus.publish(SHOP_INDEX_NAME, id.toString());
+            } catch (Exception e) {
+                // 其他节点的本地索引保持旧数据，直到下次修改或重启后重建
+                log.warn("广播商铺本地索引刷新失败，shopId={}", id, e);
+            }
+        });
+    }
+    
+    /**
+     * 根据id查询商铺
      * 
-     * 解决思路：
-     * 1. 缓存未命中时，不是直接查数据库，而是先尝试获取互斥锁
-     * 2. 获取锁成功的线程：查询数据库 → 重建缓存 → 释放锁
-     * 3. 获取锁失败的线程：等待一段时间后重试（循环查询缓存）
-     * 4. 最终所有线程都能从缓存获取数据，只有一个线程访问了数据库
+     * 0. 布隆过滤器拦截不存在的ID
+     * 1. 热点商铺直接读本节点的热点副本（HotKeyDetector抽样统计访问次数，自动晋升，定时刷新）
+     * 2. 再查L1本地缓存
+     * 3. 再查L2 Redis缓存（CacheClient，逻辑过期 + 缓存空值 + 请求合并 + 分布式锁）
+     * 4. 查到的数据放入L1（逻辑过期的旧数据最多在L1中多保留 l1-ttl-seconds）
      * 
      * @param id 商铺ID
      * @return 商铺信息
      */
-    public Result queryWithMutex(Long id) {
-        String key = CACHE_SHOP_KEY + id;
+    @Override
+    public Result queryById(Long id) {
+        // 0. 布隆过滤器判断一定不存在的商铺直接返回（随机ID攻击）
+        if (!shopBloomFilter.mightContain(id)) {
+            return Result.fail("店铺不存在！");
+        }
         
-        // 1. 从Redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-
-        // 2. 判断缓存是否命中
-        if(StrUtil.isNotBlank(shopJson)) {
-            // 3. 命中，直接返回商铺信息
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
+        // 1. 热点商铺：读本节点的热点副本
+        Shop shop = hotKeyDetector.get(SHOP_CACHE_NAME, id);
+        if (shop != null) {
             return Result.ok(shop);
         }
         
-        // 4. 判断命中的是否是空值（用于解决缓存穿透）
-        // 注意：空字符串 "" 不是 null，StrUtil.isNotBlank会返回false
-        if(shopJson != null){
-            // 命中的是空值，说明数据库也没有这个商铺
-            return Result.fail("店铺信息不存在！");
+        // 2. 查L1本地缓存
+        shop = shopLocalCache.getIfPresent(id);
+        if (shop != null) {
+            return Result.ok(shop);
         }
         
-        // 5. 未命中，需要查询数据库重建缓存
-        // 5.1 尝试获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;  // lock:shop:1
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            
-            // 5.2 判断是否获取锁成功
-            if(!isLock) {
-                // 5.3 获取锁失败，说明有其他线程正在重建缓存
-                // 等待一段时间后，递归重试（重新查询缓存）
-                Thread.sleep(50);  // 休眠50ms
-                return queryWithMutex(id);  // 递归调用，重新查询缓存
+        // 3. 查询Redis缓存，未命中时由CacheClient查询数据库并重建
+        shop = cacheClient.query(CACHE_SHOP_KEY, id, Shop.class, this::getById, SHOP_CACHE_POLICY);
+        if (shop == null) {
+            return Result.fail("店铺不存在！");
+        }
+        
+        // 4. 放入L1本地缓存
+        shopLocalCache.put(id, shop);
+        return Result.ok(shop);
+    }
+    
+    /**
+     * 根据id批量查询商铺（保持和 queryById 相同的保护）
+     * 
+     * 0. 布隆过滤器拦截不存在的ID
+     * 1. 依次查热点副本、L1本地缓存
+     * 2. 剩余的ID一次MGET查询Redis，未命中的ID用一条IN查询加载，并通过一次pipeline写回（CacheClient.queryBatch）
+     * 3. 查到的数据放入L1
+     * 
+     * @param ids 商铺ID
+     * @return 和ids顺序一致的商铺列表，不存在的商铺为null
+     */
+    @Override
+    public Result queryByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        if (ids.size() > MAX_BATCH_QUERY_SIZE) {
+            return Result.fail("一次最多查询" + MAX_BATCH_QUERY_SIZE + "个商铺！");
+        }
+        return Result.ok(listShopsByIds(ids));
+    }
+    
+    private List<Shop> listShopsByIds(List<Long> ids) {
+        Map<Long, Shop> shops = new HashMap<>(ids.size());
+        List<Long> remaining = new ArrayList<>();
+        for (Long id : ids) {
+            // 0. 布隆过滤器判断一定不存在的商铺
+            if (id == null || shops.containsKey(id) || !shopBloomFilter.mightContain(id)) {
+                continue;
             }
-            
-            // 5.4 获取锁成功，查询数据库
-            // DoubleCheck：再次检查缓存，防止在等待锁的期间，缓存已经被其他线程重建
-            shopJson = stringRedisTemplate.opsForValue().get(key);
-            if(StrUtil.isNotBlank(shopJson)) {
-                // 缓存已存在，直接返回
-                shop = JSONUtil.toBean(shopJson, Shop.class);
-                return Result.ok(shop);
+            // 1. 热点副本、L1本地缓存
+            Shop shop = hotKeyDetector.get(SHOP_CACHE_NAME, id);
+            if (shop == null) {
+                shop = shopLocalCache.getIfPresent(id);
             }
-            
-            // 6. 缓存确实不存在，查询数据库
-            shop = getById(id);
-
-            // 模拟重建缓存的延迟（方便测试，生产环境删除）
-            // Thread.sleep(200);
-
-            // 7. 数据库中也不存在该商铺
-            if(shop == null){
-                // 将空值写入Redis，防止缓存穿透（恶意攻击不存在的ID）
-                long expireTime = CACHE_NULL_TTL + RANDOM.nextInt(2);  // 2~3分钟随机
-                stringRedisTemplate.opsForValue().set(key, "", expireTime, TimeUnit.MINUTES);
-                return Result.fail("店铺不存在！");
+            if (shop != null) {
+                shops.put(id, shop);
+            } else {
+                remaining.add(id);
             }
-
-            // 8. 数据库存在，写入Redis缓存
-            long expireTime = CACHE_SHOP_TTL + RANDOM.nextInt(10);  // 30~39分钟随机
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), 
-                expireTime, TimeUnit.MINUTES);
-                
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 9. 释放互斥锁（无论成功失败都要释放）
-            unlock(lockKey);
         }
-
-        // 10. 返回商铺信息
-        return Result.ok(shop);
+        
+        // 2. 批量查询Redis缓存，未命中的一次查询数据库
+        if (!remaining.isEmpty()) {
+            List<Shop> loaded = cacheClient.queryBatch(CACHE_SHOP_KEY, remaining, Shop.class, this::listShopMapByIds, SHOP_CACHE_POLICY);
+            for (Shop shop : loaded) {
+                if (shop != null) {
+                    // 3. 放入L1本地缓存
+                    shopLocalCache.put(shop.getId(), shop);
+                    shops.put(shop.getId(), shop);
+                }
+            }
+        }
+        
+        List<Shop> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            result.add(shops.get(id));
+        }
+        return result;
+    }
+    
+    private Map<Long, Shop> listShopMapByIds(Collection<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
     }
     
     /**
-     * 尝试获取分布式锁
+     * 根据类型分页查询商铺
      * 
-     * 原理：利用Redis的SETNX命令（SET if Not eXists）
-     * - SETNX key value：当key不存在时设置成功，返回1
-     * - 当key已存在时设置失败，返回0
+     * 没有坐标时从该类型的商铺id有序集合分页（见 queryShopPageByType）；有坐标时从该类型的GEO集合中按距离由近到远查询：
+     * 1. GEOSEARCH FROMLONLAT x y BYRADIUS radius ASC COUNT end WITHDIST，取前 end 个结果
+     *    （engine=local，或Redis异常时，改为查询本节点的网格索引 ShopGeoIndex）
+     * 2. 截取 [from, end) 作为当前页（GEOSEARCH 不支持偏移量，只能多取前几页再跳过）
+     * 3. 商铺详情从批量缓存查询（热点副本、L1、一次MGET），按距离顺序返回；Redis异常时直接查询数据库
      * 
-     * 为什么要设置过期时间？
-     * - 防止死锁：如果获取锁的线程崩溃，没有执行unlock，会导致锁永远无法释放
-     * - 兜底方案：即使unlock没有执行，10秒后锁也会自动释放
-     * 
-     * @param key 锁的key
-     * @return true-获取锁成功，false-获取锁失败
+     * @param typeId  商铺类型
+     * @param current 页码
+     * @param x       经度，可选
+     * @param y       纬度，可选
+     * @return 商铺列表，有坐标时带距离（米）
      */
-    private boolean tryLock(String key) {
-        // setIfAbsent 就是 SETNX 命令
-        // 设置成功返回true，设置失败返回false
-        Boolean flag = stringRedisTemplate.opsForValue()
-                .setIfAbsent(key, "1", LOCK_SHOP_TTL, TimeUnit.SECONDS);
-        // 注意：不要直接返回flag，因为flag可能是null
-        // 使用BooleanUtil工具类安全转换（hutool提供）
-        return Boolean.TRUE.equals(flag);
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        // 1. 不需要按距离排序，从商铺id有序集合分页
+        int page = Math.max(current, 1);
+        if (x == null || y == null) {
+            return Result.ok(queryShopPageByType(typeId, page));
+        }
+        
+        // 2. 计算分页参数
+        int from = (page - 1) * DEFAULT_PAGE_SIZE;
+        int end = page * DEFAULT_PAGE_SIZE;
+        
+        // 3. 查询附近的商铺，按距离升序，带距离
+        List<ShopGeoIndex.Hit> hits = searchNearby(typeId, x, y, end);
+        if (hits.size() <= from) {
+            // 没有下一页了
+            return Result.ok(Collections.emptyList());
+        }
+        
+        // 4. 截取当前页的商铺id和距离
+        List<Long> ids = new ArrayList<>(hits.size() - from);
+        Map<Long, Double> distances = new HashMap<>(hits.size() - from);
+        for (ShopGeoIndex.Hit hit : hits.subList(from, hits.size())) {
+            ids.add(hit.getId());
+            distances.put(hit.getId(), hit.getDistance());
+        }
+        
+        // 5. 批量查询商铺详情，缓存中的对象是共享的，复制后再设置距离
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Shop shop : loadShopDetails(ids)) {
+            shops.add(BeanUtil.copyProperties(shop, Shop.class).setDistance(distances.get(shop.getId())));
+        }
+        return Result.ok(shops);
     }
     
     /**
-     * 释放分布式锁
+     * 根据名称关键字分页查询商铺
      * 
-     * 原理：删除Redis中的锁key
+     * 本地倒排索引构建完成后从索引中搜索（名称、地址的单字和二元组），
+     * 只有当前页的商铺id需要查询详情；索引未构建或关闭时仍然使用 LIKE 查询数据库
      * 
-     * 注意：这里是简单实现，生产环境需要考虑：
-     * 1. 避免误删别人的锁（应该判断value是否是自己的）
-     * 2. 使用Lua脚本保证判断和删除的原子性
-     * 3. 可以使用Redisson框架，已经实现了完善的分布式锁
+     * @param name    名称关键字
+     * @param current 页码
+     * @return 商铺列表
+     */
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        int page = Math.max(current, 1);
+        if (StrUtil.isBlank(name) || !nameIndexEnabled || !shopNameIndex.isReady()) {
+            // 与名称索引一致：名称或地址包含关键字
+            Page<Shop> result = query()
+                    .and(StrUtil.isNotBlank(name), w -> w.like("name", name).or().like("address", name))
+                    .page(new Page<>(page, MAX_PAGE_SIZE, false));
+            return Result.ok(result.getRecords());
+        }
+        List<Long> ids = shopNameIndex.search(name, (page - 1) * MAX_PAGE_SIZE, MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        return Result.ok(loadShopDetails(ids));
+    }
+    
+    /**
+     * 按ids顺序批量查询商铺详情（跳过不存在的商铺），Redis异常时直接查询数据库
+     */
+    private List<Shop> loadShopDetails(List<Long> ids) {
+        List<Shop> details;
+        try {
+            details = listShopsByIds(ids);
+        } catch (DataAccessException e) {
+            log.warn("Redis查询商铺详情失败，改为查询数据库，ids={}", ids, e);
+            Map<Long, Shop> shopsById = listShopMapByIds(ids);
+            details = ids.stream().map(shopsById::get).collect(Collectors.toList());
+        }
+        List<Shop> shops = new ArrayList<>(details.size());
+        for (Shop shop : details) {
+            if (shop != null) {
+                shops.add(shop);
+            }
+        }
+        return shops;
+    }
+    
+    /**
+     * 按类型分页查询商铺（按id升序，与原来的数据库分页顺序一致）
      * 
-     * @param key 锁的key
+     * 1. ZRANGE shop:type:ids:{typeId} 取当前页的商铺id（分数为商铺id，下标0是占位成员）
+     * 2. 集合不存在时从数据库查询该类型的所有商铺id，写入临时key后RENAME，同一类型只有一个线程重建
+     * 3. 商铺详情批量查询（热点副本、L1、一次MGET）
+     * 新增、修改商铺时增量维护集合，只有集合不存在（首次访问、过期）时才访问数据库；Redis异常时直接分页查询数据库
      */
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    private List<Shop> queryShopPageByType(Integer typeId, int page) {
+        String key = SHOP_TYPE_IDS_KEY + typeId;
+        long start = (long) (page - 1) * DEFAULT_PAGE_SIZE + 1;
+        long end = start + DEFAULT_PAGE_SIZE - 1;
+        Set<String> members;
+        try {
+            // 1. 查询当前页的商铺id
+            members = stringRedisTemplate.opsForZSet().range(key, start, end);
+            if ((members == null || members.isEmpty()) && !Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+                // 2. 集合不存在，从数据库重建后再查询；重建期间持续被修改而放弃重建时直接查询数据库
+                Boolean rebuilt = typeIdsFlight.execute(typeId, () -> rebuildTypeIds(typeId),
+                        singleFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (!Boolean.TRUE.equals(rebuilt)) {
+                    return queryShopPageByTypeFromDb(typeId, page);
+                }
+                members = stringRedisTemplate.opsForZSet().range(key, start, end);
+            }
+        } catch (DataAccessException | TimeoutException e) {
+            log.warn("查询商铺类型id集合失败，改为查询数据库，typeId={}", typeId, e);
+            return queryShopPageByTypeFromDb(typeId, page);
+        }
+        if (members == null || members.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        // 3. 批量查询商铺详情
+        List<Long> ids = members.stream().map(Long::valueOf).collect(Collectors.toList());
+        return loadShopDetails(ids);
+    }
+    
+    /**
+     * 直接从数据库分页查询该类型的商铺（Redis不可用或类型id集合重建失败时）
+     */
+    private List<Shop> queryShopPageByTypeFromDb(Integer typeId, int page) {
+        return query()
+                .eq("type_id", typeId)
+                .page(new Page<>(page, DEFAULT_PAGE_SIZE, false))
+                .getRecords();
     }
     
     /**
-     * 使用逻辑过期解决缓存击穿问题
+     * 从数据库查询该类型的所有商铺id，一次pipeline写入临时key，再RENAME为正式的key
      * 
-     * 缓存击穿：热点key过期瞬间，大量请求同时查询数据库
+     * 占位成员保证没有商铺的类型也有集合，不会每次都重建；RENAME 之前读到的都是旧集合或不存在，不会读到写了一半的集合。
      * 
-     * 解决思路（逻辑过期）：
-     * 1. 缓存永不过期（Redis不设置TTL）
-     * 2. 在数据中添加逻辑过期时间字段（expireTime）
-     * 3. 查询时判断逻辑过期时间：
-     *    - 未过期：直接返回数据
-     *    - 已过期：尝试获取互斥锁
-     *      - 获取成功：开启独立线程异步重建缓存，当前线程立即返回旧数据
-     *      - 获取失败：说明有其他线程在重建，直接返回旧数据
+     * SELECT 和 RENAME 之间新增或换了类型的商铺，增量写入会落到旧集合上（或因集合不存在被跳过），随后被 RENAME 覆盖。
+     * 每次增量修改集合前先递增该类型的版本号：SELECT 前和 RENAME 后读到的版本号不同，说明这段时间有修改，重新查询重建；
+     * 版本号相同时，之后的修改都发生在 RENAME 之后，会直接写到新集合上
+     */
+    private Boolean rebuildTypeIds(Integer typeId) {
+        String versionKey = SHOP_TYPE_IDS_VERSION_KEY + typeId;
+        for (int attempt = 1; attempt <= TYPE_IDS_REBUILD_ATTEMPTS; attempt++) {
+            String version = stringRedisTemplate.opsForValue().get(versionKey);
+            int size = writeTypeIds(typeId);
+            if (Objects.equals(version, stringRedisTemplate.opsForValue().get(versionKey))) {
+                log.info("商铺类型id集合重建完成，typeId={}，商铺数量={}", typeId, size);
+                return Boolean.TRUE;
+            }
+            log.info("商铺类型id集合重建期间有修改，重新重建，typeId={}，attempt={}", typeId, attempt);
+        }
+        stringRedisTemplate.delete(SHOP_TYPE_IDS_KEY + typeId);
+        log.warn("商铺类型id集合重建期间持续被修改，已删除集合等待下次查询重建，typeId={}", typeId);
+        return Boolean.FALSE;
+    }
+    
+    /**
+     * 查询该类型的所有商铺id，写入临时key后RENAME为正式的key
+     * @return 商铺数量
+     */
+    private int writeTypeIds(Integer typeId) {
+        List<Long> ids = query().select("id")
+                .eq("type_id", typeId)
+                .orderByAsc("id")
+                .list()
+                .stream()
+                .map(Shop::getId)
+                .collect(Collectors.toList());
+        byte[] key = (SHOP_TYPE_IDS_KEY + typeId).getBytes(StandardCharsets.UTF_8);
+        byte[] tempKey = (SHOP_TYPE_IDS_KEY + typeId + ":rebuild:" + IdUtil.simpleUUID()).getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zSetCommands().zAdd(tempKey, 0, TYPE_IDS_PLACEHOLDER.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < ids.size(); i += TYPE_IDS_WRITE_BATCH_SIZE) {
+                Set<RedisZSetCommands.Tuple> tuples = new HashSet<>();
+                for (Long id : ids.subList(i, Math.min(ids.size(), i + TYPE_IDS_WRITE_BATCH_SIZE))) {
+                    tuples.add(new DefaultTuple(id.toString().getBytes(StandardCharsets.UTF_8), id.doubleValue()));
+                }
+                connection.zSetCommands().zAdd(tempKey, tuples);
+            }
+            connection.keyCommands().expire(tempKey, TimeUnit.HOURS.toSeconds(SHOP_TYPE_IDS_TTL));
+            connection.keyCommands().rename(tempKey, key);
+            return null;
+        });
+        return ids.size();
+    }
+    
+    /**
+     * 商铺加入类型的id集合（集合不存在时不创建，由下一次查询全量重建）
+     */
+    private void addToTypeIds(Long typeId, Long id) {
+        if (typeId == null) {
+            return;
+        }
+        stringRedisTemplate.opsForValue().increment(SHOP_TYPE_IDS_VERSION_KEY + typeId);
+        stringRedisTemplate.execute(ZADD_IF_EXISTS_SCRIPT,
+                Collections.singletonList(SHOP_TYPE_IDS_KEY + typeId), id.toString(), id.toString());
+    }
+    
+    /**
+     * 商铺从类型的id集合中删除
+     */
+    private void removeFromTypeIds(Long typeId, Long id) {
+        stringRedisTemplate.opsForValue().increment(SHOP_TYPE_IDS_VERSION_KEY + typeId);
+        stringRedisTemplate.opsForZSet().remove(SHOP_TYPE_IDS_KEY + typeId, id.toString());
+    }
+    
+    /**
+     * 按距离由近到远查询附近的商铺
      * 
-     * 优点：
-     * - 性能极好：查询线程不需要等待，始终能立即返回
-     * - 高可用：即使数据库宕机，也能返回旧数据
+     * engine=redis 时查询Redis GEO集合，engine=local 时只查本地网格索引。
+     * GEO集合还没有全量导入（shop:geo:loaded 不存在，例如关闭了启动预热、预热超时、Redis数据丢失）时，
+     * GEOSEARCH 会返回空或者不完整的结果：这时触发后台导入，本次查询改为本地网格索引或数据库；Redis异常时同样降级
+     */
+    private List<ShopGeoIndex.Hit> searchNearby(Integer typeId, double x, double y, int limit) {
+        if (GEO_ENGINE_LOCAL.equals(geoEngine) && shopGeoIndex.isReady()) {
+            return shopGeoIndex.nearby(typeId.longValue(), x, y, geoRadiusMeters, limit);
+        }
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results;
+        try {
+            if (!isShopGeoLoaded()) {
+                loadShopGeoInBackground();
+                return searchNearbyWithoutRedis(typeId, x, y, limit);
+            }
+            results = stringRedisTemplate.opsForGeo().search(
+                    SHOP_GEO_KEY + typeId,
+                    GeoReference.fromCoordinate(x, y),
+                    new Distance(geoRadiusMeters, Metrics.METERS),
+                    RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(limit));
+            if ((results == null || results.getContent().isEmpty())
+                    && !Boolean.TRUE.equals(stringRedisTemplate.hasKey(SHOP_GEO_LOADED_KEY))) {
+                // 导入之后Redis数据丢失了
+                shopGeoLoaded = false;
+                loadShopGeoInBackground();
+                return searchNearbyWithoutRedis(typeId, x, y, limit);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Redis GEO查询失败，降级到本地网格索引或数据库，typeId={}", typeId, e);
+            return searchNearbyWithoutRedis(typeId, x, y, limit);
+        }
+        if (results == null) {
+            return Collections.emptyList();
+        }
+        List<ShopGeoIndex.Hit> hits = new ArrayList<>(results.getContent().size());
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results.getContent()) {
+            hits.add(new ShopGeoIndex.Hit(Long.parseLong(result.getContent().getName()), result.getDistance().getValue()));
+        }
+        return hits;
+    }
+    
+    private boolean isShopGeoLoaded() {
+        if (!shopGeoLoaded) {
+            shopGeoLoaded = Boolean.TRUE.equals(stringRedisTemplate.hasKey(SHOP_GEO_LOADED_KEY));
+        }
+        return shopGeoLoaded;
+    }
+    
+    /**
+     * 不使用Redis查询附近的商铺：本地网格索引已构建时查询索引，否则按经纬度范围查询数据库后计算距离
+     */
+    private List<ShopGeoIndex.Hit> searchNearbyWithoutRedis(Integer typeId, double x, double y, int limit) {
+        if (shopGeoIndex.isReady()) {
+            return shopGeoIndex.nearby(typeId.longValue(), x, y, geoRadiusMeters, limit);
+        }
+        // 半径对应的纬度差、经度差（高纬度时经度差按半径能覆盖的最大范围）
+        double dy = Math.toDegrees(geoRadiusMeters / ShopGeoIndex.EARTH_RADIUS_METERS);
+        double cos = Math.cos(Math.toRadians(Math.min(89.0, Math.abs(y) + dy)));
+        double dx = Math.min(180.0, dy / cos);
+        List<Shop> shops = query().select("id", "x", "y")
+                .eq("type_id", typeId)
+                .between("x", x - dx, x + dx)
+                .between("y", y - dy, y + dy)
+                .list();
+        List<ShopGeoIndex.Hit> hits = new ArrayList<>();
+        for (Shop shop : shops) {
+            double distance = ShopGeoIndex.distance(x, y, shop.getX(), shop.getY());
+            if (distance <= geoRadiusMeters) {
+                hits.add(new ShopGeoIndex.Hit(shop.getId(), distance));
+            }
+        }
+        hits.sort(Comparator.comparingDouble(ShopGeoIndex.Hit::getDistance).thenComparingLong(ShopGeoIndex.Hit::getId));
+        return hits.size() > limit ? hits.subList(0, limit) : hits;
+    }
+    
+    /**
+     * 把所有商铺的坐标按类型导入GEO集合（shop:geo:{typeId}）
      * 
-     * 缺点：
-     * - 短暂数据不一致：缓存更新期间返回的是旧数据
-     * - 额外内存：需要存储逻辑过期时间
-     * - 实现复杂：需要线程池、额外数据结构
+     * 按id分批读取数据库，每批按类型分组，每个类型一条GEOADD写入多个商铺；
+     * 全部导入后写入 shop:geo:loaded，之后附近商铺查询才使用GEOSEARCH
      * 
-     * @param id 商铺ID
-     * @return 商铺信息
+     * @return 导入的商铺数量
      */
-    public Result queryWithLogicalExpire(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        
-        // 1. 从Redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-
-        // 2. 判断缓存是否存在
-        if(StrUtil.isBlank(shopJson)) {
-            // 3. 缓存不存在，降级到互斥锁方案
-            log.warn("逻辑过期方案：缓存不存在，降级到互斥锁方案。shopId={}", id);
-            return queryWithMutex(id);
+    @Override
+    public long loadShopGeo() {
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = listLocationsAfter(lastId);
+            if (shops.isEmpty()) {
+                break;
+            }
+            Map<Long, List<RedisGeoCommands.GeoLocation<String>>> locationsByType = new HashMap<>();
+            for (Shop shop : shops) {
+                locationsByType.computeIfAbsent(shop.getTypeId(), k -> new ArrayList<>())
+                        .add(new RedisGeoCommands.GeoLocation<>(shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+            }
+            locationsByType.forEach((typeId, locations) ->
+                    stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + typeId, locations));
+            count += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            if (shops.size() < GEO_LOAD_BATCH_SIZE) {
+                break;
+            }
         }
-        
-        log.debug("逻辑过期方案：缓存命中。shopId={}", id);
-        
-        // 4. 缓存存在，需要判断是否逻辑过期
-        // 4.1 将JSON反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        
-        // 4.2 防御性检查：如果反序列化失败或数据格式不对，降级到互斥锁方案
-        if(redisData == null || redisData.getData() == null) {
-            // 数据格式不正确（可能是旧版本缓存），删除并使用互斥锁方案重建
-            stringRedisTemplate.delete(key);
-            return queryWithMutex(id);
+        stringRedisTemplate.opsForValue().set(SHOP_GEO_LOADED_KEY, String.valueOf(System.currentTimeMillis()));
+        shopGeoLoaded = true;
+        return count;
+    }
+    
+    /**
+     * 应用启动完成后，GEO集合还没有导入时（关闭了启动预热、预热超时）在后台导入，不依赖缓存预热
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadShopGeoIfAbsent() {
+        if (!isShopGeoLoaded()) {
+            loadShopGeoInBackground();
         }
-        
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        
-        // 5. 判断是否逻辑过期
-        // 5.1 如果expireTime为null，说明是旧格式数据，视为已过期需要重建
-        if(expireTime != null && expireTime.isAfter(LocalDateTime.now())) {
-            // 5.2 未过期，直接返回商铺信息
-            log.debug("逻辑过期方案：缓存未过期，直接返回。shopId={}, expireTime={}", id, expireTime);
-            return Result.ok(shop);
+    }
+    
+    /**
+     * 后台导入GEO集合：本节点同时只有一个导入任务，多个节点之间用分布式锁保证只有一个节点导入
+     */
+    private void loadShopGeoInBackground() {
+        if (!shopGeoLoading.compareAndSet(false, true)) {
+            return;
         }
-        
-        log.info("逻辑过期方案：缓存已过期，准备重建。shopId={}, expireTime={}", id, expireTime);
-        
-        // 5.2 已过期，需要重建缓存
-        // 6. 尝试获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        
-        // 7. 判断是否获取锁成功
-        if(isLock) {
-            // 7.1 获取锁成功，开启独立线程重建缓存
-            log.info("逻辑过期方案：获取锁成功，开启异步线程重建缓存。shopId={}", id);
-            // 注意：这里使用了线程池，避免频繁创建线程
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+        Thread thread = new Thread(() -> {
+            try {
+                if (!redisLockService.tryLock(LOCK_SHOP_GEO_LOAD_KEY)) {
+                    return;
+                }
                 try {
-                    // 重建缓存
-                    // 模拟重建延迟（测试用，生产环境删除）
-                    //Thread.sleep(200);
-                    
-                    // 写入Redis（设置逻辑过期时间为30分钟后）
-                    // 注意：saveShopToRedis方法内部会查询数据库
-                    this.saveShopToRedis(id, 30L);
-                    
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(SHOP_GEO_LOADED_KEY))) {
+                        shopGeoLoaded = true;
+                        return;
+                    }
+                    long begin = System.currentTimeMillis();
+                    long count = loadShopGeo();
+                    log.info("商铺坐标导入GEO集合完成，商铺数量={}，耗时{}ms", count, System.currentTimeMillis() - begin);
                 } finally {
-                    // 释放锁
-                    unlock(lockKey);
+                    redisLockService.unlockQuietly(LOCK_SHOP_GEO_LOAD_KEY);
                 }
-            });
+            } catch (Exception e) {
+                log.error("商铺坐标导入GEO集合失败，下次查询时重试", e);
+            } finally {
+                shopGeoLoading.set(false);
+            }
+        }, "shop-geo-load");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private List<Shop> listLocationsAfter(Long lastId) {
+        return query().select("id", "type_id", "x", "y")
+                .gt("id", lastId)
+                .orderByAsc("id")
+                .last("limit " + GEO_LOAD_BATCH_SIZE)
+                .list();
+    }
+    
+    /**
+     * 应用启动完成后，从数据库分批加载所有商铺的坐标，构建本节点的网格索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildGeoIndex() {
+        if (!geoIndexEnabled) {
+            return;
         }
-        
-        // 8. 返回过期的商铺信息（无论是否获取锁成功）
-        // 这就是逻辑过期方案的核心：立即返回，不等待
-        log.debug("逻辑过期方案：立即返回旧数据。shopId={}", id);
-        return Result.ok(shop);
+        long begin = System.currentTimeMillis();
+        shopGeoIndex.rebuild(this::listLocationsAfter);
+        log.info("商铺网格索引构建完成，耗时{}ms，{}", System.currentTimeMillis() - begin, shopGeoIndex.stats());
+    }
+    
+    /**
+     * 应用启动完成后，从数据库分批加载所有商铺的名称和地址，构建本节点的倒排索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildNameIndex() {
+        if (!nameIndexEnabled) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        shopNameIndex.rebuild(lastId -> query().select("id", "name", "address")
+                .gt("id", lastId)
+                .orderByAsc("id")
+                .last("limit " + NAME_INDEX_LOAD_BATCH_SIZE)
+                .list());
+        log.info("商铺名称索引构建完成，耗时{}ms，{}", System.currentTimeMillis() - begin, shopNameIndex.stats());
+    }
+    
+    /**
+     * 商铺新增、修改后，从数据库重新读取坐标、类型、名称和地址，更新本节点的网格索引和名称索引
+     */
+    private void refreshLocalIndexes(Long id) {
+        boolean geo = geoIndexEnabled && shopGeoIndex.isReady();
+        boolean name = nameIndexEnabled && shopNameIndex.isReady();
+        if (!geo && !name) {
+            return;
+        }
+        Shop shop = query().select("id", "type_id", "x", "y", "name", "address").eq("id", id).one();
+        if (shop == null) {
+            if (geo) {
+                shopGeoIndex.remove(id);
+            }
+            if (name) {
+                shopNameIndex.remove(id);
+            }
+            return;
+        }
+        if (geo) {
+            shopGeoIndex.put(id, shop.getTypeId(), shop.getX(), shop.getY());
+        }
+        if (name) {
+            shopNameIndex.put(id, shop.getName(), shop.getAddress());
+        }
+    }
+    
+    /**
+     * 新增商铺，同时写入布隆过滤器、GEO集合、类型id集合和所有节点的本地索引
+     */
+    @Override
+    public boolean save(Shop shop) {
+        boolean saved = super.save(shop);
+        shopBloomFilter.put(shop.getId());
+        // 在事务中调用时，提交后再写入Redis
+        TransactionHooks.afterCommit(() -> {
+            addShopGeo(shop);
+            addToTypeIds(shop.getTypeId(), shop.getId());
+        });
+        // 删除可能存在的空值缓存，通知所有节点更新网格索引和名称索引
+        cacheInvalidationService.invalidate(CACHE_SHOP_KEY + shop.getId(), SHOP_CACHE_NAME, shop.getId().toString());
+        publishIndexRefresh(shop.getId());
+        return saved;
+    }
+    
+    /**
+     * 应用启动完成后，从数据库分批加载所有商铺ID，构建布隆过滤器
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildBloomFilter() {
+        long begin = System.currentTimeMillis();
+        shopBloomFilter.rebuild(this::listIdsAfter);
+        log.info("商铺布隆过滤器构建完成，耗时{}ms，{}", System.currentTimeMillis() - begin, shopBloomFilter.stats());
+    }
+    
+    private List<Long> listIdsAfter(Long lastId) {
+        return query().select("id")
+                .gt("id", lastId)
+                .orderByAsc("id")
+                .last("limit " + BLOOM_REBUILD_BATCH_SIZE)
+                .list()
+                .stream()
+                .map(Shop::getId)
+                .collect(Collectors.toList());
     }
     
     /**
      * 将商铺数据保存到Redis（带逻辑过期时间）
      * 
-     * 使用场景：
-     * 1. 缓存预热：应用启动时，将热点数据提前加载到Redis
-     * 2. 缓存重建：逻辑过期后，异步重建缓存
-     * 
-     * 数据结构：
-     * {
-     *   "data": {...商铺信息...},
-     *   "expireTime": "2024-01-01T12:00:00"
-     * }
+     * 使用场景：缓存预热，应用启动时将热点数据提前加载到Redis
      * 
      * @param id 商铺ID
      * @param expireSeconds 逻辑过期时间（秒）
@@ -308,17 +912,49 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 1. 查询商铺数据
         Shop shop = getById(id);
         
-        // 2. 封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
+        // 2. 写入Redis（注意：不设置TTL，永不过期）
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS);
+        // 本节点的本地缓存可能是旧数据，删除后下次查询从Redis重新加载
+        shopLocalCache.invalidate(id);
         
-        // 3. 写入Redis（注意：不设置TTL，永不过期）
-        // 使用 JSONUtil 配置，确保 LocalDateTime 正确序列化
-        String jsonStr = JSONUtil.toJsonStr(redisData);
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, jsonStr);
-        
-        log.info("缓存预热完成。shopId={}, expireTime={}", id, redisData.getExpireTime());
+        log.info("缓存预热完成。shopId={}, expireSeconds={}", id, expireSeconds);
+    }
+    
+    @Override
+    public Result queryCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        CacheStats l1 = shopLocalCache.stats();
+        Map<String, Object> l1Stats = new LinkedHashMap<>();
+        l1Stats.put("size", shopLocalCache.estimatedSize());
+        l1Stats.put("hits", l1.hitCount());
+        l1Stats.put("misses", l1.missCount());
+        l1Stats.put("hitRate", l1.hitRate());
+        l1Stats.put("evictions", l1.evictionCount());
+        stats.put("l1", l1Stats);
+        // L2：按key前缀统计的Redis缓存命中情况（商铺、商铺类型、优惠券等）
+        stats.put("l2", cacheClient.stats());
+        Map<String, Object> bloomStats = new LinkedHashMap<>();
+        bloomStats.put("shop", shopBloomFilter.stats());
+        bloomStats.put("voucher", voucherBloomFilter.stats());
+        stats.put("bloom", bloomStats);
+        stats.put("invalidation", cacheInvalidationService.stats());
+        stats.put("geoIndex", shopGeoIndex.stats());
+        stats.put("nameIndex", shopNameIndex.stats());
+        return Result.ok(stats);
+    }
+    
+    /**
+     * 批量写入商铺缓存（缓存预热），一次pipeline写入，逻辑过期时间带随机抖动
+     * 
+     * @param shops 从数据库查询的商铺
+     */
+    @Override
+    public void saveShopsToRedis(List<Shop> shops) {
+        Map<Long, Shop> shopsById = new LinkedHashMap<>(shops.size());
+        for (Shop shop : shops) {
+            shopsById.put(shop.getId(), shop);
+        }
+        cacheClient.setAll(CACHE_SHOP_KEY, shopsById, SHOP_CACHE_POLICY);
     }
     
     @Override
@@ -329,12 +965,41 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return Result.fail("店铺id不能为空");
         }
         
-        // 1.更新数据库
+        // 1.更新数据库（类型或坐标变化时先查出旧数据，用于更新GEO集合）
+        boolean locationChanged = shop.getTypeId() != null || shop.getX() != null || shop.getY() != null;
+        Shop old = locationChanged ? getById(id) : null;
         updateById(shop);
         
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 2.事务提交后删除缓存，并广播删除所有节点的本地缓存（延迟双删，失败时由本地消息表重试）
+        //   本地索引只在提交后刷新一次
+        cacheInvalidationService.invalidate(CACHE_SHOP_KEY + id, SHOP_CACHE_NAME, id.toString());
+        publishIndexRefresh(id);
+        
+        // 3.事务提交后更新GEO集合、类型id集合：类型变化时从旧类型的集合中删除（回滚时Redis保持不变）
+        if (old != null) {
+            Shop merged = new Shop()
+                    .setId(id)
+                    .setTypeId(shop.getTypeId() != null ? shop.getTypeId() : old.getTypeId())
+                    .setX(shop.getX() != null ? shop.getX() : old.getX())
+                    .setY(shop.getY() != null ? shop.getY() : old.getY());
+            TransactionHooks.afterCommit(() -> {
+                if (!merged.getTypeId().equals(old.getTypeId())) {
+                    stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + old.getTypeId(), id.toString());
+                    removeFromTypeIds(old.getTypeId(), id);
+                    addToTypeIds(merged.getTypeId(), id);
+                }
+                addShopGeo(merged);
+            });
+        }
         
         return Result.ok();
     }
+    
+    private void addShopGeo(Shop shop) {
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(),
+                new Point(shop.getX(), shop.getY()), shop.getId().toString());
+    }
 }
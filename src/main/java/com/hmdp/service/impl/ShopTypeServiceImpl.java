@@ -1,18 +1,31 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
+import cn.hutool.core.lang.TypeReference;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidationBus;
+import com.hmdp.utils.CachePolicy;
+import com.hmdp.utils.CacheStrategy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
@@ -26,45 +39,161 @@ import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
     
-    private static final Random RANDOM = new Random();
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+    
+    @Resource
+    private ObjectMapper objectMapper;
+    
+    /**
+     * 商铺类型缓存策略：互斥锁（数据几乎不变，冷启动时只允许一个线程查库），有效期30~36天
+     */
+    private static final CachePolicy SHOP_TYPE_CACHE_POLICY =
+            CachePolicy.of(CacheStrategy.MUTEX, CACHE_SHOP_TYPE_TTL, 7, TimeUnit.DAYS);
+    
+    /**
+     * 商铺类型列表在缓存中的ID（key为 cache:shop-type:list）
+     */
+    private static final String SHOP_TYPE_LIST_ID = "list";
+    
+    private static final Type SHOP_TYPE_LIST_TYPE = new TypeReference<List<ShopType>>() {}.getType();
+    
+    /**
+     * 商铺类型列表在失效广播中的名称
+     */
+    private static final String SHOP_TYPE_CACHE_NAME = "shop-type";
+    
+    /**
+     * 快照的定时刷新间隔（秒）
+     */
+    @Value("${hmdp.shop-type.snapshot-refresh-seconds:300}")
+    private long snapshotRefreshSeconds;
+    
+    /**
+     * 当前的商铺类型列表快照，首次查询时创建
+     */
+    private volatile ShopTypeSnapshot snapshot;
+    
+    private ScheduledExecutorService scheduler;
+    
+    @PostConstruct
+    private void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shop-type-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        // 定时刷新，兜底失效广播丢失的情况
+        scheduler.scheduleWithFixedDelay(this::refreshSnapshotQuietly,
+                snapshotRefreshSeconds, snapshotRefreshSeconds, TimeUnit.SECONDS);
+        // 任意节点更新商铺类型缓存后，所有节点刷新快照
+        cacheInvalidationBus.register(SHOP_TYPE_CACHE_NAME, key -> scheduler.execute(this::refreshSnapshotQuietly));
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
     
     @Override
     public Result queryTypeList() {
-        String key = CACHE_SHOP_TYPE_KEY;
-
-        //1.查询缓存
-        String cacheJson = stringRedisTemplate.opsForValue().get(key);
-
-        //2.缓存命中
-        if(StrUtil.isNotBlank(cacheJson)){
-            List<ShopType> typeLst = JSONUtil.toList(cacheJson,ShopType.class);
-            return Result.ok(typeLst);
-        }
-
-        //3.未命中,查数据库
-        List<ShopType> typeList = query().orderByAsc("sort").list();
-
-        //4.数据库中也没有(防御)
-        if(typeList == null || typeList.isEmpty()){
+        ShopTypeSnapshot current = queryTypeListSnapshot();
+        if (current == null) {
             return Result.fail("商店类型数据异常");
         }
+        return Result.ok(current.getTypes());
+    }
+    
+    /**
+     * 查询商铺类型列表快照
+     * 
+     * 快照存在时直接返回（不访问Redis），只有首次查询时同步创建
+     * 
+     * @return 快照，数据库中也没有商铺类型时返回null
+     */
+    @Override
+    public ShopTypeSnapshot queryTypeListSnapshot() {
+        ShopTypeSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            return current != null ? current : refreshSnapshot();
+        }
+    }
+    
+    /**
+     * 重新加载商铺类型列表并生成快照
+     * 
+     * 1.查询缓存，未命中时查数据库并写入缓存
+     * 2.按MVC相同的方式（同一个ObjectMapper）序列化响应体
+     * 3.内容没有变化时保留原来的快照（ETag不变，客户端继续使用304）
+     */
+    private synchronized ShopTypeSnapshot refreshSnapshot() {
+        //1.查询缓存，未命中时查数据库并写入缓存
+        List<ShopType> typeList = cacheClient.query(CACHE_SHOP_TYPE_KEY, SHOP_TYPE_LIST_ID,
+                SHOP_TYPE_LIST_TYPE, id -> listTypes(), SHOP_TYPE_CACHE_POLICY);
+        //数据库中也没有(防御)，保留原来的快照
+        if (typeList == null) {
+            return snapshot;
+        }
 
-        //5.写入缓存（添加随机值防止雪崩）
-        long expireTime = CACHE_SHOP_TYPE_TTL + RANDOM.nextInt(7);  // 30~36天随机
-        stringRedisTemplate.opsForValue().set(
-                key,
-                JSONUtil.toJsonStr(typeList),
-                expireTime,
-                TimeUnit.DAYS
-        );
+        //2.序列化响应体
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(Result.ok(typeList));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("商铺类型列表序列化失败", e);
+        }
 
-        //6.返回结果
-        return Result.ok(typeList);
+        //3.内容变化时替换快照
+        ShopTypeSnapshot current = snapshot;
+        if (current == null || !Arrays.equals(current.getBody(), body)) {
+            current = new ShopTypeSnapshot(typeList, body, "\"" + DigestUtil.md5Hex(body) + "\"");
+            snapshot = current;
+        }
+        return current;
+    }
+    
+    private void refreshSnapshotQuietly() {
+        try {
+            refreshSnapshot();
+        } catch (Exception e) {
+            // 刷新失败时继续使用旧快照
+            log.warn("商铺类型快照刷新失败", e);
+        }
+    }
+    
+    /**
+     * 从数据库加载商铺类型列表写入缓存（缓存预热）
+     * 
+     * @return 商铺类型数量
+     */
+    @Override
+    public int saveTypeListToRedis() {
+        List<ShopType> typeList = listTypes();
+        if (typeList == null) {
+            return 0;
+        }
+        cacheClient.set(CACHE_SHOP_TYPE_KEY + SHOP_TYPE_LIST_ID, typeList, SHOP_TYPE_CACHE_POLICY);
+        // 所有节点刷新快照
+        cacheInvalidationBus.publish(SHOP_TYPE_CACHE_NAME, SHOP_TYPE_LIST_ID);
+        return typeList.size();
+    }
+    
+    /**
+     * 查询数据库中的商铺类型，没有数据时返回null（缓存空值）
+     */
+    private List<ShopType> listTypes() {
+        List<ShopType> typeList = query().orderByAsc("sort").list();
+        return typeList == null || typeList.isEmpty() ? null : typeList;
     }
 }
@@ -12,6 +12,9 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CachePolicy;
+import com.hmdp.utils.CacheStrategy;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
@@ -22,10 +25,15 @@ import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -35,6 +43,11 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
  * 服务实现类
  * </p>
  *
+ * 用户资料（昵称、头像）：
+ * 列表页（热门博客的作者、点赞用户等）原来每条数据调用一次 getById，一页10条就是10次数据库查询。
+ * 改为 queryUserProfiles 批量查询：一次MGET读取 cache:user:{id}，未命中的用户一条 IN 查询，
+ * 再通过一次pipeline写回缓存（不存在的用户缓存空值），一个列表只需要一次往返
+ *
  * @author 虎哥
  * @since 2021-12-22
  */
@@ -42,9 +55,17 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
 
+    /**
+     * 用户资料缓存策略：30~40分钟，只保存 id、昵称、头像
+     */
+    private static final CachePolicy USER_CACHE_POLICY =
+            CachePolicy.of(CacheStrategy.PASS_THROUGH, CACHE_USER_TTL, 10, TimeUnit.MINUTES);
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
 
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -254,6 +275,31 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok("密码设置成功");
     }
     
+    @Override
+    public Map<Long, UserDTO> queryUserProfiles(Collection<Long> ids) {
+        List<Long> userIds = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // 1. 一次MGET查询缓存，未命中的一次查询数据库
+        List<UserDTO> users = cacheClient.queryBatch(CACHE_USER_KEY, userIds, UserDTO.class,
+                this::listUserProfilesByIds, USER_CACHE_POLICY);
+        // 2. 不存在的用户为null，不放入结果
+        Map<Long, UserDTO> result = new HashMap<>(userIds.size());
+        for (UserDTO user : users) {
+            if (user != null) {
+                result.put(user.getId(), user);
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, UserDTO> listUserProfilesByIds(Collection<Long> ids) {
+        return query().select("id", "nick_name", "icon").in("id", ids).list().stream()
+                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .collect(Collectors.toMap(UserDTO::getId, Function.identity()));
+    }
+
     private User createUserWithPhone(String phone){
         User user = new User();
         user.setPhone(phone);
@@ -1,21 +1,81 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.SeckillVoucherSegment;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillVoucherSegmentService;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.IdBloomFilter;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillOrderBatchWriter;
+import com.hmdp.utils.SeckillOrderRejectedException;
+import com.hmdp.utils.SeckillSoldOutRegistry;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UserLockRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_LETTER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_REPLENISH_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENTS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
 
 /**
  * <p>
@@ -35,8 +95,804 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedisIdWorker redisIdWorker;
     
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
+    
+    @Resource
+    private IdBloomFilter voucherBloomFilter;
+    
+    @Resource
+    private ISeckillVoucherSegmentService segmentService;
+    
+    @Resource
+    private UserLockRegistry userLockRegistry;
+    
+    /**
+     * 秒杀模式
+     * - lua：Redis Lua脚本预扣库存 + 异步写库（默认）
+     * - sync：同步查库、扣库存、下单（原乐观锁版本，保留用于压测对比）
+     */
+    @Value("${hmdp.seckill.mode:lua}")
+    private String seckillMode;
+    
+    /**
+     * 订单消息队列的消费者组名称
+     */
+    @Value("${hmdp.seckill.stream.group:g1}")
+    private String streamGroup;
+    
+    /**
+     * 本节点的消费者数量（每个消费者一个线程）
+     */
+    @Value("${hmdp.seckill.stream.consumers:1}")
+    private int streamConsumers;
+    
+    /**
+     * pending消息空闲多久后认为原消费者已经宕机，由本节点认领（毫秒）
+     */
+    @Value("${hmdp.seckill.stream.claim-idle-ms:60000}")
+    private long claimIdleMillis;
+    
+    /**
+     * 写库失败（数据库不可用等）时重试pending消息的最长退避间隔（毫秒），从100毫秒开始每次翻倍
+     */
+    @Value("${hmdp.seckill.stream.retry-max-backoff-ms:5000}")
+    private long retryMaxBackoffMillis;
+    
+    /**
+     * 组提交：每批最多写入的订单数
+     */
+    @Value("${hmdp.seckill.stream.batch-size:100}")
+    private int batchSize;
+    
+    /**
+     * 组提交：读到第一条消息后，最多再等待多久凑批（毫秒）
+     */
+    @Value("${hmdp.seckill.stream.batch-window-ms:20}")
+    private long batchWindowMillis;
+    
+    /**
+     * 裁剪Stream中已经ACK的消息的间隔（毫秒）
+     */
+    @Value("${hmdp.seckill.stream.trim-interval-ms:10000}")
+    private long trimIntervalMillis;
+    
+    @Resource
+    private ApplicationContext applicationContext;
+    
+    /**
+     * 秒杀资格判断脚本（库存、一人一单、时间窗口，判断通过后发送订单消息）
+     */
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+    }
+    
+    /**
+     * 从数据库加载秒杀库存的脚本（读取数据库期间补充过库存时不写入）
+     */
+    private static final DefaultRedisScript<Long> PRELOAD_STOCK_SCRIPT;
+    
+    static {
+        PRELOAD_STOCK_SCRIPT = new DefaultRedisScript<>();
+        PRELOAD_STOCK_SCRIPT.setLocation(new ClassPathResource("seckill_preload_stock.lua"));
+        PRELOAD_STOCK_SCRIPT.setResultType(Long.class);
+    }
+    
+    /**
+     * 加载秒杀库存时，读取数据库期间补充过库存的最多重试次数
+     */
+    private static final int PRELOAD_STOCK_ATTEMPTS = 3;
+    
+    /**
+     * 异步下单线程池（每个Stream消费者一个线程）
+     */
+    private ExecutorService seckillOrderExecutor;
+    
+    /**
+     * 事务代理对象
+     * 后台线程中拿不到 AopContext.currentProxy()（它是基于ThreadLocal的），
+     * 所以在应用启动完成后从容器中获取，供异步下单使用
+     */
+    private IVoucherOrderService proxy;
+    
+    /**
+     * 订单组提交：整批写入，整批失败时退化为逐条写入（通过事务代理对象调用）
+     */
+    private SeckillOrderBatchWriter<MapRecord<String, Object, Object>> orderBatchWriter;
+    
+    private volatile boolean running = true;
+    
+    /**
+     * pending消息重试的初始退避间隔（毫秒）
+     */
+    private static final long RETRY_INITIAL_BACKOFF_MILLIS = 100;
+    
+    /**
+     * 消费统计：处理成功数、写库失败次数（等待重试）、转入死信数（其中被数据库拒绝的订单数）、认领的pending消息数、
+     * 批量写库次数、退化为逐条写库的批次数、批量写库累计耗时
+     */
+    private final AtomicLong consumedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong claimedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchFallbackCount = new AtomicLong();
+    private final AtomicLong batchRejectedCount = new AtomicLong();
+    private final AtomicLong batchWriteMillis = new AtomicLong();
+    private final Map<String, AtomicLong> consumedByConsumer = new ConcurrentHashMap<>();
+    private volatile long consumeStartTime;
+    
+    /**
+     * 秒杀券的数据库库存分段数缓存（1表示不分段），分段数在创建秒杀券时确定，之后不会变化
+     * 
+     * 只缓存从Redis（seckill:segments:{id}）读到的值；有上限、写入后过期，下线的券不会一直占用内存
+     */
+    private final Cache<Long, Integer> segmentCounts = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+    
+    /**
+     * 应用启动完成后，创建消费者组并启动消费者
+     * 
+     * 为什么不在 @PostConstruct 中启动？
+     * - 消费者启动时要先处理pending-list中的消息，需要事务代理对象
+     * - @PostConstruct 执行时代理对象还没有创建完成
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOrderConsumers() {
+        if (!"lua".equalsIgnoreCase(seckillMode)) {
+            return;
+        }
+        proxy = applicationContext.getBean(IVoucherOrderService.class);
+        orderBatchWriter = new SeckillOrderBatchWriter<>(proxy::createVoucherOrderBatch, proxy::createVoucherOrder);
+        createStreamGroup();
+        
+        String host = localHostName();
+        seckillOrderExecutor = Executors.newFixedThreadPool(streamConsumers, r -> {
+            Thread t = new Thread(r);
+            t.setName("seckill-order-" + t.getId());
+            return t;
+        });
+        consumeStartTime = System.currentTimeMillis();
+        for (int i = 0; i < streamConsumers; i++) {
+            // 消费者名称固定为 主机名-序号，重启后使用同一个名称，可以接着处理自己的pending消息
+            seckillOrderExecutor.submit(new VoucherOrderHandler(host + "-" + i));
+        }
+        log.info("秒杀订单消费者启动，stream={}, group={}, consumers={}", SECKILL_ORDER_STREAM_KEY, streamGroup, streamConsumers);
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        if (seckillOrderExecutor == null) {
+            return;
+        }
+        // 消费者最多阻塞2秒读取消息，等待当前消息处理完，未ACK的消息下次启动会从pending-list恢复
+        seckillOrderExecutor.shutdown();
+        try {
+            seckillOrderExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 创建消费者组（XGROUP CREATE stream.orders g1 0 MKSTREAM）
+     * 组已存在时Redis返回BUSYGROUP错误，忽略即可
+     */
+    private void createStreamGroup() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8), streamGroup, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+    
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+    
+    /**
+     * 异步下单任务：基于Redis Stream消费者组读取订单消息并写入数据库
+     * 
+     * 可靠性保证：
+     * 1. 消息在数据库事务提交之后才ACK，处理过程中宕机，消息会留在pending-list中
+     * 2. 启动时先处理自己的pending-list，再读取新消息；写库失败留下未ACK的消息时、以及每隔 claim-idle-ms，
+     *    都会重新处理自己的pending-list
+     * 3. 写库失败（数据库不可用等）按100毫秒起、每次翻倍、最长 retry-max-backoff-ms 退避重试，直到写入成功，
+     *    不转入死信队列：订单已经被接受，短暂的数据库故障不能让它们变成死信
+     * 4. 定期认领其他消费者空闲太久的pending消息（对方节点宕机的情况）
+     * 5. 下单时有一人一单校验，消息重复投递不会重复下单
+     * 6. 只有数据库拒绝的订单（库存不足、用户已有其他订单、数据违反约束）和格式错误的消息转入死信队列并记录原因，
+     *    不会当作成功ACK
+     * 7. 定期裁剪所有消费者组都已经ACK的消息（XTRIM MINID），Stream不会无限增长
+     */
+    private class VoucherOrderHandler implements Runnable {
+        
+        private final String consumerName;
+        private long lastClaimTime = System.currentTimeMillis();
+        private long lastTrimTime = System.currentTimeMillis();
+        
+        VoucherOrderHandler(String consumerName) {
+            this.consumerName = consumerName;
+        }
+        
+        @Override
+        public void run() {
+            // 1. 启动时先恢复自己未确认的消息
+            handlePendingList();
+            while (running) {
+                try {
+                    // 2. 按时间/数量窗口攒一批新消息
+                    List<MapRecord<String, Object, Object>> records = readBatch();
+                    // 3. 批量下单并ACK，有订单没有写入时留在pending-list中，退避重试直到写入成功
+                    if (!records.isEmpty() && !writeBatch(records)) {
+                        handlePendingList();
+                    }
+                    // 4. 定期认领宕机消费者遗留的消息，并重新处理自己的pending-list
+                    claimIdlePending();
+                    // 5. 定期裁剪已经ACK的消息
+                    trimAcknowledged();
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("处理订单异常，consumer={}", consumerName, e);
+                    // 处理失败的消息还在pending-list中，重新处理一遍
+                    handlePendingList();
+                }
+            }
+        }
+        
+        /**
+         * 攒批读取新消息
+         * 
+         * 第一次读取最多阻塞2秒等待消息；读到消息后开始计时，
+         * 在 batch-window-ms 时间内继续读取，直到凑满 batch-size 条或时间窗口结束
+         * 
+         * XREADGROUP GROUP g1 c1 COUNT n BLOCK t STREAMS stream.orders >
+         */
+        private List<MapRecord<String, Object, Object>> readBatch() {
+            List<MapRecord<String, Object, Object>> batch = new ArrayList<>(batchSize);
+            List<MapRecord<String, Object, Object>> list = readNew(batchSize, Duration.ofSeconds(2));
+            if (list == null || list.isEmpty()) {
+                return batch;
+            }
+            batch.addAll(list);
+            long deadline = System.currentTimeMillis() + batchWindowMillis;
+            while (running && batch.size() < batchSize) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                list = readNew(batchSize - batch.size(), Duration.ofMillis(remaining));
+                if (list == null || list.isEmpty()) {
+                    break;
+                }
+                batch.addAll(list);
+            }
+            return batch;
+        }
+        
+        private List<MapRecord<String, Object, Object>> readNew(int count, Duration block) {
+            return stringRedisTemplate.opsForStream().read(
+                    Consumer.from(streamGroup, consumerName),
+                    StreamReadOptions.empty().count(count).block(block),
+                    StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.lastConsumed())
+            );
+        }
+        
+        /**
+         * 处理pending-list中的消息（已投递给本消费者，但还没有ACK），直到pending-list为空
+         * 
+         * 有消息没有写入（数据库不可用）或读取异常（Redis不可用）时退避重试，退避间隔逐次翻倍；
+         * 重试期间不读取新消息，新消息留在Stream中，恢复后继续处理
+         */
+        private void handlePendingList() {
+            long backoff = 0;
+            while (running) {
+                try {
+                    // XREADGROUP GROUP g1 c1 COUNT n STREAMS stream.orders 0
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(streamGroup, consumerName),
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(SECKILL_ORDER_STREAM_KEY, ReadOffset.from("0"))
+                    );
+                    if (list == null || list.isEmpty()) {
+                        // pending-list中没有消息了
+                        return;
+                    }
+                    if (writeBatch(list)) {
+                        backoff = 0;
+                        continue;
+                    }
+                } catch (Exception e) {
+                    log.error("处理pending订单异常，consumer={}", consumerName, e);
+                }
+                backoff = backoff == 0 ? RETRY_INITIAL_BACKOFF_MILLIS : Math.min(backoff * 2, retryMaxBackoffMillis);
+                log.warn("pending订单没有全部写入，{}毫秒后重试，consumer={}", backoff, consumerName);
+                if (!sleepWhileRunning(backoff)) {
+                    return;
+                }
+            }
+        }
+        
+        /**
+         * 批量写库（组提交）
+         * 
+         * 1. 整批在一个事务中：一次查询过滤已存在订单，每张券一条 stock = stock - N，一条多行INSERT
+         * 2. 整批被拒绝时（某张券数据库库存不足、某个用户已有其他订单），退化为逐条下单，单条被拒绝不影响其他订单；
+         *    整批因为其他异常失败（数据库不可用等）单独记录，同样逐条尝试（见 SeckillOrderBatchWriter）
+         * 3. 逐条下单时被数据库拒绝的订单（库存不足、用户已有其他订单）重试也不会成功：
+         *    转入死信队列并记录原因，由人工处理（退款、通知用户），不会当作成功ACK
+         * 4. 逐条下单时其他异常（数据库不可用等）视为暂时性故障：不再尝试剩余订单，
+         *    未写入的消息不ACK，留在pending-list中由调用方退避重试
+         * 5. 成功的消息一次XACK
+         * 
+         * @return 所有消息是否都已经处理完（写入或转入死信队列），false表示有消息留在pending-list中等待重试
+         */
+        private boolean writeBatch(List<MapRecord<String, Object, Object>> records) {
+            List<MapRecord<String, Object, Object>> valid = new ArrayList<>(records.size());
+            List<VoucherOrder> orders = new ArrayList<>(records.size());
+            for (MapRecord<String, Object, Object> record : records) {
+                VoucherOrder order = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+                if (order.getId() == null || order.getUserId() == null || order.getVoucherId() == null) {
+                    moveToDeadLetter(record, "消息格式错误");
+                    continue;
+                }
+                valid.add(record);
+                orders.add(order);
+            }
+            if (orders.isEmpty()) {
+                return true;
+            }
+            
+            long begin = System.currentTimeMillis();
+            SeckillOrderBatchWriter.Outcome<MapRecord<String, Object, Object>> outcome = orderBatchWriter.write(valid, orders);
+            batchWriteMillis.addAndGet(System.currentTimeMillis() - begin);
+            if (outcome.isBatched()) {
+                batchCount.incrementAndGet();
+            } else {
+                batchFallbackCount.incrementAndGet();
+                if (outcome.getBatchRejection() != null) {
+                    // 批内有订单被数据库拒绝，逐条下单时只有这些订单转入死信队列
+                    batchRejectedCount.incrementAndGet();
+                    log.info("批量下单有订单被拒绝，逐条下单，consumer={}, size={}, cause={}",
+                            consumerName, orders.size(), outcome.getBatchRejection().getMessage());
+                } else {
+                    log.warn("批量下单失败，退化为逐条下单，consumer={}, size={}, cause={}",
+                            consumerName, orders.size(), outcome.getBatchFailure().toString());
+                }
+            }
+            outcome.getRejected().forEach((record, reason) -> {
+                rejectedCount.incrementAndGet();
+                moveToDeadLetter(record, reason);
+            });
+            if (!outcome.isComplete()) {
+                failedCount.incrementAndGet();
+                log.error("下单失败，等待重试，consumer={}, order={}", consumerName, outcome.getFailedOrder(), outcome.getFailure());
+            }
+            List<RecordId> done = outcome.getWritten().stream()
+                    .map(MapRecord::getId)
+                    .collect(Collectors.toList());
+            
+            // 事务提交之后再ACK
+            if (!done.isEmpty()) {
+                stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, streamGroup, done.toArray(new RecordId[0]));
+                consumedCount.addAndGet(done.size());
+                consumedByConsumer.computeIfAbsent(consumerName, k -> new AtomicLong()).addAndGet(done.size());
+            }
+            return outcome.isComplete();
+        }
+        
+        /**
+         * 被数据库拒绝、格式错误的消息转入死信队列并ACK，等待人工处理
+         *
+         * @param reason 转入死信队列的原因
+         */
+        private void moveToDeadLetter(MapRecord<String, Object, Object> record, String reason) {
+            Map<String, String> value = new LinkedHashMap<>();
+            record.getValue().forEach((k, v) -> value.put(k.toString(), v.toString()));
+            value.put("sourceId", record.getId().getValue());
+            value.put("reason", reason);
+            stringRedisTemplate.opsForStream().add(StreamRecords.string(value).withStreamKey(SECKILL_ORDER_DEAD_LETTER_KEY));
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, streamGroup, record.getId());
+            deadLetterCount.incrementAndGet();
+            log.error("订单消息转入死信队列，recordId={}, value={}", record.getId(), value);
+        }
+        
+        /**
+         * 每隔 claim-idle-ms：
+         * 1. 认领其他消费者空闲超时的pending消息（XCLAIM）
+         * 2. 处理自己的pending-list（认领到的消息，以及自己之前没有写入成功的消息）
+         */
+        private void claimIdlePending() {
+            long now = System.currentTimeMillis();
+            if (now - lastClaimTime < claimIdleMillis) {
+                return;
+            }
+            lastClaimTime = now;
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM_KEY, streamGroup, Range.unbounded(), 100);
+            List<RecordId> idleIds = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (!consumerName.equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMillis) {
+                    idleIds.add(message.getId());
+                }
+            }
+            if (!idleIds.isEmpty()) {
+                List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(
+                        SECKILL_ORDER_STREAM_KEY, streamGroup, consumerName,
+                        Duration.ofMillis(claimIdleMillis), idleIds.toArray(new RecordId[0]));
+                claimedCount.addAndGet(claimed.size());
+                log.warn("认领空闲pending订单消息，consumer={}, count={}", consumerName, claimed.size());
+            }
+            handlePendingList();
+        }
+        
+        /**
+         * 裁剪所有消费者组都已经ACK的消息
+         * 
+         * 每个组中还需要保留的最小ID：有pending消息时为最小的pending ID，否则为最后投递的ID，
+         * XTRIM stream.orders MINID ~ 所有组中最小的ID（~ 只删除整块的节点，不会删除更新的消息）
+         */
+        private void trimAcknowledged() {
+            long now = System.currentTimeMillis();
+            if (now - lastTrimTime < trimIntervalMillis) {
+                return;
+            }
+            lastTrimTime = now;
+            String minId = null;
+            for (StreamInfo.XInfoGroup group : stringRedisTemplate.opsForStream().groups(SECKILL_ORDER_STREAM_KEY)) {
+                String keep = group.lastDeliveredId();
+                if (group.pendingCount() > 0) {
+                    PendingMessagesSummary summary = stringRedisTemplate.opsForStream()
+                            .pending(SECKILL_ORDER_STREAM_KEY, group.groupName());
+                    if (summary != null && summary.minMessageId() != null) {
+                        keep = summary.minMessageId();
+                    }
+                }
+                if (minId == null || compareRecordIds(keep, minId) < 0) {
+                    minId = keep;
+                }
+            }
+            if (minId == null || "0-0".equals(minId)) {
+                return;
+            }
+            byte[][] args = {
+                    SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8),
+                    "MINID".getBytes(StandardCharsets.UTF_8),
+                    "~".getBytes(StandardCharsets.UTF_8),
+                    minId.getBytes(StandardCharsets.UTF_8)};
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XTRIM", args));
+        }
+    }
+    
+    /**
+     * 比较两个Stream消息ID（毫秒时间戳-序号）
+     */
+    private static int compareRecordIds(String a, String b) {
+        RecordId x = RecordId.of(a);
+        RecordId y = RecordId.of(b);
+        int c = Long.compare(x.getTimestamp(), y.getTimestamp());
+        return c != 0 ? c : Long.compare(x.getSequence(), y.getSequence());
+    }
+    
+    /**
+     * 退避等待，分成小段睡眠，应用关闭时尽快退出
+     *
+     * @return false表示应用正在关闭或线程被中断
+     */
+    private boolean sleepWhileRunning(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            while (running) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return true;
+                }
+                Thread.sleep(Math.min(remaining, 100));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+    
+    @Override
+    public Result seckillVoucher(Long voucherId) {
+        // 布隆过滤器判断一定不存在的券直接拒绝（随机ID攻击）
+        if (!voucherBloomFilter.mightContain(voucherId)) {
+            return Result.fail("秒杀券不存在！");
+        }
+        // 本地售罄标记：已经卖完的券直接拒绝，不访问Redis和MySQL
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足！");
+        }
+        if ("sync".equalsIgnoreCase(seckillMode)) {
+            return seckillVoucherSync(voucherId);
+        }
+        return seckillVoucherAsync(voucherId);
+    }
+    
     /**
-     * 秒杀优惠券
+     * 秒杀优惠券（Lua脚本 + Stream异步写库版本）
+     * 
+     * 核心流程：
+     * 1. 生成订单ID
+     * 2. 执行Lua脚本，在Redis中原子性地判断时间、库存、一人一单，预扣库存并把订单发送到Stream
+     * 3. 立即返回订单ID，由Stream消费者异步扣减数据库库存、保存订单
+     * 
+     * 和同步版本相比，请求线程不再访问MySQL，也不再需要JVM锁；
+     * 订单消息保存在Redis中，应用宕机也不会丢失已经接受的订单
+     * 
+     * @param voucherId 优惠券ID
+     * @return 订单ID
+     */
+    public Result seckillVoucherAsync(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        long orderId = redisIdWorker.nextId("order");
+        long stockVersion = soldOutRegistry.version(voucherId);
+        
+        // 1. 执行Lua脚本
+        Long result = executeSeckill(voucherId, userId, orderId, segmentCount(voucherId));
+        if (result == -1) {
+            // 秒杀券还没有预热到Redis（例如功能上线前创建的券），从数据库加载后重试一次
+            // 预热会重新写入分段数，重试前重新读取（之前可能在分段数据提交前读到了默认值1，只影响扣减哪个数据库分段）
+            if (!preloadSeckillVoucher(voucherId)) {
+                return Result.fail("秒杀券不存在！");
+            }
+            result = executeSeckill(voucherId, userId, orderId, segmentCount(voucherId));
+        }
+        
+        // 2. 判断结果
+        int r = result.intValue();
+        if (r == 1) {
+            // 库存为0，打上本地售罄标记并通知其他节点
+            soldOutRegistry.markSoldOut(voucherId, stockVersion);
+        }
+        if (r != 0) {
+            return Result.fail(seckillFailMessage(r));
+        }
+        
+        // 3. 返回订单ID
+        return Result.ok(orderId);
+    }
+    
+    /**
+     * 执行秒杀脚本（每次秒杀只执行一次，只访问这张券自己的key）
+     * 
+     * 分段库存的券在Redis中仍然只有一个库存key，分段只用于数据库：用户按ID哈希到自己的"主分段"，
+     * 分段编号随订单消息发送，消费者从主分段开始扣减数据库库存，不同用户的订单分散到不同的库存行上
+     * 
+     * @param segments 数据库库存分段数，不分段为1
+     * @return 脚本返回值，没有预热到Redis时返回-1
+     */
+    private Long executeSeckill(Long voucherId, Long userId, long orderId, int segments) {
+        List<String> keys = Arrays.asList(
+                SECKILL_STOCK_KEY + voucherId,
+                SECKILL_ORDER_KEY + voucherId,
+                SECKILL_TIME_KEY + voucherId,
+                SECKILL_ORDER_STREAM_KEY);
+        Long result;
+        if (segments <= 1) {
+            result = stringRedisTemplate.execute(SECKILL_SCRIPT, keys,
+                    userId.toString(), String.valueOf(System.currentTimeMillis()),
+                    voucherId.toString(), String.valueOf(orderId));
+        } else {
+            result = stringRedisTemplate.execute(SECKILL_SCRIPT, keys,
+                    userId.toString(), String.valueOf(System.currentTimeMillis()),
+                    voucherId.toString(), String.valueOf(orderId), String.valueOf(homeSegment(userId, segments)));
+        }
+        return result == null ? -1L : result;
+    }
+    
+    /**
+     * 查询秒杀券的数据库库存分段数，先查本地缓存，再查Redis，Redis中没有（未预热）时查数据库
+     * 
+     * 数据库的查询结果不缓存：秒杀券的事务可能还没有提交（布隆过滤器在提交前就已经写入），
+     * 这时查不到分段数据，缓存默认值1会让这个节点的订单一直扣减不分段的库存；
+     * 预热写入Redis之后再读取到的才是确定的分段数
+     */
+    private int segmentCount(Long voucherId) {
+        Integer count = segmentCounts.getIfPresent(voucherId);
+        if (count != null) {
+            return count;
+        }
+        String cached = stringRedisTemplate.opsForValue().get(SECKILL_SEGMENTS_KEY + voucherId);
+        if (cached != null) {
+            count = Integer.parseInt(cached);
+            segmentCounts.put(voucherId, count);
+            return count;
+        }
+        return Math.max(segmentService.query().eq("voucher_id", voucherId).count().intValue(), 1);
+    }
+    
+    /**
+     * 用户的主分段
+     */
+    private static int homeSegment(Long userId, int segments) {
+        return Math.floorMod(Long.hashCode(userId), segments);
+    }
+    
+    private static String seckillFailMessage(int result) {
+        switch (result) {
+            case 1:
+                return "库存不足！";
+            case 2:
+                return "每人限购一张！";
+            case 3:
+                return "秒杀尚未开始！";
+            case 4:
+                return "秒杀已经结束！";
+            default:
+                return "秒杀券不存在！";
+        }
+    }
+    
+    /**
+     * 查询订单消息队列的运行状态
+     * 
+     * - length：Stream中的消息总数
+     * - pending：已投递但未ACK的消息数（正在处理或处理失败待恢复）
+     * - lag：还没有投递给任何消费者的消息数（积压量，用于评估需要多少消费者），
+     *   取 XINFO GROUPS 的 lag（Redis 7）；没有时用 length - pending 估算（已ACK的消息会被定期裁剪）
+     * - throughput：本节点启动以来的平均消费速度（条/秒）
+     */
+    @Override
+    public Result queryOrderStreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stream", SECKILL_ORDER_STREAM_KEY);
+        stats.put("group", streamGroup);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(SECKILL_ORDER_STREAM_KEY))) {
+            // 还没有任何订单消息（或当前为同步模式）
+            return Result.ok(stats);
+        }
+        stats.put("length", stringRedisTemplate.opsForStream().size(SECKILL_ORDER_STREAM_KEY));
+        
+        StreamInfo.XInfoGroup group = stringRedisTemplate.opsForStream().groups(SECKILL_ORDER_STREAM_KEY)
+                .stream()
+                .filter(g -> streamGroup.equals(g.groupName()))
+                .findFirst()
+                .orElse(null);
+        if (group != null) {
+            stats.put("pending", group.pendingCount());
+            stats.put("consumerCount", group.consumerCount());
+            stats.put("lastDeliveredId", group.lastDeliveredId());
+            stats.put("lag", lagOf(group, (Long) stats.get("length")));
+        }
+        
+        long elapsedSeconds = Math.max(1, (System.currentTimeMillis() - consumeStartTime) / 1000);
+        stats.put("localConsumers", streamConsumers);
+        stats.put("consumed", consumedCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("deadLetter", deadLetterCount.get());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("claimed", claimedCount.get());
+        stats.put("throughput", consumedCount.get() / elapsedSeconds);
+        long batches = batchCount.get() + batchFallbackCount.get();
+        stats.put("batches", batches);
+        stats.put("batchFallbacks", batchFallbackCount.get());
+        stats.put("batchRejections", batchRejectedCount.get());
+        stats.put("avgBatchSize", batches == 0 ? 0 : consumedCount.get() / batches);
+        stats.put("avgBatchWriteMillis", batches == 0 ? 0 : batchWriteMillis.get() / batches);
+        Map<String, Long> perConsumer = new LinkedHashMap<>();
+        consumedByConsumer.forEach((name, count) -> perConsumer.put(name, count.get()));
+        stats.put("consumedByConsumer", perConsumer);
+        return Result.ok(stats);
+    }
+    
+    /**
+     * 消费者组的积压量：优先使用 XINFO GROUPS 返回的 lag，不需要扫描Stream
+     */
+    private static long lagOf(StreamInfo.XInfoGroup group, Long length) {
+        Object lag = group.getRaw().get("lag");
+        if (lag instanceof Number) {
+            return ((Number) lag).longValue();
+        }
+        if (lag != null) {
+            return Long.parseLong(lag.toString());
+        }
+        return Math.max(0, (length == null ? 0 : length) - group.pendingCount());
+    }
+    
+    /**
+     * 将数据库中的秒杀券信息加载到Redis
+     * 
+     * 用于新模式上线前已经创建的秒杀券，以及Redis数据丢失后的缓存预热：
+     * - 库存使用 SETNX 写入，多个节点同时加载也只会有一个生效
+     * - 读取数据库库存之前先读取补充次数，写入时补充次数变了（加载期间补充过库存，而补充时库存key还不存在），
+     *   说明读到的可能是补充之前的库存，重新读取数据库后再写入（seckill_preload_stock.lua）
+     * - 分段库存的券，Redis库存为各分段库存之和
+     * - 分段数（不分段的券为1）写入 seckill:segments:{id}，并清除本节点缓存的分段数，下次重新读取
+     * - 已下单用户从订单表同步到购买记录集合，保证一人一单
+     * 
+     * @param voucherId 优惠券ID
+     * @return 秒杀券是否存在
+     */
+    @Override
+    public boolean preloadSeckillVoucher(Long voucherId) {
+        String replenished = replenishCount(voucherId);
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (voucher == null) {
+            return false;
+        }
+        List<SeckillVoucherSegment> segments = segmentService.listSegments(voucherId);
+        // 1. 已下单用户
+        List<String> userIds = query().select("user_id").eq("voucher_id", voucherId).list()
+                .stream()
+                .map(order -> order.getUserId().toString())
+                .collect(Collectors.toList());
+        if (!userIds.isEmpty()) {
+            stringRedisTemplate.opsForSet().add(SECKILL_ORDER_KEY + voucherId, userIds.toArray(new String[0]));
+        }
+        // 2. 秒杀时间
+        Map<String, String> timeMap = new HashMap<>(2);
+        timeMap.put("begin", String.valueOf(voucher.getBeginTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        timeMap.put("end", String.valueOf(voucher.getEndTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        stringRedisTemplate.opsForHash().putAll(SECKILL_TIME_KEY + voucherId, timeMap);
+        // 3. 库存（最后写入，脚本以库存key是否存在判断是否已预热）
+        stringRedisTemplate.opsForValue().set(SECKILL_SEGMENTS_KEY + voucherId, String.valueOf(Math.max(segments.size(), 1)));
+        segmentCounts.invalidate(voucherId);
+        SeckillVoucher stockVoucher = voucher;
+        List<SeckillVoucherSegment> stockSegments = segments;
+        for (int attempt = 1; !writePreloadedStock(voucherId, replenished, stockVoucher, stockSegments); attempt++) {
+            if (attempt >= PRELOAD_STOCK_ATTEMPTS) {
+                log.warn("加载秒杀券库存期间持续补充库存，等待下次加载，voucherId={}", voucherId);
+                return true;
+            }
+            replenished = replenishCount(voucherId);
+            stockVoucher = seckillVoucherService.getById(voucherId);
+            stockSegments = segmentService.listSegments(voucherId);
+            if (stockVoucher == null) {
+                return false;
+            }
+        }
+        log.info("秒杀券加载到Redis，voucherId={}, segments={}, 已下单用户数={}", voucherId, segments.size(), userIds.size());
+        return true;
+    }
+    
+    private String replenishCount(Long voucherId) {
+        String count = stringRedisTemplate.opsForValue().get(SECKILL_REPLENISH_KEY + voucherId);
+        return count == null ? "0" : count;
+    }
+    
+    /**
+     * 补充次数没有变化时 SETNX 写入库存（分段库存的券写入各分段库存之和）
+     * 
+     * @param replenished 读取数据库库存之前读到的补充次数
+     * @return false表示读取数据库期间补充过库存，需要重新读取
+     */
+    private boolean writePreloadedStock(Long voucherId, String replenished, SeckillVoucher voucher,
+                                        List<SeckillVoucherSegment> segments) {
+        int stock = segments.isEmpty()
+                ? voucher.getStock()
+                : segments.stream().mapToInt(SeckillVoucherSegment::getStock).sum();
+        Long result = stringRedisTemplate.execute(PRELOAD_STOCK_SCRIPT,
+                Arrays.asList(SECKILL_REPLENISH_KEY + voucherId, SECKILL_STOCK_KEY + voucherId),
+                replenished, String.valueOf(stock));
+        return result != null && result == 1;
+    }
+    
+    /**
+     * 秒杀优惠券（同步乐观锁版本）
      * 
      * 核心流程：
      * 1. 查询秒杀券信息
@@ -48,14 +904,15 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      * 
      * 关键技术点：
      * - 乐观锁：解决超卖问题
-     * - 分布式锁：解决一人一单问题（集群环境下）
+     * - 用户锁：解决一人一单问题（本地分段锁 / Redis分布式锁，见 UserLockRegistry）
      * - 全局唯一ID：订单ID生成
      * 
      * @param voucherId 优惠券ID
      * @return 订单ID
      */
-    @Override
-    public Result seckillVoucher(Long voucherId) {
+    public Result seckillVoucherSync(Long voucherId) {
+        long stockVersion = soldOutRegistry.version(voucherId);
+        
         // 1. 查询秒杀优惠券
         SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
         
@@ -72,9 +929,10 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             return Result.fail("秒杀已经结束！");
         }
         
-        // 3. 判断库存是否充足
-        if (voucher.getStock() < 1) {
-            // 库存不足
+        // 3. 判断库存是否充足（分段库存的券以分段为准，在扣减时判断）
+        if (segmentCount(voucherId) <= 1 && voucher.getStock() < 1) {
+            // 库存不足，打上本地售罄标记并通知其他节点
+            soldOutRegistry.markSoldOut(voucherId, stockVersion);
             return Result.fail("库存不足！");
         }
         
@@ -82,18 +940,16 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         // 获取当前登录用户ID
         Long userId = UserHolder.getUser().getId();
         
-        // 使用用户ID作为锁对象，确保同一个用户的多个请求串行执行
-        // 为什么要用 toString().intern()？
-        // - toString() 会创建新的String对象，每次都不同
-        // - intern() 会返回字符串常量池中的对象，相同内容的字符串返回同一个对象
-        // - 这样同一个用户ID就会使用同一把锁
-        synchronized (userId.toString().intern()) {
-            // 获取代理对象（因为Spring事务是基于代理实现的）
-            // 如果直接调用 this.createVoucherOrder()，事务不会生效
-            // 因为 this 是当前对象，不是Spring的代理对象
-            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-            return proxy.createVoucherOrder(voucherId);
-        }
+        // 按用户加锁，确保同一个用户的多个请求串行执行
+        // 锁必须包住整个事务（事务提交之后才释放），否则其他请求可能在提交前查询到"未下单"
+        //
+        // 获取代理对象（因为Spring事务是基于代理实现的）
+        // 如果直接调用 this.createVoucherOrder()，事务不会生效
+        // 因为 this 是当前对象，不是Spring的代理对象
+        IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
+        return userLockRegistry.executeWithLock("seckill", userId,
+                () -> proxy.createVoucherOrder(voucherId),
+                () -> Result.fail("请勿重复下单！"));
     }
     
     /**
@@ -115,6 +971,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     public Result createVoucherOrder(Long voucherId) {
         // 1. 一人一单校验
         Long userId = UserHolder.getUser().getId();
+        long stockVersion = soldOutRegistry.version(voucherId);
         
         // 1.1 查询订单
         Long count = query()
@@ -148,14 +1005,25 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         // 缺点：
         // - 可能失败率较高（库存充足但更新失败）
         // - 需要重试机制（本例中直接返回失败）
-        boolean success = seckillVoucherService.update()
-                .setSql("stock = stock - 1")  // set stock = stock - 1
-                .eq("voucher_id", voucherId)  // where voucher_id = ?
-                .gt("stock", 0)  // and stock > 0（乐观锁的关键！）
-                .update();
+        //
+        // 分段库存的券：从用户的主分段开始依次尝试扣减各个分段，热点行锁分散到多行
+        int segments = segmentCount(voucherId);
+        Integer stockSegment = null;
+        boolean success;
+        if (segments <= 1) {
+            success = seckillVoucherService.update()
+                    .setSql("stock = stock - 1")  // set stock = stock - 1
+                    .eq("voucher_id", voucherId)  // where voucher_id = ?
+                    .gt("stock", 0)  // and stock > 0（乐观锁的关键！）
+                    .update();
+        } else {
+            stockSegment = deductAnySegment(voucherId, homeSegment(userId, segments), segments);
+            success = stockSegment != null;
+        }
         
         if (!success) {
-            // 扣减库存失败
+            // 扣减库存失败，说明库存已经为0
+            soldOutRegistry.markSoldOut(voucherId, stockVersion);
             return Result.fail("库存不足！");
         }
         
@@ -171,6 +1039,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         
         // 3.3 优惠券ID
         voucherOrder.setVoucherId(voucherId);
+        voucherOrder.setStockSegment(stockSegment);
         
         // 3.4 保存订单
         save(voucherOrder);
@@ -178,4 +1047,170 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         // 4. 返回订单ID
         return Result.ok(orderId);
     }
+    
+    /**
+     * 从主分段开始依次尝试扣减分段库存（主分段卖完后从其他分段"偷"库存，只要还有库存就不会误报售罄）
+     * 
+     * @return 扣减成功的分段编号，所有分段都没有库存时返回null
+     */
+    private Integer deductAnySegment(Long voucherId, int home, int segments) {
+        for (int i = 0; i < segments; i++) {
+            int segment = (home + i) % segments;
+            if (segmentService.deductStock(voucherId, segment, 1)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 创建优惠券订单（异步写库，事务方法）
+     * 
+     * Lua脚本已经在Redis中完成了库存和一人一单的判断，这里是数据库层面的兜底：
+     * - 一人一单：再查一次订单表，防止Redis数据丢失后重复下单
+     * - 扣减库存：仍然使用乐观锁，防止数据库超卖
+     * 
+     * 同一条消息重复投递（订单已经写入）直接返回；用户已经有其他订单、数据库库存不足时，
+     * 抛出 SeckillOrderRejectedException：用户已经收到了订单ID，调用方要把消息转入死信队列，不能丢弃
+     * 
+     * @param voucherOrder 订单信息
+     */
+    @Override
+    @Transactional
+    public void createVoucherOrder(VoucherOrder voucherOrder) {
+        Long userId = voucherOrder.getUserId();
+        Long voucherId = voucherOrder.getVoucherId();
+        
+        // 1. 一人一单校验
+        List<VoucherOrder> existing = query()
+                .select("id")
+                .eq("user_id", userId)
+                .eq("voucher_id", voucherId)
+                .list();
+        if (!existing.isEmpty()) {
+            if (existing.stream().anyMatch(order -> order.getId().equals(voucherOrder.getId()))) {
+                // 消息重复投递，订单已经写入
+                return;
+            }
+            log.error("用户已经购买过一次，userId={}, voucherId={}, orderId={}", userId, voucherId, voucherOrder.getId());
+            throw new SeckillOrderRejectedException("用户已经购买过一次");
+        }
+        
+        // 2. 扣减库存（分段库存的券从订单消息中的主分段开始扣减，主分段卖完后扣减其他分段）
+        boolean success;
+        if (voucherOrder.getStockSegment() == null) {
+            success = seckillVoucherService.update()
+                    .setSql("stock = stock - 1")
+                    .eq("voucher_id", voucherId)
+                    .gt("stock", 0)
+                    .update();
+        } else {
+            Integer deducted = deductAnySegment(voucherId, voucherOrder.getStockSegment(), segmentCount(voucherId));
+            success = deducted != null;
+            if (success) {
+                voucherOrder.setStockSegment(deducted);
+            }
+        }
+        if (!success) {
+            log.error("数据库库存不足，voucherId={}, segment={}, orderId={}", voucherId, voucherOrder.getStockSegment(), voucherOrder.getId());
+            throw new SeckillOrderRejectedException("数据库库存不足");
+        }
+        
+        // 3. 保存订单（违反约束的数据重试也不会成功，按拒绝处理）
+        try {
+            save(voucherOrder);
+        } catch (DataIntegrityViolationException e) {
+            log.error("订单数据被数据库拒绝，orderId={}", voucherOrder.getId(), e);
+            throw new SeckillOrderRejectedException("订单数据被数据库拒绝：" + e.getMostSpecificCause().getMessage());
+        }
+    }
+    
+    /**
+     * 批量创建优惠券订单（组提交，事务方法）
+     * 
+     * 和逐条下单相比：
+     * - N条订单只需要：1次一人一单查询 + 每张券1次扣库存 + 1次多行INSERT
+     * - 热点券的 tb_seckill_voucher 行锁每批只加一次，持有时间大幅缩短
+     * 
+     * 任何一张券数据库库存不足、任何一个用户已经有其他订单，都会抛出 SeckillOrderRejectedException 回滚整批，
+     * 由调用方退化为逐条下单，逐条下单时被拒绝的订单转入死信队列，其余订单正常写入；
+     * 其他异常（数据库不可用等）原样抛出，调用方据此区分业务拒绝和暂时性故障；
+     * 重复投递的消息（订单已经写入）直接跳过
+     * 
+     * @param voucherOrders 订单列表
+     */
+    @Override
+    @Transactional
+    public void createVoucherOrderBatch(List<VoucherOrder> voucherOrders) {
+        // 1. 批内去重（同一条消息重复投递只保留一条，同一用户同一张券的不同订单交给逐条下单处理）
+        Map<String, VoucherOrder> orderMap = SeckillOrderBatchWriter.dedupe(voucherOrders);
+        
+        // 2. 一人一单校验：一次查询出已经存在的订单
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> voucherIds = new HashSet<>();
+        orderMap.values().forEach(order -> {
+            userIds.add(order.getUserId());
+            voucherIds.add(order.getVoucherId());
+        });
+        List<VoucherOrder> existing = query()
+                .select("id", "user_id", "voucher_id")
+                .in("user_id", userIds)
+                .in("voucher_id", voucherIds)
+                .list();
+        for (VoucherOrder order : existing) {
+            String key = SeckillOrderBatchWriter.key(order);
+            VoucherOrder pending = orderMap.get(key);
+            if (pending == null) {
+                continue;
+            }
+            if (!pending.getId().equals(order.getId())) {
+                // 用户已经有其他订单，回滚整批，逐条下单时转入死信队列
+                throw new SeckillOrderRejectedException("用户已经购买过一次，userId=" + order.getUserId() + ", voucherId=" + order.getVoucherId());
+            }
+            // 消息重复投递，订单已经写入
+            orderMap.remove(key);
+        }
+        if (orderMap.isEmpty()) {
+            return;
+        }
+        List<VoucherOrder> orders = new ArrayList<>(orderMap.values());
+        
+        // 3. 按券（分段库存的券按券+主分段）合并扣减库存：stock = stock - N
+        //    按券ID、分段编号排序加锁，避免多个消费者之间死锁
+        Map<Long, Integer> countByVoucher = new TreeMap<>();
+        Map<Long, Map<Integer, Integer>> countBySegment = new TreeMap<>();
+        for (VoucherOrder order : orders) {
+            if (order.getStockSegment() == null) {
+                countByVoucher.merge(order.getVoucherId(), 1, Integer::sum);
+            } else {
+                countBySegment.computeIfAbsent(order.getVoucherId(), k -> new TreeMap<>())
+                        .merge(order.getStockSegment(), 1, Integer::sum);
+            }
+        }
+        countByVoucher.forEach((voucherId, count) -> {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", voucherId)
+                    .ge("stock", count)
+                    .update();
+            if (!success) {
+                throw new SeckillOrderRejectedException("数据库库存不足，voucherId=" + voucherId + ", count=" + count);
+            }
+        });
+        countBySegment.forEach((voucherId, counts) -> counts.forEach((segment, count) -> {
+            if (segmentService.deductStock(voucherId, segment, count)) {
+                return;
+            }
+            // 主分段不够整批扣减：Redis库存是各分段之和，其他分段可能还有库存，逐个从其他分段扣减
+            int segments = segmentCount(voucherId);
+            for (int i = 0; i < count; i++) {
+                if (deductAnySegment(voucherId, segment, segments) == null) {
+                    throw new SeckillOrderRejectedException("数据库库存不足，voucherId=" + voucherId + ", segment=" + segment + ", count=" + count);
+                }
+            }
+        }));
+        
+        // 4. 多行INSERT保存订单
+        getBaseMapper().insertBatch(orders);
+    }
 }
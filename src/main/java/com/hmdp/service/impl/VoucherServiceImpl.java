@@ -1,17 +1,54 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.lang.TypeReference;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.SeckillVoucherSegment;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
+import com.hmdp.service.ICacheInvalidationService;
+import com.hmdp.service.ISeckillVoucherSegmentService;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidationBus;
+import com.hmdp.utils.CachePolicy;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.IdBloomFilter;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_REPLENISH_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENTS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
 
 /**
  * <p>
@@ -21,18 +58,132 @@ import java.util.List;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private ISeckillVoucherSegmentService segmentService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private IdBloomFilter shopBloomFilter;
+
+    @Resource
+    private IdBloomFilter voucherBloomFilter;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Resource
+    private ICacheInvalidationService cacheInvalidationService;
+
+    /**
+     * 店铺优惠券列表缓存策略：互斥锁，有效期2~3分钟（列表中包含秒杀库存，只用于展示，实际库存以秒杀时为准）
+     */
+    private static final CachePolicy VOUCHER_CACHE_POLICY =
+            CachePolicy.of(CacheStrategy.MUTEX, CACHE_VOUCHER_SHOP_TTL, 1, TimeUnit.MINUTES);
+
+    /**
+     * 补充秒杀库存脚本（库存key存在时才增加，同时递增补充次数）
+     */
+    private static final DefaultRedisScript<Long> ADD_STOCK_SCRIPT;
+
+    static {
+        ADD_STOCK_SCRIPT = new DefaultRedisScript<>();
+        ADD_STOCK_SCRIPT.setLocation(new ClassPathResource("seckill_add_stock.lua"));
+        ADD_STOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final Type VOUCHER_LIST_TYPE = new TypeReference<List<Voucher>>() {}.getType();
+
+    /**
+     * 店铺优惠券列表在热点探测中的名称
+     */
+    private static final String HOT_KEY_VOUCHER_SHOP = "voucher-shop";
+
+    /**
+     * 新增秒杀券时默认的库存分段数（1表示不分段）
+     */
+    @Value("${hmdp.seckill.stock-segments:1}")
+    private int defaultStockSegments;
+
+    @PostConstruct
+    private void init() {
+        // 热点店铺的优惠券列表从Redis缓存加载到本节点的热点副本
+        hotKeyDetector.register(HOT_KEY_VOUCHER_SHOP, key -> queryVoucherListFromCache(Long.valueOf(key)));
+        // 优惠券列表缓存删除后，所有节点刷新热点副本
+        cacheInvalidationBus.register(HOT_KEY_VOUCHER_SHOP, key -> hotKeyDetector.refresh(HOT_KEY_VOUCHER_SHOP, key));
+    }
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        // 不存在的店铺直接返回空列表，不访问Redis和MySQL
+        if (!shopBloomFilter.mightContain(shopId)) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 热点店铺直接读本节点的热点副本
+        List<Voucher> vouchers = hotKeyDetector.get(HOT_KEY_VOUCHER_SHOP, shopId);
+        if (vouchers == null) {
+            // 查询优惠券信息（先查缓存，未命中时只有一个线程查询数据库）
+            vouchers = queryVoucherListFromCache(shopId);
+        }
         // 返回结果
-        return Result.ok(vouchers);
+        return Result.ok(vouchers == null ? Collections.emptyList() : vouchers);
+    }
+
+    private List<Voucher> queryVoucherListFromCache(Long shopId) {
+        return cacheClient.query(CACHE_VOUCHER_SHOP_KEY, shopId, VOUCHER_LIST_TYPE,
+                getBaseMapper()::queryVoucherOfShop, VOUCHER_CACHE_POLICY);
+    }
+
+    /**
+     * 删除店铺的优惠券列表缓存（在事务中调用时，事务提交后才删除），店铺是热点时所有节点立即刷新热点副本
+     */
+    private void evictVoucherListCache(Long shopId) {
+        cacheInvalidationService.invalidate(CACHE_VOUCHER_SHOP_KEY + shopId, HOT_KEY_VOUCHER_SHOP, shopId.toString());
+    }
+
+    /**
+     * 新增优惠券后写入布隆过滤器，删除店铺的优惠券列表缓存
+     */
+    @Override
+    public boolean save(Voucher voucher) {
+        boolean saved = super.save(voucher);
+        voucherBloomFilter.put(voucher.getId());
+        evictVoucherListCache(voucher.getShopId());
+        return saved;
+    }
+
+    /**
+     * 应用启动完成后，从数据库分批加载所有优惠券ID，构建布隆过滤器
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildBloomFilter() {
+        long begin = System.currentTimeMillis();
+        voucherBloomFilter.rebuild(lastId -> query().select("id")
+                .gt("id", lastId)
+                .orderByAsc("id")
+                .last("limit 5000")
+                .list()
+                .stream()
+                .map(Voucher::getId)
+                .collect(Collectors.toList()));
+        log.info("优惠券布隆过滤器构建完成，耗时{}ms，{}", System.currentTimeMillis() - begin, voucherBloomFilter.stats());
     }
 
     @Override
@@ -47,5 +198,122 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 超热点券：数据库库存拆分到多个分段行（Redis中仍然是一个库存key）
+        int segments = voucher.getStockSegments() == null ? defaultStockSegments : voucher.getStockSegments();
+        if (segments > 1) {
+            int[] segmentStocks = ISeckillVoucherSegmentService.split(voucher.getStock(), segments);
+            List<SeckillVoucherSegment> list = new ArrayList<>(segments);
+            for (int i = 0; i < segments; i++) {
+                list.add(new SeckillVoucherSegment()
+                        .setVoucherId(voucher.getId())
+                        .setSegmentNo(i)
+                        .setStock(segmentStocks[i]));
+            }
+            segmentService.saveBatch(list);
+        }
+        // 保存秒杀库存和秒杀时间到Redis，供Lua脚本判断秒杀资格（事务提交后写入，回滚时Redis中没有这张券）
+        int segmentCount = Math.max(segments, 1);
+        TransactionHooks.afterCommit(() -> saveSeckillToRedis(seckillVoucher, segmentCount));
+    }
+
+    /**
+     * 补充秒杀库存
+     *
+     * 数据库库存在事务中增加；Redis库存、售罄标记的清除广播在事务提交后执行，
+     * 事务回滚时Redis中不会多出数据库没有的库存（否则会超卖）
+     */
+    @Override
+    @Transactional
+    public Result addSeckillStock(Long voucherId, Integer count) {
+        if (count == null || count <= 0) {
+            return Result.fail("补充库存数量必须大于0");
+        }
+        List<SeckillVoucherSegment> segments = segmentService.listSegments(voucherId);
+        if (segments.isEmpty()) {
+            // 1. 更新数据库库存
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock + " + count)
+                    .eq("voucher_id", voucherId)
+                    .update();
+            if (!success) {
+                return Result.fail("秒杀券不存在！");
+            }
+        } else {
+            // 分段库存的券：数据库库存以分段为准，补充的库存平均分到各个分段
+            int[] added = ISeckillVoucherSegmentService.split(count, segments.size());
+            for (SeckillVoucherSegment segment : segments) {
+                int n = added[segment.getSegmentNo()];
+                if (n == 0) {
+                    continue;
+                }
+                segmentService.update()
+                        .setSql("stock = stock + " + n)
+                        .eq("voucher_id", voucherId)
+                        .eq("segment_no", segment.getSegmentNo())
+                        .update();
+            }
+        }
+        // 2. 事务提交后更新Redis库存（还没有预热到Redis的券，首次秒杀时会从数据库加载，这里不能凭空创建key），
+        //    清除所有节点的售罄标记
+        TransactionHooks.afterCommit(() -> {
+            try {
+                addRedisStock(voucherId, count);
+                soldOutRegistry.clearSoldOut(voucherId);
+            } catch (Exception e) {
+                // 数据库库存已经增加，Redis库存偏少只会少卖，需要人工核对后补齐
+                log.error("补充秒杀库存后更新Redis失败，voucherId={}, count={}", voucherId, count, e);
+            }
+        });
+        // 3. 删除店铺的优惠券列表缓存（同样在事务提交后删除）
+        Voucher voucher = getById(voucherId);
+        if (voucher != null) {
+            evictVoucherListCache(voucher.getShopId());
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 库存key存在时增加Redis库存，并递增补充次数（seckill_add_stock.lua，判断和增加原子执行）
+     *
+     * 正在从数据库加载这张券的节点发现补充次数变了，会重新读取数据库库存，
+     * 不会用补充之前的库存覆盖（见 VoucherOrderServiceImpl#preloadSeckillVoucher）
+     */
+    private void addRedisStock(Long voucherId, int count) {
+        stringRedisTemplate.execute(ADD_STOCK_SCRIPT,
+                Arrays.asList(SECKILL_REPLENISH_KEY + voucherId, SECKILL_STOCK_KEY + voucherId),
+                String.valueOf(count));
+    }
+
+    /**
+     * 将秒杀库存、秒杀时间写入Redis
+     *
+     * 数据结构：
+     * - seckill:stock:{id}       String，剩余库存（分段库存的券为各分段库存之和）
+     * - seckill:time:{id}        Hash，begin/end 毫秒时间戳
+     * - seckill:segments:{id}    String，数据库库存分段数（不分段为1），用于选择订单扣减的数据库分段
+     *
+     * @param seckillVoucher 秒杀券信息
+     * @param segments 数据库库存分段数，不分段为1
+     */
+    private void saveSeckillToRedis(SeckillVoucher seckillVoucher, int segments) {
+        Long voucherId = seckillVoucher.getVoucherId();
+
+        Map<String, String> timeMap = new HashMap<>(2);
+        if (seckillVoucher.getBeginTime() != null) {
+            timeMap.put("begin", String.valueOf(toEpochMilli(seckillVoucher.getBeginTime())));
+        }
+        if (seckillVoucher.getEndTime() != null) {
+            timeMap.put("end", String.valueOf(toEpochMilli(seckillVoucher.getEndTime())));
+        }
+        if (!timeMap.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(SECKILL_TIME_KEY + voucherId, timeMap);
+        }
+
+        stringRedisTemplate.opsForValue().set(SECKILL_SEGMENTS_KEY + voucherId, String.valueOf(segments));
+        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, seckillVoucher.getStock().toString());
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 }
@@ -0,0 +1,447 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.Voucher;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 紧凑二进制缓存编码
+ *
+ * 读多写少的热点数据（商铺、商铺类型、优惠券）按字段顺序直接写入字节，不保存字段名：
+ * - 整数：ZigZag + 变长编码，小数字只占1~2个字节
+ * - 字符串：长度 + UTF-8字节
+ * - 时间：秒 + 纳秒
+ * 一条商铺数据JSON约400字节，二进制约150字节；解码时直接创建业务对象，没有中间的 JSONObject
+ *
+ * 数据格式：
+ * <pre>
+ * 格式标识(1) | 版本(1) | 标志位(1) | [逻辑过期时间(8)] | 类型标识(1) | 数据
+ * </pre>
+ * - 格式标识固定为 0xFE（UTF-8中不会出现的字节），和JSON数据区分
+ * - 逻辑过期时间位于固定位置，判断是否过期时不需要解码数据
+ * - 实体类字段变化时修改版本号，旧版本的数据解码失败，按未命中重新加载
+ *
+ * 只支持注册过的类型及其List，其他类型由 CacheClient 改用JSON编码
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final String NAME = "binary";
+
+    private static final byte MAGIC = (byte) 0xFE;
+
+    /**
+     * 数据结构版本：注册类型的字段有变化时加1
+     */
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_LOGICAL = 1;
+
+    /**
+     * 逻辑过期时间在数据中的位置
+     */
+    private static final int EXPIRE_OFFSET = 3;
+
+    /**
+     * 类型标识的最高位表示List
+     */
+    private static final int LIST_TAG = 0x80;
+
+    private final Map<Class<?>, Schema<?>> schemasByClass = new HashMap<>();
+    private final Schema<?>[] schemasByTag = new Schema<?>[LIST_TAG];
+
+    public BinaryCacheCodec() {
+        register(Shop.class, 1, (out, shop) -> {
+            out.writeLong(shop.getId());
+            out.writeString(shop.getName());
+            out.writeLong(shop.getTypeId());
+            out.writeString(shop.getImages());
+            out.writeString(shop.getArea());
+            out.writeString(shop.getAddress());
+            out.writeDouble(shop.getX());
+            out.writeDouble(shop.getY());
+            out.writeLong(shop.getAvgPrice());
+            out.writeInt(shop.getSold());
+            out.writeInt(shop.getComments());
+            out.writeInt(shop.getScore());
+            out.writeString(shop.getOpenHours());
+            out.writeTime(shop.getCreateTime());
+            out.writeTime(shop.getUpdateTime());
+        }, in -> new Shop()
+                .setId(in.readLong())
+                .setName(in.readString())
+                .setTypeId(in.readLong())
+                .setImages(in.readString())
+                .setArea(in.readString())
+                .setAddress(in.readString())
+                .setX(in.readDouble())
+                .setY(in.readDouble())
+                .setAvgPrice(in.readLong())
+                .setSold(in.readInt())
+                .setComments(in.readInt())
+                .setScore(in.readInt())
+                .setOpenHours(in.readString())
+                .setCreateTime(in.readTime())
+                .setUpdateTime(in.readTime()));
+
+        register(ShopType.class, 2, (out, type) -> {
+            out.writeLong(type.getId());
+            out.writeString(type.getName());
+            out.writeString(type.getIcon());
+            out.writeInt(type.getSort());
+            out.writeTime(type.getCreateTime());
+            out.writeTime(type.getUpdateTime());
+        }, in -> new ShopType()
+                .setId(in.readLong())
+                .setName(in.readString())
+                .setIcon(in.readString())
+                .setSort(in.readInt())
+                .setCreateTime(in.readTime())
+                .setUpdateTime(in.readTime()));
+
+        register(Voucher.class, 3, (out, voucher) -> {
+            out.writeLong(voucher.getId());
+            out.writeLong(voucher.getShopId());
+            out.writeString(voucher.getTitle());
+            out.writeString(voucher.getSubTitle());
+            out.writeString(voucher.getRules());
+            out.writeLong(voucher.getPayValue());
+            out.writeLong(voucher.getActualValue());
+            out.writeInt(voucher.getType());
+            out.writeInt(voucher.getStatus());
+            out.writeInt(voucher.getStock());
+            out.writeTime(voucher.getBeginTime());
+            out.writeTime(voucher.getEndTime());
+            out.writeTime(voucher.getCreateTime());
+            out.writeTime(voucher.getUpdateTime());
+        }, in -> new Voucher()
+                .setId(in.readLong())
+                .setShopId(in.readLong())
+                .setTitle(in.readString())
+                .setSubTitle(in.readString())
+                .setRules(in.readString())
+                .setPayValue(in.readLong())
+                .setActualValue(in.readLong())
+                .setType(in.readInt())
+                .setStatus(in.readInt())
+                .setStock(in.readInt())
+                .setBeginTime(in.readTime())
+                .setEndTime(in.readTime())
+                .setCreateTime(in.readTime())
+                .setUpdateTime(in.readTime()));
+    }
+
+    private <T> void register(Class<T> clazz, int tag, BiConsumer<Output, T> writer, Function<Input, T> reader) {
+        Schema<T> schema = new Schema<>(tag, writer, reader);
+        schemasByClass.put(clazz, schema);
+        schemasByTag[tag] = schema;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canEncode(Object value) {
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            return list.isEmpty() || list.get(0) != null && schemasByClass.containsKey(list.get(0).getClass());
+        }
+        return value != null && schemasByClass.containsKey(value.getClass());
+    }
+
+    @Override
+    public boolean canDecode(byte[] raw) {
+        return raw.length > 0 && raw[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Output out = new Output();
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(0);
+        writeValue(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] encodeWithLogicalExpire(Object value, long expireAtMillis) {
+        Output out = new Output();
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(FLAG_LOGICAL);
+        out.writeFixedLong(expireAtMillis);
+        writeValue(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Long readExpireAt(byte[] raw) {
+        if (!isCurrentVersion(raw) || (raw[2] & FLAG_LOGICAL) == 0 || raw.length < EXPIRE_OFFSET + 8) {
+            return null;
+        }
+        return new Input(raw, EXPIRE_OFFSET).readFixedLong();
+    }
+
+    @Override
+    public <R> R decode(byte[] raw, Type type, boolean logical) {
+        if (!isCurrentVersion(raw) || ((raw[2] & FLAG_LOGICAL) != 0) != logical) {
+            return null;
+        }
+        Input in = new Input(raw, logical ? EXPIRE_OFFSET + 8 : EXPIRE_OFFSET);
+        try {
+            return readValue(in, type);
+        } catch (RuntimeException e) {
+            // 数据被截断或与当前结构不一致
+            return null;
+        }
+    }
+
+    private boolean isCurrentVersion(byte[] raw) {
+        return raw.length > EXPIRE_OFFSET && raw[0] == MAGIC && raw[1] == VERSION;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Output out, Object value) {
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            Schema<Object> schema = list.isEmpty() ? null : (Schema<Object>) schemaOf(list.get(0).getClass());
+            out.writeByte(LIST_TAG | (schema == null ? 0 : schema.tag));
+            out.writeVarLong(list.size());
+            for (Object element : list) {
+                schema.writer.accept(out, element);
+            }
+            return;
+        }
+        Schema<Object> schema = (Schema<Object>) schemaOf(value.getClass());
+        out.writeByte(schema.tag);
+        schema.writer.accept(out, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R readValue(Input in, Type type) {
+        int tag = in.readByte() & 0xFF;
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == List.class) {
+            Type elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if ((tag & LIST_TAG) == 0 || !(elementType instanceof Class)) {
+                return null;
+            }
+            Schema<?> schema = schemasByClass.get(elementType);
+            int size = (int) in.readVarLong();
+            if (size > 0 && (schema == null || schema.tag != (tag & ~LIST_TAG))) {
+                return null;
+            }
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(schema.reader.apply(in));
+            }
+            return (R) list;
+        }
+        Schema<?> schema = schemasByTag[tag & ~LIST_TAG];
+        if ((tag & LIST_TAG) != 0 || schema == null || schemasByClass.get(type) != schema) {
+            return null;
+        }
+        return (R) schema.reader.apply(in);
+    }
+
+    private Schema<?> schemaOf(Class<?> clazz) {
+        Schema<?> schema = schemasByClass.get(clazz);
+        if (schema == null) {
+            throw new IllegalArgumentException("二进制缓存编码不支持的类型：" + clazz.getName());
+        }
+        return schema;
+    }
+
+    private static class Schema<T> {
+        private final int tag;
+        private final BiConsumer<Output, T> writer;
+        private final Function<Input, T> reader;
+
+        private Schema(int tag, BiConsumer<Output, T> writer, Function<Input, T> reader) {
+            this.tag = tag;
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * 写入缓冲区
+     *
+     * 可以为null的数字和时间前面写一个字节（0：null，1：有值），字符串用 长度+1 表示，0表示null
+     */
+    static final class Output {
+        private byte[] buf = new byte[256];
+        private int pos;
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeFixedLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeLong(Long v) {
+            if (v == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        void writeInt(Integer v) {
+            writeLong(v == null ? null : v.longValue());
+        }
+
+        void writeDouble(Double v) {
+            if (v == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            writeFixedLong(Double.doubleToLongBits(v));
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeTime(LocalDateTime t) {
+            if (t == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            long seconds = t.toEpochSecond(ZoneOffset.UTC);
+            writeVarLong((seconds << 1) ^ (seconds >> 63));
+            writeVarLong(t.getNano());
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+    }
+
+    /**
+     * 读取缓冲区，读取顺序必须和写入顺序一致
+     */
+    static final class Input {
+        private final byte[] buf;
+        private int pos;
+
+        Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        long readFixedLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IllegalArgumentException("变长整数格式错误");
+        }
+
+        Long readLong() {
+            if (readByte() == 0) {
+                return null;
+            }
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        Integer readInt() {
+            Long v = readLong();
+            return v == null ? null : v.intValue();
+        }
+
+        Double readDouble() {
+            if (readByte() == 0) {
+                return null;
+            }
+            return Double.longBitsToDouble(readFixedLong());
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            String s = new String(buf, pos, length - 1, StandardCharsets.UTF_8);
+            pos += length - 1;
+            return s;
+        }
+
+        LocalDateTime readTime() {
+            if (readByte() == 0) {
+                return null;
+            }
+            long v = readVarLong();
+            long seconds = (v >>> 1) ^ -(v & 1);
+            return LocalDateTime.ofEpochSecond(seconds, (int) readVarLong(), ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存重建繁忙：等待其他线程加载数据超时
+ *
+ * @author sqkstwj
+ * @since 2025-10-26
+ */
+public class CacheBusyException extends RuntimeException {
+
+    public CacheBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,610 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.LOCK_CACHE_KEY;
+
+/**
+ * 通用缓存客户端
+ *
+ * 把缓存空值、互斥锁重建、逻辑过期三种方案从具体业务中抽取出来，
+ * 业务只需要提供 key前缀、ID、数据库查询函数 和 缓存策略（CachePolicy）：
+ * <pre>
+ * Shop shop = cacheClient.query(CACHE_SHOP_KEY, id, Shop.class, this::getById, SHOP_CACHE_POLICY);
+ * </pre>
+ *
+ * 所有策略都具备：
+ * - 缓存穿透保护：数据库不存在的数据缓存空字符串（有效期较短）
+ * - 缓存雪崩保护：有效期带随机抖动
+ * 互斥锁、逻辑过期策略额外具备缓存击穿保护：
+ * - 本节点并发未命中合并为一次加载（single-flight），集群内由分布式锁保证只有一个节点查询数据库
+ *
+ * 返回null表示数据不存在
+ *
+ * 缓存数据的编码由 hmdp.cache.codec 决定（CacheCodec），读取时按数据自身的格式选择编码，
+ * 切换编码后旧格式的数据仍然可以读取
+ *
+ * @author sqkstwj
+ * @since 2025-10-26
+ */
+@Component
+public class CacheClient {
+
+    @Resource
+    private RedisTemplate<String, byte[]> byteRedisTemplate;
+
+    @Resource
+    private RedisLockService redisLockService;
+
+    /**
+     * 逻辑过期方案的异步重建线程池（按key去重、有界队列）
+     */
+    @Resource
+    private CacheRebuildExecutor rebuildExecutor;
+
+    @Resource
+    private List<CacheCodec> codecs;
+
+    @Resource
+    private JsonCacheCodec jsonCacheCodec;
+
+    /**
+     * 写入缓存使用的编码：binary / json
+     */
+    @Value("${hmdp.cache.codec:binary}")
+    private String codecName;
+
+    private CacheCodec writeCodec;
+
+    /**
+     * 读取到的非当前编码的数据条数（切换编码后逐渐归零）
+     */
+    private final AtomicLong legacyReads = new AtomicLong();
+
+    /**
+     * 请求合并时，非leader线程等待加载结果的最长时间（毫秒）；
+     * leader线程等待其他节点释放重建锁也使用这个时间，请求线程不会比合并的其他请求等得更久
+     */
+    @Value("${hmdp.cache.single-flight-timeout-ms:3000}")
+    private long singleFlightTimeoutMillis;
+
+    /**
+     * 本节点还没有重建耗时样本时，提前刷新使用的默认重建耗时（毫秒）
+     */
+    private static final double DEFAULT_REBUILD_MILLIS = 50;
+
+    /**
+     * 缓存未命中时的请求合并（key：缓存key）
+     */
+    private final SingleFlight<String, Object> loadFlight = new SingleFlight<>();
+
+    /**
+     * 按key前缀统计的命中情况
+     */
+    private final Map<String, CacheStats> statsByPrefix = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        writeCodec = codecs.stream()
+                .filter(codec -> codec.name().equalsIgnoreCase(codecName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("未知的缓存编码：" + codecName));
+    }
+
+    /**
+     * 写入缓存，有效期带随机抖动
+     */
+    public void set(String key, Object value, CachePolicy policy) {
+        byteRedisTemplate.opsForValue().set(key, encoderFor(value).encode(value), policy.nextTtlMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写入带逻辑过期时间的缓存（Redis不设置TTL），逻辑过期时间带随机抖动
+     */
+    public void setWithLogicalExpire(String key, Object value, CachePolicy policy) {
+        setWithLogicalExpire(key, value, policy.nextTtlMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写入带逻辑过期时间的缓存（Redis不设置TTL）
+     */
+    public void setWithLogicalExpire(String key, Object value, long time, TimeUnit unit) {
+        long expireAtMillis = System.currentTimeMillis() + unit.toMillis(time);
+        byteRedisTemplate.opsForValue().set(key, encoderFor(value).encodeWithLogicalExpire(value, expireAtMillis));
+    }
+
+    /**
+     * 删除缓存
+     */
+    public void delete(String keyPrefix, Object id) {
+        byteRedisTemplate.delete(keyPrefix + id);
+    }
+
+    /**
+     * 按策略查询缓存
+     *
+     * @param keyPrefix  key前缀
+     * @param id         数据ID
+     * @param type       数据类型（集合等泛型类型使用 hutool 的 TypeReference）
+     * @param dbFallback 数据库查询函数，数据不存在时返回null
+     * @param policy     缓存策略
+     * @return 数据，不存在时返回null
+     */
+    public <R, ID> R query(String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, CachePolicy policy) {
+        switch (policy.getStrategy()) {
+            case MUTEX:
+                return queryWithMutex(keyPrefix, id, type, dbFallback, policy);
+            case LOGICAL_EXPIRE:
+                return queryWithLogicalExpire(keyPrefix, id, type, dbFallback, policy);
+            default:
+                return queryWithPassThrough(keyPrefix, id, type, dbFallback, policy);
+        }
+    }
+
+    /**
+     * 缓存空值解决缓存穿透
+     *
+     * 1. 命中数据直接返回，命中空字符串说明数据库中也不存在
+     * 2. 未命中查询数据库，数据库不存在时写入空字符串，防止恶意请求不存在的ID打到数据库
+     */
+    public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, CachePolicy policy) {
+        String key = keyPrefix + id;
+        CacheStats stats = statsOf(keyPrefix);
+        byte[] raw = byteRedisTemplate.opsForValue().get(key);
+        if (raw != null && raw.length == 0) {
+            stats.nullHits.incrementAndGet();
+            return null;
+        }
+        R cached = raw == null ? null : decode(raw, type, false);
+        if (cached != null) {
+            stats.hits.incrementAndGet();
+            return cached;
+        }
+        stats.misses.incrementAndGet();
+        return loadAndCache(key, id, dbFallback, policy, false, stats);
+    }
+
+    /**
+     * 互斥锁解决缓存击穿
+     *
+     * 1. 命中直接返回
+     * 2. 未命中时，本节点的并发请求先合并，只有一个线程（leader）去获取分布式锁，其余线程等待它的结果
+     * 3. leader拿到锁后再次检查缓存（其他节点可能已经重建），仍未命中才查询数据库并写入缓存
+     */
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, CachePolicy policy) {
+        String key = keyPrefix + id;
+        CacheStats stats = statsOf(keyPrefix);
+        byte[] raw = byteRedisTemplate.opsForValue().get(key);
+        if (raw != null && raw.length == 0) {
+            stats.nullHits.incrementAndGet();
+            return null;
+        }
+        R cached = raw == null ? null : decode(raw, type, false);
+        if (cached != null) {
+            stats.hits.incrementAndGet();
+            return cached;
+        }
+        stats.misses.incrementAndGet();
+        return loadWithMutex(key, id, type, dbFallback, policy, false, stats);
+    }
+
+    /**
+     * 逻辑过期解决缓存击穿
+     *
+     * 1. 缓存不设置TTL，数据中记录逻辑过期时间
+     * 2. 未过期直接返回；已过期时尝试获取锁（不等待），获取成功则异步重建，当前线程立即返回旧数据
+     *    策略开启了提前刷新（CachePolicy.withEarlyRefresh）时，未过期的数据也会按概率提前异步重建
+     * 3. 缓存完全不存在（冷启动、无法解码的数据）时，按互斥锁方式同步加载
+     */
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, CachePolicy policy) {
+        String key = keyPrefix + id;
+        CacheStats stats = statsOf(keyPrefix);
+        byte[] raw = byteRedisTemplate.opsForValue().get(key);
+        if (raw != null && raw.length == 0) {
+            stats.nullHits.incrementAndGet();
+            return null;
+        }
+        Long expireAt = raw == null ? null : readExpireAt(raw);
+        R value = expireAt == null ? null : decode(raw, type, true);
+        if (value == null) {
+            // 缓存不存在或格式不正确（例如旧版本的数据结构），按互斥锁方式重新加载并覆盖
+            stats.misses.incrementAndGet();
+            return loadWithMutex(key, id, type, dbFallback, policy, true, stats);
+        }
+        stats.hits.incrementAndGet();
+        // 已过期或需要提前刷新时提交异步重建，当前线程立即返回缓存中的数据
+        refreshIfNeeded(key, id, dbFallback, policy, stats, expireAt);
+        return value;
+    }
+
+    /**
+     * 批量查询缓存（列表页一次查询多条数据）
+     *
+     * 1. 一次MGET读取所有key，命中的数据直接返回；逻辑过期策略下已过期的数据照常返回，并逐个提交异步重建
+     * 2. 未命中的key通过请求合并（和单个查询共用），由一条批量SQL查询数据库
+     * 3. 查到的数据和空值（数据库不存在的ID）通过一次pipeline写回缓存
+     *
+     * 和单个查询的区别：未命中的key不获取分布式锁（N个key需要N次加锁），
+     * 缓存击穿由本节点的请求合并保护，集群内最多每个节点执行一次批量SQL
+     *
+     * @param keyPrefix       key前缀
+     * @param ids             数据ID（可以重复）
+     * @param type            数据类型
+     * @param dbBatchFallback 数据库批量查询函数，返回 ID -> 数据，不存在的ID不包含在结果中
+     * @param policy          缓存策略
+     * @return 和ids顺序一致的数据，不存在的数据为null
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> List<R> queryBatch(String keyPrefix, List<ID> ids, Type type,
+                                      Function<Collection<ID>, Map<ID, R>> dbBatchFallback, CachePolicy policy) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        CacheStats stats = statsOf(keyPrefix);
+        boolean logical = policy.getStrategy() == CacheStrategy.LOGICAL_EXPIRE;
+        Function<ID, R> dbFallback = id -> dbBatchFallback.apply(Collections.singletonList(id)).get(id);
+
+        // 1. 一次MGET读取所有key
+        Map<String, ID> idsByKey = new LinkedHashMap<>();
+        for (ID id : ids) {
+            idsByKey.put(keyPrefix + id, id);
+        }
+        List<String> keys = new ArrayList<>(idsByKey.keySet());
+        List<byte[]> raws = byteRedisTemplate.opsForValue().multiGet(keys);
+
+        Map<String, R> values = new HashMap<>();
+        List<String> missKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            byte[] raw = raws == null ? null : raws.get(i);
+            if (raw != null && raw.length == 0) {
+                stats.nullHits.incrementAndGet();
+                continue;
+            }
+            Long expireAt = raw == null || !logical ? null : readExpireAt(raw);
+            R value = raw == null || logical && expireAt == null ? null : decode(raw, type, logical);
+            if (value == null) {
+                stats.misses.incrementAndGet();
+                missKeys.add(key);
+                continue;
+            }
+            stats.hits.incrementAndGet();
+            values.put(key, value);
+            if (logical) {
+                refreshIfNeeded(key, idsByKey.get(key), dbFallback, policy, stats, expireAt);
+            }
+        }
+
+        // 2. 未命中的key合并为一次批量加载
+        if (!missKeys.isEmpty()) {
+            try {
+                loadFlight.executeAll(missKeys,
+                                leaderKeys -> loadBatchAndCache(leaderKeys, idsByKey, dbBatchFallback, policy, logical, stats),
+                                singleFlightTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .forEach((key, value) -> values.put(key, (R) value));
+            } catch (TimeoutException e) {
+                throw new CacheBusyException("等待缓存批量加载超时，keys=" + missKeys.size());
+            }
+        }
+
+        // 3. 按请求顺序返回
+        List<R> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            result.add(values.get(keyPrefix + id));
+        }
+        return result;
+    }
+
+    /**
+     * 批量查询数据库，并通过一次pipeline写回缓存（数据库不存在的ID写入空值）
+     */
+    private <R, ID> Map<String, Object> loadBatchAndCache(List<String> keys, Map<String, ID> idsByKey,
+                                                          Function<Collection<ID>, Map<ID, R>> dbBatchFallback,
+                                                          CachePolicy policy, boolean logical, CacheStats stats) {
+        stats.loads.incrementAndGet();
+        List<ID> ids = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ids.add(idsByKey.get(key));
+        }
+        long begin = System.nanoTime();
+        Map<ID, R> loaded = dbBatchFallback.apply(ids);
+        stats.recordLoad(System.nanoTime() - begin);
+
+        Map<String, Object> result = new HashMap<>();
+        for (String key : keys) {
+            result.put(key, loaded.get(idsByKey.get(key)));
+        }
+        writeAll(result, policy, logical);
+        result.values().removeIf(Objects::isNull);
+        return result;
+    }
+
+    /**
+     * 批量写入缓存（一次pipeline），按策略写入普通数据或逻辑过期数据，有效期带随机抖动
+     *
+     * @param keyPrefix  key前缀
+     * @param valuesById 数据ID -> 数据
+     * @param policy     缓存策略
+     */
+    public void setAll(String keyPrefix, Map<?, ?> valuesById, CachePolicy policy) {
+        if (valuesById.isEmpty()) {
+            return;
+        }
+        Map<String, Object> valuesByKey = new LinkedHashMap<>();
+        valuesById.forEach((id, value) -> valuesByKey.put(keyPrefix + id, value));
+        writeAll(valuesByKey, policy, policy.getStrategy() == CacheStrategy.LOGICAL_EXPIRE);
+    }
+
+    /**
+     * 通过一次pipeline写入多条缓存，值为null的key写入空值（防止缓存穿透）
+     */
+    private void writeAll(Map<String, Object> valuesByKey, CachePolicy policy, boolean logical) {
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            valuesByKey.forEach((key, value) -> {
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                if (value == null) {
+                    connection.stringCommands().set(rawKey, new byte[0],
+                            Expiration.milliseconds(policy.nextNullTtlMillis()), RedisStringCommands.SetOption.upsert());
+                } else if (logical) {
+                    long expireAtMillis = System.currentTimeMillis() + policy.nextTtlMillis();
+                    connection.stringCommands().set(rawKey, encoderFor(value).encodeWithLogicalExpire(value, expireAtMillis));
+                } else {
+                    connection.stringCommands().set(rawKey, encoderFor(value).encode(value),
+                            Expiration.milliseconds(policy.nextTtlMillis()), RedisStringCommands.SetOption.upsert());
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 逻辑过期的数据：已过期，或者开启了提前刷新且本次请求被选中时，提交异步重建
+     *
+     * @param expireAt 本次读取到的逻辑过期时间
+     */
+    private <R, ID> void refreshIfNeeded(String key, ID id, Function<ID, R> dbFallback,
+                                         CachePolicy policy, CacheStats stats, long expireAt) {
+        long now = System.currentTimeMillis();
+        if (expireAt <= now) {
+            stats.staleHits.incrementAndGet();
+            submitRebuild(key, id, dbFallback, policy, stats, expireAt);
+            return;
+        }
+        double beta = policy.getEarlyRefreshBeta();
+        if (beta <= 0) {
+            return;
+        }
+        // XFetch：-ln(random) 服从指数分布，离过期越近，被选中提前刷新的概率越大
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        if (now - stats.rebuildMillis() * beta * Math.log(random) >= expireAt) {
+            stats.earlyRefreshes.incrementAndGet();
+            submitRebuild(key, id, dbFallback, policy, stats, expireAt);
+        }
+    }
+
+    /**
+     * 提交异步重建
+     *
+     * 本节点同一个key同时只有一个重建任务（CacheRebuildExecutor按key去重），
+     * 集群内由分布式锁保证只有一个节点重建：在重建线程中获取锁，不等待，获取失败说明其他节点正在重建
+     */
+    private <R, ID> void submitRebuild(String key, ID id, Function<ID, R> dbFallback,
+                                       CachePolicy policy, CacheStats stats, long observedExpireAt) {
+        rebuildExecutor.submit(key, () -> {
+            String lockKey = LOCK_CACHE_KEY + key;
+            if (!redisLockService.tryLock(lockKey)) {
+                return;
+            }
+            try {
+                rebuildIfStale(key, id, dbFallback, policy, stats, observedExpireAt);
+            } finally {
+                redisLockService.unlockQuietly(lockKey);
+            }
+        });
+    }
+
+    private <ID, R> void rebuildIfStale(String key, ID id, Function<ID, R> dbFallback,
+                                        CachePolicy policy, CacheStats stats, long observedExpireAt) {
+        // DoubleCheck：其他节点可能刚刚重建完成（只读取逻辑过期时间，不解码数据）
+        // 逻辑过期时间晚于读取时的值（提前刷新）或晚于当前时间（过期后重建），说明已经被重建
+        byte[] raw = byteRedisTemplate.opsForValue().get(key);
+        Long expireAt = raw == null || raw.length == 0 ? null : readExpireAt(raw);
+        if (expireAt != null && expireAt > Math.max(observedExpireAt, System.currentTimeMillis())) {
+            return;
+        }
+        stats.rebuilds.incrementAndGet();
+        loadAndCache(key, id, dbFallback, policy, true, stats);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R, ID> R loadWithMutex(String key, ID id, Type type, Function<ID, R> dbFallback,
+                                    CachePolicy policy, boolean logical, CacheStats stats) {
+        try {
+            return (R) loadFlight.execute(key, () -> lockAndLoad(key, id, type, dbFallback, policy, logical, stats),
+                    singleFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new CacheBusyException("等待缓存加载超时，key=" + key);
+        }
+    }
+
+    private <R, ID> R lockAndLoad(String key, ID id, Type type, Function<ID, R> dbFallback,
+                                  CachePolicy policy, boolean logical, CacheStats stats) {
+        String lockKey = LOCK_CACHE_KEY + key;
+        // 其他节点正在重建时，等待锁释放通知（在请求线程上等待，最多等待请求合并的超时时间）
+        if (!redisLockService.tryLock(lockKey, singleFlightTimeoutMillis, -1, TimeUnit.MILLISECONDS)) {
+            throw new CacheBusyException("获取缓存重建锁超时，key=" + key);
+        }
+        try {
+            // DoubleCheck：等待锁期间缓存可能已经被其他节点重建
+            byte[] raw = byteRedisTemplate.opsForValue().get(key);
+            if (raw != null) {
+                if (raw.length == 0) {
+                    return null;
+                }
+                R cached = decode(raw, type, logical);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            return loadAndCache(key, id, dbFallback, policy, logical, stats);
+        } finally {
+            // 数据已经加载并写入缓存，释放失败不能丢弃加载结果
+            redisLockService.unlockQuietly(lockKey);
+        }
+    }
+
+    private <R, ID> R loadAndCache(String key, ID id, Function<ID, R> dbFallback,
+                                   CachePolicy policy, boolean logical, CacheStats stats) {
+        stats.loads.incrementAndGet();
+        long begin = System.nanoTime();
+        R value = dbFallback.apply(id);
+        stats.recordLoad(System.nanoTime() - begin);
+        if (value == null) {
+            // 数据库也不存在，缓存空值防止缓存穿透
+            byteRedisTemplate.opsForValue().set(key, new byte[0], policy.nextNullTtlMillis(), TimeUnit.MILLISECONDS);
+            return null;
+        }
+        if (logical) {
+            setWithLogicalExpire(key, value, policy);
+        } else {
+            set(key, value, policy);
+        }
+        return value;
+    }
+
+    /**
+     * 选择写入编码：当前编码不支持的数据类型使用JSON
+     */
+    private CacheCodec encoderFor(Object value) {
+        return writeCodec.canEncode(value) ? writeCodec : jsonCacheCodec;
+    }
+
+    /**
+     * 按数据自身的格式标识选择编码
+     */
+    private CacheCodec decoderFor(byte[] raw) {
+        if (writeCodec.canDecode(raw)) {
+            return writeCodec;
+        }
+        for (CacheCodec codec : codecs) {
+            if (codec.canDecode(raw)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    private <R> R decode(byte[] raw, Type type, boolean logical) {
+        CacheCodec codec = decoderFor(raw);
+        if (codec == null) {
+            return null;
+        }
+        if (codec != writeCodec) {
+            legacyReads.incrementAndGet();
+        }
+        return codec.decode(raw, type, logical);
+    }
+
+    private Long readExpireAt(byte[] raw) {
+        CacheCodec codec = decoderFor(raw);
+        return codec == null ? null : codec.readExpireAt(raw);
+    }
+
+    private CacheStats statsOf(String keyPrefix) {
+        return statsByPrefix.computeIfAbsent(keyPrefix, k -> new CacheStats());
+    }
+
+    /**
+     * 查询缓存统计（按key前缀）
+     *
+     * - hits：命中数据（含逻辑过期的旧数据）
+     * - nullHits：命中空值（缓存穿透被拦截）
+     * - misses：未命中
+     * - staleHits：命中逻辑过期的旧数据
+     * - loads：查询数据库的次数
+     * - rebuilds：逻辑过期后异步重建的次数（含提前刷新）
+     * - earlyRefreshes：未过期时被选中提前刷新的次数
+     * - avgLoadMs：查询数据库耗时的滑动平均值（提前刷新按它计算概率）
+     * - codec / legacyReads：当前写入编码、读取到其他编码数据的次数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("codec", writeCodec.name());
+        result.put("legacyReads", legacyReads.get());
+        statsByPrefix.forEach((prefix, stats) -> result.put(prefix, stats.toMap()));
+        result.put("singleFlight", loadFlight.stats());
+        result.put("rebuildExecutor", rebuildExecutor.stats());
+        result.put("lock", redisLockService.stats());
+        return result;
+    }
+
+    private static class CacheStats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong nullHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong staleHits = new AtomicLong();
+        private final AtomicLong loads = new AtomicLong();
+        private final AtomicLong rebuilds = new AtomicLong();
+        private final AtomicLong earlyRefreshes = new AtomicLong();
+
+        /**
+         * 查询数据库耗时的滑动平均值（毫秒），最近一次的权重为 0.2
+         */
+        private volatile double avgLoadMillis;
+
+        private void recordLoad(long nanos) {
+            double millis = nanos / 1_000_000.0;
+            double avg = avgLoadMillis;
+            // 并发更新时偶尔丢失一次样本，不影响平均值
+            avgLoadMillis = avg == 0 ? millis : avg * 0.8 + millis * 0.2;
+        }
+
+        /**
+         * 重建耗时估计值：本节点还没有查询过数据库时使用默认值
+         */
+        private double rebuildMillis() {
+            double avg = avgLoadMillis;
+            return avg == 0 ? DEFAULT_REBUILD_MILLIS : avg;
+        }
+
+        private Map<String, Object> toMap() {
+            long hit = hits.get() + nullHits.get();
+            long total = hit + misses.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("hits", hits.get());
+            map.put("nullHits", nullHits.get());
+            map.put("misses", misses.get());
+            map.put("hitRate", total == 0 ? 1.0 : (double) hit / total);
+            map.put("staleHits", staleHits.get());
+            map.put("loads", loads.get());
+            map.put("rebuilds", rebuilds.get());
+            map.put("earlyRefreshes", earlyRefreshes.get());
+            map.put("avgLoadMs", avgLoadMillis);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Type;
+
+/**
+ * 缓存数据编解码
+ *
+ * CacheClient 写入缓存时使用配置的编码（hmdp.cache.codec），读取时根据数据本身的格式标识选择编码，
+ * 因此切换编码后，Redis中已有的旧格式数据仍然可以读取，等到缓存过期重建时再以新格式写入
+ *
+ * 缓存数据分为两种：
+ * - 普通数据：只有数据本身，有效期由Redis的TTL控制
+ * - 逻辑过期数据：数据 + 逻辑过期时间，Redis不设置TTL
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码名称，对应配置 hmdp.cache.codec
+     */
+    String name();
+
+    /**
+     * 是否能编码该数据（不支持的数据类型由 CacheClient 改用JSON编码）
+     */
+    boolean canEncode(Object value);
+
+    /**
+     * 是否能解码该数据（根据数据开头的格式标识判断，不解码数据本身）
+     */
+    boolean canDecode(byte[] raw);
+
+    /**
+     * 编码普通数据
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 编码逻辑过期数据
+     *
+     * @param expireAtMillis 逻辑过期时间（毫秒时间戳）
+     */
+    byte[] encodeWithLogicalExpire(Object value, long expireAtMillis);
+
+    /**
+     * 读取逻辑过期时间（毫秒时间戳）
+     *
+     * @return 逻辑过期时间，数据不是逻辑过期格式时返回null
+     */
+    Long readExpireAt(byte[] raw);
+
+    /**
+     * 解码数据
+     *
+     * @param type    数据类型
+     * @param logical 是否为逻辑过期数据
+     * @return 数据，格式不正确（例如旧版本的数据结构）时返回null，调用方按未命中处理
+     */
+    <R> R decode(byte[] raw, Type type, boolean logical);
+}
@@ -0,0 +1,84 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 本地缓存失效广播
+ *
+ * 每个节点都有自己的JVM本地缓存（L1），某个节点更新数据、删除Redis缓存后，
+ * 其他节点的L1中仍然是旧数据。通过Redis发布订阅广播失效消息，所有节点（包括自己）同时删除L1中的数据
+ *
+ * 消息格式：缓存名称:key，例如 shop:1
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 缓存名称 -> 失效处理器
+     */
+    private final Map<String, Consumer<String>> handlers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(
+                (Message message, byte[] pattern) -> onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 注册本地缓存的失效处理器
+     *
+     * @param cacheName 缓存名称
+     * @param handler   收到失效消息时的处理逻辑，参数为key
+     */
+    public void register(String cacheName, Consumer<String> handler) {
+        handlers.put(cacheName, handler);
+    }
+
+    /**
+     * 广播失效消息（本节点立即失效，其他节点收到消息后失效）
+     */
+    public void publish(String cacheName, String key) {
+        Consumer<String> handler = handlers.get(cacheName);
+        if (handler != null) {
+            handler.accept(key);
+        }
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, cacheName + ":" + key);
+    }
+
+    private void onMessage(String body) {
+        int index = body.indexOf(':');
+        if (index < 0) {
+            log.warn("无法识别的缓存失效消息：{}", body);
+            return;
+        }
+        Consumer<String> handler = handlers.get(body.substring(0, index));
+        if (handler != null) {
+            handler.accept(body.substring(index + 1));
+        }
+    }
+}
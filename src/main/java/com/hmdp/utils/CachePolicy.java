@@ -0,0 +1,80 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+
+/**
+ * 缓存策略配置：查询策略 + 有效期 + 随机抖动
+ *
+ * 有效期 = ttl + [0, jitter) 之间的随机值，同一批写入的缓存不会在同一时刻过期（防止缓存雪崩）
+ * 空值（数据库不存在的数据）使用单独的较短有效期
+ *
+ * @author sqkstwj
+ * @since 2025-10-26
+ */
+public class CachePolicy {
+
+    private final CacheStrategy strategy;
+    private final long ttl;
+    private final long jitter;
+    private final TimeUnit unit;
+    private final double earlyRefreshBeta;
+
+    private CachePolicy(CacheStrategy strategy, long ttl, long jitter, TimeUnit unit, double earlyRefreshBeta) {
+        this.strategy = strategy;
+        this.ttl = ttl;
+        this.jitter = jitter;
+        this.unit = unit;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    /**
+     * @param strategy 查询策略
+     * @param ttl      有效期（逻辑过期策略下为逻辑过期时间）
+     * @param jitter   随机抖动的上限，0表示不抖动
+     * @param unit     时间单位
+     */
+    public static CachePolicy of(CacheStrategy strategy, long ttl, long jitter, TimeUnit unit) {
+        return new CachePolicy(strategy, ttl, jitter, unit, 0);
+    }
+
+    /**
+     * 开启提前刷新（XFetch，仅逻辑过期策略）
+     *
+     * 每次命中未过期的数据时，以 now - 重建耗时 * beta * ln(random) >= 逻辑过期时间 判断是否提前刷新：
+     * 离过期越近、重建越慢，提前刷新的概率越大。热点key会在过期前被某一个请求提前重建，
+     * 不会在过期的一瞬间所有请求同时抢锁、读到旧数据
+     *
+     * @param beta 提前程度，1为标准值，越大越早刷新
+     */
+    public CachePolicy withEarlyRefresh(double beta) {
+        return new CachePolicy(strategy, ttl, jitter, unit, beta);
+    }
+
+    public CacheStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * 提前刷新的 beta，0表示不提前刷新
+     */
+    public double getEarlyRefreshBeta() {
+        return earlyRefreshBeta;
+    }
+
+    /**
+     * 本次写入使用的有效期（毫秒），带随机抖动
+     */
+    public long nextTtlMillis() {
+        return unit.toMillis(ttl + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0));
+    }
+
+    /**
+     * 空值的有效期（毫秒）：2~3分钟
+     */
+    public long nextNullTtlMillis() {
+        return TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL) + ThreadLocalRandom.current().nextLong(TimeUnit.MINUTES.toMillis(1));
+    }
+}
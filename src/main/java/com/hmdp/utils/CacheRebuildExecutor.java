@@ -0,0 +1,175 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存异步重建线程池
+ *
+ * 原来的 Executors.newFixedThreadPool(10) 存在的问题：
+ * - 队列无界：Redis或数据库变慢时重建任务无限堆积，占满内存
+ * - 同一个key过期后可能被提交多次（分布式锁只能保证同时只有一个在执行，排队的任务仍然会重复执行）
+ * - 任务中的异常被 Future 吞掉，没有线程名、没有统计，应用关闭时也不会等待正在执行的重建
+ *
+ * 改进：
+ * - 按key去重：同一个key已经在排队或执行时，新的提交直接忽略
+ * - 有界队列，队列满时按配置（hmdp.cache.rebuild.rejection）处理：
+ *   shed：丢弃本次重建（逻辑过期的数据继续返回旧值，下次访问再触发），caller-runs：由提交任务的请求线程自己执行
+ * - 统计队列长度、重建耗时、失败次数；应用关闭时等待正在执行的重建完成
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Slf4j
+@Component
+@DependsOn("redisLockService") // 关闭时先等待重建完成，再关闭分布式锁和Redis连接
+public class CacheRebuildExecutor {
+
+    /**
+     * 工作线程数
+     */
+    @Value("${hmdp.cache.rebuild.threads:10}")
+    private int threads;
+
+    /**
+     * 队列长度
+     */
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+
+    /**
+     * 队列满时的处理方式：shed / caller-runs
+     */
+    @Value("${hmdp.cache.rebuild.rejection:shed}")
+    private String rejection;
+
+    /**
+     * 应用关闭时等待正在执行的重建完成的最长时间（秒）
+     */
+    @Value("${hmdp.cache.rebuild.shutdown-timeout-seconds:10}")
+    private long shutdownTimeoutSeconds;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 正在排队或执行的key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 统计：提交次数、去重次数、丢弃次数、由调用线程执行的次数、完成次数、失败次数、重建总耗时、最长耗时
+     */
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong deduplicatedCount = new AtomicLong();
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+            log.warn("缓存重建线程池关闭超时，放弃{}个排队中的任务", executor.shutdownNow().size());
+        }
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key  缓存key（用于去重）
+     * @param task 重建逻辑
+     * @return 是否已提交（被去重、丢弃时返回false）
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicatedCount.incrementAndGet();
+            return false;
+        }
+        submittedCount.incrementAndGet();
+        Runnable wrapped = () -> run(key, task);
+        try {
+            executor.execute(wrapped);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if ("caller-runs".equalsIgnoreCase(rejection) && !executor.isShutdown()) {
+                callerRunsCount.incrementAndGet();
+                wrapped.run();
+                return true;
+            }
+            shedCount.incrementAndGet();
+            pendingKeys.remove(key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long begin = System.nanoTime();
+        try {
+            task.run();
+            completedCount.incrementAndGet();
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            log.error("缓存重建失败，key={}", key, e);
+        } finally {
+            long nanos = System.nanoTime() - begin;
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            pendingKeys.remove(key);
+        }
+    }
+
+    /**
+     * 查询线程池状态
+     *
+     * - queueDepth / activeThreads / pendingKeys：排队中的任务数、正在执行的线程数、排队或执行中的key数
+     * - submitted / deduplicated / shed / callerRuns：提交、去重、队列满丢弃、由调用线程执行的次数
+     * - completed / failed：成功、失败的重建次数
+     * - avgRebuildMs / maxRebuildMs：重建的平均、最长耗时
+     */
+    public Map<String, Object> stats() {
+        long finished = completedCount.get() + failedCount.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("threads", threads);
+        result.put("queueCapacity", queueCapacity);
+        result.put("rejection", rejection);
+        result.put("queueDepth", executor.getQueue().size());
+        result.put("activeThreads", executor.getActiveCount());
+        result.put("pendingKeys", pendingKeys.size());
+        result.put("submitted", submittedCount.get());
+        result.put("deduplicated", deduplicatedCount.get());
+        result.put("shed", shedCount.get());
+        result.put("callerRuns", callerRunsCount.get());
+        result.put("completed", completedCount.get());
+        result.put("failed", failedCount.get());
+        result.put("avgRebuildMs", finished == 0 ? 0 : totalNanos.get() / finished / 1_000_000.0);
+        result.put("maxRebuildMs", maxNanos.get() / 1_000_000.0);
+        return result;
+    }
+}
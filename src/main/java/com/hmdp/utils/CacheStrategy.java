@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存查询策略
+ *
+ * @author sqkstwj
+ * @since 2025-10-26
+ */
+public enum CacheStrategy {
+
+    /**
+     * 缓存空值解决缓存穿透：未命中时直接查数据库，数据库不存在时缓存空字符串
+     * 适合重建代价低、并发不高的数据
+     */
+    PASS_THROUGH,
+
+    /**
+     * 互斥锁解决缓存击穿：未命中时只有一个线程查数据库重建缓存，其余线程等待结果
+     * 保证一致性，重建期间请求需要等待
+     */
+    MUTEX,
+
+    /**
+     * 逻辑过期解决缓存击穿：缓存不设置TTL，过期后由一个线程异步重建，期间直接返回旧数据
+     * 保证可用性，适合热点数据；缓存完全不存在时（冷启动）按互斥锁方式加载
+     */
+    LOGICAL_EXPIRE
+}
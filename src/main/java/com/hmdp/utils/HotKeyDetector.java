@@ -0,0 +1,427 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 热点key探测 + 本地热点副本
+ *
+ * 大促时少数商铺、优惠券承担了大部分流量，这些key所在的Redis分片会被打满。
+ * 每个节点在读路径上抽样统计访问次数，发现热点key后把数据复制到本节点内存中，
+ * 之后对这些key的读取不再访问Redis，副本由后台线程按固定间隔刷新
+ *
+ * 统计方式：
+ * - 滑动窗口：窗口（window-seconds）分为10个桶，每个桶是一个 Count-Min Sketch，每过一个桶的时间清空最旧的桶
+ * - Count-Min Sketch：depth 行 × width 列的计数器，每个key在每行哈希到一个计数器，估计值取各行最小值（只会高估，不会低估）
+ * - Top-K：小顶堆保存估计值最大的K个key，访问次数超过堆顶时才需要加锁更新堆
+ * - 抽样：每次访问以 sample-rate 的概率计数，估计值除以 sample-rate 还原为实际访问次数
+ *
+ * 晋升和降级（每个桶的时间检查一次）：
+ * - Top-K 中窗口内访问次数 >= threshold 的key晋升，加载数据放入副本
+ * - 已晋升的key访问次数低于 threshold 的一半时降级，避免在阈值附近反复晋升、降级
+ *
+ * 使用方式：
+ * <pre>
+ * hotKeyDetector.register("shop", key -> 从缓存加载数据);
+ * Shop shop = hotKeyDetector.get("shop", id); // 非热点key返回null，继续走原来的缓存逻辑
+ * </pre>
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    /**
+     * 每个窗口的桶数量
+     */
+    private static final int BUCKETS = 10;
+
+    /**
+     * Count-Min Sketch 的行数
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * 保留的最近晋升、降级事件数量
+     */
+    private static final int MAX_EVENTS = 100;
+
+    /**
+     * 滑动窗口长度（秒）
+     */
+    @Value("${hmdp.hot-key.window-seconds:10}")
+    private int windowSeconds;
+
+    /**
+     * 窗口内访问次数达到该值的key判定为热点
+     */
+    @Value("${hmdp.hot-key.threshold:500}")
+    private long threshold;
+
+    /**
+     * 每个业务最多跟踪的热点key数量
+     */
+    @Value("${hmdp.hot-key.top-k:20}")
+    private int topK;
+
+    /**
+     * 抽样比例（0~1]
+     */
+    @Value("${hmdp.hot-key.sample-rate:0.1}")
+    private double sampleRate;
+
+    /**
+     * Count-Min Sketch 每行的计数器数量（向上取整为2的幂）
+     */
+    @Value("${hmdp.hot-key.sketch-width:2048}")
+    private int sketchWidth;
+
+    /**
+     * 热点副本的刷新间隔（毫秒）
+     */
+    @Value("${hmdp.hot-key.refresh-ms:1000}")
+    private long refreshMillis;
+
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+
+    /**
+     * 最近的晋升、降级事件
+     */
+    private final Deque<Map<String, Object>> events = new ArrayDeque<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    private void init() {
+        int width = 1;
+        while (width < sketchWidth) {
+            width <<= 1;
+        }
+        sketchWidth = width;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-key-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        long bucketMillis = windowSeconds * 1000L / BUCKETS;
+        scheduler.scheduleAtFixedRate(this::tick, bucketMillis, bucketMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::refreshReplicas, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 注册业务
+     *
+     * @param name   业务名称，例如 shop
+     * @param loader 加载热点key的数据（一般从Redis缓存读取），数据不存在时返回null
+     */
+    public void register(String name, Function<String, ?> loader) {
+        topics.put(name, new Topic(name, loader, sketchWidth));
+    }
+
+    /**
+     * 记录一次访问，并返回热点副本中的数据
+     *
+     * @return 热点key的本地副本，不是热点时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String name, Object key) {
+        Topic topic = topics.get(name);
+        if (topic == null) {
+            return null;
+        }
+        String k = String.valueOf(key);
+        if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            topic.record(k);
+        }
+        Object value = topic.replica.get(k);
+        if (value != null) {
+            topic.replicaHits.incrementAndGet();
+        }
+        return (V) value;
+    }
+
+    /**
+     * 数据更新后立即刷新副本（不是热点key时什么也不做）
+     */
+    public void refresh(String name, String key) {
+        Topic topic = topics.get(name);
+        if (topic != null && topic.replica.containsKey(key)) {
+            scheduler.execute(() -> reload(topic, key));
+        }
+    }
+
+    /**
+     * 每过一个桶的时间：滑动窗口、重新计算Top-K、晋升和降级
+     */
+    private void tick() {
+        for (Topic topic : topics.values()) {
+            try {
+                topic.rotate();
+                Map<String, Long> top = topic.refreshTopK();
+                long hotCount = (long) Math.ceil(threshold * sampleRate);
+                for (Map.Entry<String, Long> entry : top.entrySet()) {
+                    if (entry.getValue() >= hotCount && !topic.replica.containsKey(entry.getKey())) {
+                        promote(topic, entry.getKey(), entry.getValue());
+                    }
+                }
+                for (String key : new ArrayList<>(topic.replica.keySet())) {
+                    long estimate = topic.estimate(key);
+                    if (estimate * 2 < hotCount) {
+                        topic.replica.remove(key);
+                        topic.demotions.incrementAndGet();
+                        addEvent("DEMOTE", topic.name, key, estimate);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("热点key统计失败，name={}", topic.name, e);
+            }
+        }
+    }
+
+    private void promote(Topic topic, String key, long estimate) {
+        Object value = topic.loader.apply(key);
+        if (value == null) {
+            return;
+        }
+        topic.replica.put(key, value);
+        topic.promotions.incrementAndGet();
+        addEvent("PROMOTE", topic.name, key, estimate);
+        log.info("发现热点key，name={}，key={}，窗口内访问约{}次", topic.name, key, (long) (estimate / sampleRate));
+    }
+
+    private void refreshReplicas() {
+        for (Topic topic : topics.values()) {
+            for (String key : topic.replica.keySet()) {
+                reload(topic, key);
+            }
+        }
+    }
+
+    private void reload(Topic topic, String key) {
+        try {
+            Object value = topic.loader.apply(key);
+            if (value == null) {
+                // 数据已经被删除
+                topic.replica.remove(key);
+            } else {
+                topic.replica.replace(key, value);
+            }
+        } catch (Exception e) {
+            // 刷新失败时保留旧数据，下次继续刷新
+            log.warn("热点副本刷新失败，name={}，key={}", topic.name, key, e);
+        }
+    }
+
+    private void addEvent(String type, String name, String key, long estimate) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("time", System.currentTimeMillis());
+        event.put("type", type);
+        event.put("name", name);
+        event.put("key", key);
+        event.put("count", (long) (estimate / sampleRate));
+        synchronized (events) {
+            if (events.size() >= MAX_EVENTS) {
+                events.removeFirst();
+            }
+            events.addLast(event);
+        }
+    }
+
+    /**
+     * 查询热点key和最近的晋升、降级事件
+     *
+     * - topKeys：每个业务访问次数最多的key（窗口内的估计访问次数），以及是否已经晋升
+     * - replicaHits：从热点副本返回数据的次数（这些请求没有访问Redis）
+     * - events：最近的晋升（PROMOTE）、降级（DEMOTE）事件
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("windowSeconds", windowSeconds);
+        result.put("threshold", threshold);
+        result.put("sampleRate", sampleRate);
+        Map<String, Object> topicStats = new LinkedHashMap<>();
+        for (Topic topic : topics.values()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            List<Map<String, Object>> topKeys = new ArrayList<>();
+            topic.snapshotTopK().forEach((key, estimate) -> {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("key", key);
+                item.put("count", (long) (estimate / sampleRate));
+                item.put("promoted", topic.replica.containsKey(key));
+                topKeys.add(item);
+            });
+            map.put("topKeys", topKeys);
+            map.put("promoted", new ArrayList<>(topic.replica.keySet()));
+            map.put("replicaHits", topic.replicaHits.get());
+            map.put("promotions", topic.promotions.get());
+            map.put("demotions", topic.demotions.get());
+            topicStats.put(topic.name, map);
+        }
+        result.put("topics", topicStats);
+        synchronized (events) {
+            result.put("events", new ArrayList<>(events));
+        }
+        return result;
+    }
+
+    private class Topic {
+        private final String name;
+        private final Function<String, ?> loader;
+        private final int width;
+        private final AtomicLongArray[] buckets = new AtomicLongArray[BUCKETS];
+        private volatile int current;
+
+        /**
+         * Top-K 小顶堆，及其中每个key的估计值
+         */
+        private final PriorityQueue<Map.Entry<String, Long>> heap =
+                new PriorityQueue<>(Comparator.comparingLong(Map.Entry::getValue));
+        private final Map<String, Map.Entry<String, Long>> heapEntries = new HashMap<>();
+
+        /**
+         * 堆顶的估计值（堆未满时为0），访问次数不超过它的key不需要加锁更新堆
+         */
+        private volatile long heapMin;
+
+        /**
+         * 热点副本：key -> 数据
+         */
+        private final Map<String, Object> replica = new ConcurrentHashMap<>();
+
+        private final AtomicLong replicaHits = new AtomicLong();
+        private final AtomicLong promotions = new AtomicLong();
+        private final AtomicLong demotions = new AtomicLong();
+
+        private Topic(String name, Function<String, ?> loader, int width) {
+            this.name = name;
+            this.loader = loader;
+            this.width = width;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new AtomicLongArray(DEPTH * width);
+            }
+        }
+
+        private void record(String key) {
+            AtomicLongArray bucket = buckets[current];
+            int h1 = mix(key.hashCode());
+            int h2 = mix(h1) | 1;
+            for (int row = 0; row < DEPTH; row++) {
+                bucket.incrementAndGet(row * width + ((h1 + row * h2) & (width - 1)));
+            }
+            long estimate = estimate(h1, h2);
+            if (estimate > heapMin) {
+                offer(key, estimate);
+            }
+        }
+
+        private long estimate(String key) {
+            int h1 = mix(key.hashCode());
+            return estimate(h1, mix(h1) | 1);
+        }
+
+        /**
+         * 估计值：每行取整个窗口（所有桶）的计数之和，再取各行的最小值
+         */
+        private long estimate(int h1, int h2) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = row * width + ((h1 + row * h2) & (width - 1));
+                long sum = 0;
+                for (AtomicLongArray bucket : buckets) {
+                    sum += bucket.get(index);
+                }
+                min = Math.min(min, sum);
+            }
+            return min;
+        }
+
+        private synchronized void offer(String key, long estimate) {
+            Map.Entry<String, Long> existing = heapEntries.get(key);
+            if (existing != null) {
+                heap.remove(existing);
+            } else if (heap.size() >= topK) {
+                if (estimate <= heap.peek().getValue()) {
+                    return;
+                }
+                heapEntries.remove(heap.poll().getKey());
+            }
+            Map.Entry<String, Long> entry = new AbstractMap.SimpleImmutableEntry<>(key, estimate);
+            heap.add(entry);
+            heapEntries.put(key, entry);
+            heapMin = heap.size() < topK ? 0 : heap.peek().getValue();
+        }
+
+        /**
+         * 清空最旧的桶作为新的当前桶（清空期间少量计数丢失不影响热点判断）
+         */
+        private void rotate() {
+            int next = (current + 1) % BUCKETS;
+            AtomicLongArray bucket = buckets[next];
+            for (int i = 0; i < bucket.length(); i++) {
+                bucket.set(i, 0);
+            }
+            current = next;
+        }
+
+        /**
+         * 窗口滑动后重新计算堆中key的估计值，移除已经没有访问的key
+         */
+        private synchronized Map<String, Long> refreshTopK() {
+            List<String> keys = new ArrayList<>(heapEntries.keySet());
+            heap.clear();
+            heapEntries.clear();
+            heapMin = 0;
+            for (String key : keys) {
+                long estimate = estimate(key);
+                if (estimate > 0) {
+                    offer(key, estimate);
+                }
+            }
+            return snapshotTopK();
+        }
+
+        private synchronized Map<String, Long> snapshotTopK() {
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(heap);
+            entries.sort(Comparator.comparingLong((Map.Entry<String, Long> e) -> e.getValue()).reversed());
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> entry : entries) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
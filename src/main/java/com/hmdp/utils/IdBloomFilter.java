@@ -0,0 +1,409 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * ID布隆过滤器（防止缓存穿透）
+ *
+ * 随机ID攻击时，每个不存在的ID都要查一次MySQL，还会在Redis中留下一个空值缓存。
+ * 布隆过滤器记录所有存在的ID，判断"一定不存在"的ID直接拒绝，不访问Redis和MySQL
+ *
+ * 特点：
+ * - 判断不存在：一定不存在；判断存在：大概率存在（误判率 fpp）
+ * - 不支持删除：删除的数据仍会通过过滤器，由缓存空值兜底
+ *
+ * 容量规划（n：预计元素数量，p：误判率）：
+ * - 位数组大小 m = -n * ln(p) / (ln2)^2
+ * - 哈希函数个数 k = m / n * ln2
+ * 例如 n=100万，p=1%，m≈958万位（约1.2MB），k=7
+ *
+ * 两种模式：
+ * - local：JVM本地位数组，每个节点启动时各自从数据库构建，判断不需要网络开销；
+ *   新增的ID通过失效广播（bloom-{name}）写入所有节点的位数组，在事务中新增时提交后才广播。
+ *   发布订阅不保证送达（例如Redis重连期间的消息会丢失），丢失后这个节点会把真实存在的ID判断为不存在，
+ *   所以每隔 resyncIntervalMillis 用启动时的加载函数重新构建一次，把漏掉的ID补上
+ * - redis：Redis bitmap，所有节点共享一份，新增数据只需要写一次；
+ *   启动构建时写入临时key后 BITOP OR 合并到共享的bitmap，不会覆盖其他节点同时写入、构建的ID
+ *
+ * @author sqkstwj
+ * @since 2025-10-26
+ */
+@Slf4j
+public class IdBloomFilter {
+
+    private final String name;
+    private final boolean redisMode;
+    private final String redisKey;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final long numBits;
+    private final int numHashFunctions;
+    private final long resyncIntervalMillis;
+
+    /**
+     * local模式定时重新构建的线程，第一次构建完成后启动
+     */
+    private ScheduledExecutorService resyncExecutor;
+
+    /**
+     * 最近一次构建完成的时间
+     */
+    private volatile long lastRebuildTime;
+
+    /**
+     * local模式的位数组（构建完成后整体替换）
+     */
+    private volatile AtomicLongArray bits;
+
+    /**
+     * 是否已经构建完成，构建完成之前所有ID都判断为可能存在（不能误拒绝正常请求）
+     */
+    private volatile boolean ready;
+
+    /**
+     * 统计：放入的元素数量、拦截的请求数、放行的请求数
+     */
+    private final AtomicLong insertedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong passedCount = new AtomicLong();
+
+    /**
+     * @param name                过滤器名称（redis模式下的key为 bloom:{name}）
+     * @param mode                local / redis
+     * @param expectedInsertions  预计元素数量
+     * @param fpp                 期望误判率
+     * @param stringRedisTemplate  redis模式使用
+     * @param cacheInvalidationBus local模式广播新增的ID，为null时只写入本节点
+     */
+    public IdBloomFilter(String name, String mode, long expectedInsertions, double fpp,
+                         StringRedisTemplate stringRedisTemplate, CacheInvalidationBus cacheInvalidationBus) {
+        this(name, mode, expectedInsertions, fpp, stringRedisTemplate, cacheInvalidationBus, 0);
+    }
+
+    /**
+     * @param resyncIntervalMillis local模式定时重新构建的间隔（毫秒），0表示不重新构建
+     */
+    public IdBloomFilter(String name, String mode, long expectedInsertions, double fpp,
+                         StringRedisTemplate stringRedisTemplate, CacheInvalidationBus cacheInvalidationBus,
+                         long resyncIntervalMillis) {
+        this.name = name;
+        this.resyncIntervalMillis = resyncIntervalMillis;
+        this.redisMode = "redis".equalsIgnoreCase(mode);
+        this.redisKey = RedisConstants.BLOOM_KEY + name;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheInvalidationBus = redisMode ? null : cacheInvalidationBus;
+        this.expectedInsertions = Math.max(expectedInsertions, 1);
+        this.fpp = fpp;
+        this.numBits = optimalNumOfBits(this.expectedInsertions, fpp);
+        this.numHashFunctions = optimalNumOfHashFunctions(this.expectedInsertions, numBits);
+        if (!redisMode) {
+            this.bits = new AtomicLongArray(arrayLength());
+            if (this.cacheInvalidationBus != null) {
+                // 其他节点新增的ID（广播也会发给自己，重复设置位没有影响）
+                this.cacheInvalidationBus.register(busName(), key -> setLocalBits(Long.valueOf(key)));
+            }
+        } else {
+            // 其他节点已经构建过共享的bitmap，可以直接使用
+            this.ready = Boolean.TRUE.equals(stringRedisTemplate.hasKey(redisKey));
+        }
+    }
+
+    /**
+     * 判断ID是否可能存在
+     *
+     * @return false：一定不存在；true：可能存在
+     */
+    public boolean mightContain(Long id) {
+        if (!ready || id == null) {
+            return true;
+        }
+        long[] offsets = offsets(id);
+        boolean result;
+        if (redisMode) {
+            result = redisMightContain(offsets);
+        } else {
+            result = true;
+            AtomicLongArray current = bits;
+            for (long offset : offsets) {
+                if ((current.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                    result = false;
+                    break;
+                }
+            }
+        }
+        if (result) {
+            passedCount.incrementAndGet();
+        } else {
+            rejectedCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * 新增ID（新增数据时调用）
+     *
+     * local模式先写入本节点，再广播给其他节点；在事务中调用时，事务提交后才广播
+     * （提交前其他节点放行这个ID也只会查到不存在，并缓存空值）
+     */
+    public void put(Long id) {
+        if (id == null) {
+            return;
+        }
+        insertedCount.incrementAndGet();
+        if (redisMode) {
+            redisSetBits(redisKey, offsets(id));
+            return;
+        }
+        setLocalBits(id);
+        if (cacheInvalidationBus == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    broadcast(id);
+                }
+            });
+        } else {
+            broadcast(id);
+        }
+    }
+
+    private void broadcast(Long id) {
+        try {
+            cacheInvalidationBus.publish(busName(), id.toString());
+        } catch (Exception e) {
+            // 广播失败时其他节点会拒绝这个ID，直到下一次定时重新构建
+            log.error("布隆过滤器广播新增ID失败，name={}，id={}", name, id, e);
+        }
+    }
+
+    private void setLocalBits(long id) {
+        AtomicLongArray current = bits;
+        for (long offset : offsets(id)) {
+            setBit(current, offset);
+        }
+    }
+
+    /**
+     * 失效广播中的名称（广播消息以第一个冒号分隔名称和key，名称中不能有冒号）
+     */
+    private String busName() {
+        return "bloom-" + name;
+    }
+
+    /**
+     * 批量构建（启动时从数据库全量加载）
+     *
+     * local模式：构建新的位数组后整体替换（合并构建期间写入旧数组的ID）；
+     * 第一次构建完成后，按 resyncIntervalMillis 用同一个加载函数定时重新构建
+     * redis模式：写入临时key后 BITOP OR 合并到共享的bitmap。多个节点同时启动时各自合并，
+     * 构建期间其他节点直接写入共享bitmap的ID不会被覆盖（RENAME会丢失这些ID）
+     *
+     * @param batchAfter 分批查询ID：参数为上一批的最大ID（第一批为0），返回按ID升序排列的下一批，没有数据时返回空列表
+     */
+    public void rebuild(Function<Long, List<Long>> batchAfter) {
+        long count = 0;
+        if (redisMode) {
+            // 多个节点可能同时启动构建，各自使用自己的临时key
+            String tmpKey = redisKey + ":building:" + UUID.fastUUID().toString(true);
+            try {
+                // 先写最后一位，一次分配好整个bitmap
+                stringRedisTemplate.opsForValue().setBit(tmpKey, numBits - 1, false);
+                for (List<Long> batch = batchAfter.apply(0L); !batch.isEmpty(); batch = batchAfter.apply(batch.get(batch.size() - 1))) {
+                    long[] offsets = new long[batch.size() * numHashFunctions];
+                    int i = 0;
+                    for (Long id : batch) {
+                        for (long offset : offsets(id)) {
+                            offsets[i++] = offset;
+                        }
+                    }
+                    redisSetBits(tmpKey, offsets);
+                    count += batch.size();
+                }
+                byte[] rawKey = redisKey.getBytes(StandardCharsets.UTF_8);
+                byte[] rawTmpKey = tmpKey.getBytes(StandardCharsets.UTF_8);
+                stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands()
+                        .bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, rawTmpKey));
+            } finally {
+                stringRedisTemplate.delete(tmpKey);
+            }
+        } else {
+            AtomicLongArray newBits = new AtomicLongArray(arrayLength());
+            for (List<Long> batch = batchAfter.apply(0L); !batch.isEmpty(); batch = batchAfter.apply(batch.get(batch.size() - 1))) {
+                for (Long id : batch) {
+                    for (long offset : offsets(id)) {
+                        setBit(newBits, offset);
+                    }
+                }
+                count += batch.size();
+            }
+            // 构建期间通过put新增的ID可能丢失，这里把旧数组合并进来
+            AtomicLongArray old = bits;
+            for (int i = 0; i < old.length(); i++) {
+                long value = old.get(i);
+                if (value != 0) {
+                    newBits.accumulateAndGet(i, value, (a, b) -> a | b);
+                }
+            }
+            bits = newBits;
+        }
+        insertedCount.set(count);
+        lastRebuildTime = System.currentTimeMillis();
+        ready = true;
+        if (!redisMode) {
+            scheduleResync(batchAfter);
+        }
+    }
+
+    private synchronized void scheduleResync(Function<Long, List<Long>> batchAfter) {
+        if (resyncIntervalMillis <= 0 || resyncExecutor != null) {
+            return;
+        }
+        resyncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bloom-resync-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        resyncExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                long begin = System.currentTimeMillis();
+                rebuild(batchAfter);
+                log.debug("布隆过滤器定时重新构建完成，name={}，耗时{}ms", name, System.currentTimeMillis() - begin);
+            } catch (Exception e) {
+                log.error("布隆过滤器定时重新构建失败，下次继续，name={}", name, e);
+            }
+        }, resyncIntervalMillis, resyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时重新构建（容器关闭时调用）
+     */
+    public synchronized void close() {
+        if (resyncExecutor != null) {
+            resyncExecutor.shutdownNow();
+        }
+    }
+
+    private boolean redisMightContain(long[] offsets) {
+        byte[] key = redisKey.getBytes(StandardCharsets.UTF_8);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.stringCommands().getBit(key, offset);
+            }
+            return null;
+        });
+        for (Object bit : results) {
+            if (!Boolean.TRUE.equals(bit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void redisSetBits(String key, long[] offsets) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            setBits(connection, rawKey, offsets);
+            return null;
+        });
+    }
+
+    private static void setBits(RedisConnection connection, byte[] key, long[] offsets) {
+        for (long offset : offsets) {
+            connection.stringCommands().setBit(key, offset, true);
+        }
+    }
+
+    private static void setBit(AtomicLongArray array, long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << offset;
+        long value = array.get(index);
+        while ((value & mask) == 0 && !array.compareAndSet(index, value, value | mask)) {
+            value = array.get(index);
+        }
+    }
+
+    /**
+     * 计算ID对应的k个位下标（双重哈希：h1 + i * h2，效果等价于k个独立的哈希函数）
+     */
+    private long[] offsets(long id) {
+        long h1 = mix64(id);
+        long h2 = mix64(h1 ^ 0x9E3779B97F4A7C15L);
+        long[] offsets = new long[numHashFunctions];
+        long combined = h1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += h2;
+        }
+        return offsets;
+    }
+
+    /**
+     * 64位哈希混淆（MurmurHash3 fmix64），连续的ID也能均匀分布到整个位数组
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private int arrayLength() {
+        return (int) ((numBits + 63) >>> 6);
+    }
+
+    private static long optimalNumOfBits(long n, double p) {
+        return Math.max((long) (-n * Math.log(p) / (Math.log(2) * Math.log(2))), 64);
+    }
+
+    private static int optimalNumOfHashFunctions(long n, long m) {
+        return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    /**
+     * 查询过滤器状态
+     *
+     * - bits / memoryBytes：位数组大小和占用内存
+     * - inserted：已放入的元素数量（构建后的增量为近似值）
+     * - estimatedFpp：按当前元素数量估算的误判率 (1 - e^(-kn/m))^k
+     */
+    public Map<String, Object> stats() {
+        long inserted = insertedCount.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("mode", redisMode ? "redis" : "local");
+        result.put("ready", ready);
+        result.put("lastRebuildTime", lastRebuildTime);
+        result.put("expectedInsertions", expectedInsertions);
+        result.put("fpp", fpp);
+        result.put("bits", numBits);
+        result.put("hashFunctions", numHashFunctions);
+        result.put("memoryBytes", numBits / 8);
+        result.put("inserted", inserted);
+        result.put("estimatedFpp", Math.pow(1 - Math.exp(-(double) numHashFunctions * inserted / numBits), numHashFunctions));
+        result.put("rejected", rejectedCount.get());
+        result.put("passed", passedCount.get());
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * JSON缓存编码（hutool）
+ *
+ * 普通数据直接保存对象的JSON；逻辑过期数据保存 RedisData：
+ * {"data": {...}, "expireTime": "2024-01-01T12:00:00"}
+ *
+ * 支持任意类型，可读性好，但读取逻辑过期数据时要先整体解析成 RedisData，
+ * 再把其中的 JSONObject 转换成业务对象，读取过期时间也需要解析整条数据
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canEncode(Object value) {
+        return true;
+    }
+
+    @Override
+    public boolean canDecode(byte[] raw) {
+        return raw.length > 0 && (raw[0] == '{' || raw[0] == '[');
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encodeWithLogicalExpire(Object value, long expireAtMillis) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAtMillis), ZoneId.systemDefault()));
+        return encode(redisData);
+    }
+
+    @Override
+    public Long readExpireAt(byte[] raw) {
+        RedisData redisData = toRedisData(raw);
+        if (redisData == null || redisData.getExpireTime() == null) {
+            return null;
+        }
+        return redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public <R> R decode(byte[] raw, Type type, boolean logical) {
+        if (!logical) {
+            return JSONUtil.toBean(new String(raw, StandardCharsets.UTF_8), type, false);
+        }
+        RedisData redisData = toRedisData(raw);
+        if (redisData == null || !(redisData.getData() instanceof JSON)) {
+            return null;
+        }
+        return JSONUtil.toBean((JSON) redisData.getData(), type, false);
+    }
+
+    private RedisData toRedisData(byte[] raw) {
+        if (raw.length == 0 || raw[0] != '{') {
+            return null;
+        }
+        return JSONUtil.toBean(new String(raw, StandardCharsets.UTF_8), RedisData.class);
+    }
+}
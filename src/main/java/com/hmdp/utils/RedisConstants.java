@@ -10,19 +10,45 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String BLOOM_KEY = "bloom:";
 
-    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:list";
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
     public static final Long CACHE_SHOP_TYPE_TTL = 30L;  // 30天
 
+    public static final String CACHE_VOUCHER_SHOP_KEY = "cache:voucher:shop:";
+    public static final Long CACHE_VOUCHER_SHOP_TTL = 2L;  // 2分钟（列表中包含秒杀库存，有效期较短）
+
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;  // 30分钟（昵称、头像）
+
 
 
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_CACHE_KEY = "lock:";
+    public static final String LOCK_USER_KEY = "lock:user:";
+    public static final String LOCK_RELEASE_CHANNEL = "lock:released";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_TIME_KEY = "seckill:time:";
+    public static final String SECKILL_SEGMENTS_KEY = "seckill:segments:";
+    public static final String SECKILL_REPLENISH_KEY = "seckill:replenish:";
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_ORDER_DEAD_LETTER_KEY = "stream.orders.dlq";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_DELTA_KEY = "blog:liked-delta";
+    public static final String BLOG_LIKED_FLUSHING_KEY = "blog:liked-delta:flushing";
+    public static final String LOCK_BLOG_LIKED_FLUSH_KEY = "lock:blog:liked-flush";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_LOADED_KEY = "shop:geo:loaded";
+    public static final String LOCK_SHOP_GEO_LOAD_KEY = "lock:shop:geo-load";
+    public static final String SHOP_TYPE_IDS_KEY = "shop:type:ids:";
+    public static final Long SHOP_TYPE_IDS_TTL = 24L;
+    public static final String SHOP_TYPE_IDS_VERSION_KEY = "shop:type:ids:version:";
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -0,0 +1,353 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+
+/**
+ * Redis分布式锁
+ *
+ * 和简单的 SETNX + DEL 相比：
+ * 1. 持有者标识：锁的值记录 节点ID:线程ID，释放时在Lua脚本中判断是否是自己的锁，
+ *    业务执行时间超过锁的有效期后，不会误删其他线程的锁
+ * 2. 可重入：锁是一个hash（持有者 -> 重入次数），同一线程可以多次获取，释放相同次数后才真正释放
+ * 3. 看门狗：不指定有效期时，持有锁期间每隔 有效期/3 自动续期，线程存活就不会因为过期而丢锁；
+ *    节点宕机后不再续期，锁在有效期后自动释放
+ * 4. 发布订阅唤醒：获取锁失败的线程不再轮询 sleep，而是等待锁释放的通知（最多等到锁的剩余有效期），
+ *    锁释放后立即被唤醒重新竞争
+ *
+ * 使用方式：
+ * <pre>
+ * if (redisLockService.tryLock(key, 0, -1, TimeUnit.MILLISECONDS)) {
+ *     try { ... } finally { redisLockService.unlockQuietly(key); }
+ * }
+ * </pre>
+ * finally 中释放锁使用 unlockQuietly：锁已经过期、Redis不可用时只记录日志，不会覆盖业务结果或业务异常
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+@Slf4j
+@Component
+public class RedisLockService {
+
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("lock.lua"));
+        LOCK_SCRIPT.setResultType(Long.class);
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lock_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 节点ID，和线程ID一起组成锁的持有者标识（不同节点的线程ID可能相同）
+     */
+    private static final String NODE_ID = UUID.fastUUID().toString(true);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 看门狗模式下锁的有效期（毫秒）
+     */
+    @Value("${hmdp.lock.watchdog-lease-ms:30000}")
+    private long watchdogLeaseMillis;
+
+    /**
+     * 看门狗续期线程
+     */
+    private ScheduledExecutorService watchdog;
+
+    /**
+     * 本节点持有的锁：key|持有者 -> 持有信息（有效期、看门狗任务）
+     */
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点正在等待的锁：key -> 等待信息（收到释放通知时唤醒等待线程）
+     */
+    private final Map<String, Waiters> waiting = new ConcurrentHashMap<>();
+
+    /**
+     * 统计：获取成功次数、获取失败次数、需要等待的次数、被释放通知唤醒的次数、看门狗续期次数、续期失败次数、释放失败次数
+     */
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong waitedCount = new AtomicLong();
+    private final AtomicLong wakeupCount = new AtomicLong();
+    private final AtomicLong renewCount = new AtomicLong();
+    private final AtomicLong renewFailedCount = new AtomicLong();
+    private final AtomicLong releaseFailedCount = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "redis-lock-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        redisMessageListenerContainer.addMessageListener(
+                (Message message, byte[] pattern) -> onReleased(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOCK_RELEASE_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 尝试获取锁，不等待，有效期由看门狗维持
+     */
+    public boolean tryLock(String key) {
+        return tryLock(key, 0, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 尝试获取锁
+     *
+     * @param key       锁的key
+     * @param waitTime  最长等待时间，0表示不等待
+     * @param leaseTime 锁的有效期，-1表示由看门狗自动续期（持有期间不会过期）
+     * @param unit      时间单位
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+        long leaseMillis = leaseTime > 0 ? unit.toMillis(leaseTime) : watchdogLeaseMillis;
+        boolean useWatchdog = leaseTime <= 0;
+        String owner = owner(Thread.currentThread().getId());
+
+        // 1. 第一次尝试
+        Long ttl = tryAcquire(key, owner, leaseMillis);
+        if (ttl == null) {
+            onAcquired(key, owner, leaseMillis, useWatchdog);
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+        if (waitTime <= 0) {
+            failedCount.incrementAndGet();
+            return false;
+        }
+
+        // 2. 订阅释放通知，等待锁释放后重新竞争
+        waitedCount.incrementAndGet();
+        Waiters waiters = subscribe(key);
+        try {
+            while (true) {
+                // 先登记等待再重试，避免重试失败后、开始等待前的释放通知丢失
+                ttl = tryAcquire(key, owner, leaseMillis);
+                if (ttl == null) {
+                    onAcquired(key, owner, leaseMillis, useWatchdog);
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    failedCount.incrementAndGet();
+                    return false;
+                }
+                // 最多等到锁的剩余有效期（持有者宕机时不会有释放通知，锁过期后再重试）
+                long waitMillis = ttl > 0 ? Math.min(ttl, remaining) : remaining;
+                try {
+                    waiters.latch.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failedCount.incrementAndGet();
+                    return false;
+                }
+            }
+        } finally {
+            unsubscribe(key, waiters);
+        }
+    }
+
+    /**
+     * 释放当前线程持有的锁
+     *
+     * 锁的持有者为 节点ID:线程ID，只能由获取锁的线程释放
+     */
+    public void unlock(String key) {
+        String owner = owner(Thread.currentThread().getId());
+        Hold hold = holds.get(holdKey(key, owner));
+        long leaseMillis = hold == null ? watchdogLeaseMillis : hold.leaseMillis;
+        Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT, Arrays.asList(key, LOCK_RELEASE_CHANNEL),
+                owner, String.valueOf(leaseMillis));
+        if (result == null || result == -1) {
+            // 锁已经过期（或者被其他线程持有），不能释放别人的锁
+            cancelHold(key, owner);
+            throw new IllegalMonitorStateException("锁不是当前线程持有的，key=" + key + ", owner=" + owner);
+        }
+        if (result == 1) {
+            cancelHold(key, owner);
+        } else if (hold != null) {
+            hold.count.decrementAndGet();
+        }
+    }
+
+    /**
+     * 释放当前线程持有的锁，失败时不抛出异常（用于 finally）
+     *
+     * 锁已经过期（或被其他线程持有）、Redis不可用时记录日志并计入统计；
+     * Redis不可用时停止看门狗续期，锁在有效期后自动释放，不会因为释放失败而一直被续期
+     *
+     * @return 是否释放成功（重入次数减1也算成功）
+     */
+    public boolean unlockQuietly(String key) {
+        try {
+            unlock(key);
+            return true;
+        } catch (IllegalMonitorStateException | DataAccessException e) {
+            releaseFailedCount.incrementAndGet();
+            cancelHold(key, owner(Thread.currentThread().getId()));
+            log.warn("释放锁失败，key={}, cause={}", key, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * 判断锁是否被当前线程持有
+     */
+    public boolean isHeldByCurrentThread(String key) {
+        String owner = owner(Thread.currentThread().getId());
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForHash().hasKey(key, owner));
+    }
+
+    private Long tryAcquire(String key, String owner, long leaseMillis) {
+        return stringRedisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(key),
+                String.valueOf(leaseMillis), owner);
+    }
+
+    private void onAcquired(String key, String owner, long leaseMillis, boolean useWatchdog) {
+        acquiredCount.incrementAndGet();
+        Hold hold = holds.computeIfAbsent(holdKey(key, owner), k -> new Hold(leaseMillis));
+        if (hold.count.getAndIncrement() == 0 && useWatchdog) {
+            // 第一次获取时启动看门狗，重入不重复启动
+            long period = Math.max(leaseMillis / 3, 1);
+            hold.renewal = watchdog.scheduleAtFixedRate(() -> renew(key, owner, leaseMillis),
+                    period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void renew(String key, String owner, long leaseMillis) {
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                    String.valueOf(leaseMillis), owner);
+            if (renewed != null && renewed == 1) {
+                renewCount.incrementAndGet();
+                return;
+            }
+            // 锁已经不存在（已释放或已过期），停止续期
+            renewFailedCount.incrementAndGet();
+            cancelHold(key, owner);
+        } catch (Exception e) {
+            // Redis暂时不可用时保留任务，下次继续续期
+            renewFailedCount.incrementAndGet();
+            log.warn("锁续期失败，key={}, owner={}, cause={}", key, owner, e.toString());
+        }
+    }
+
+    private void cancelHold(String key, String owner) {
+        Hold hold = holds.remove(holdKey(key, owner));
+        if (hold != null && hold.renewal != null) {
+            hold.renewal.cancel(false);
+        }
+    }
+
+    private Waiters subscribe(String key) {
+        return waiting.compute(key, (k, w) -> {
+            Waiters waiters = w == null ? new Waiters() : w;
+            waiters.count.incrementAndGet();
+            return waiters;
+        });
+    }
+
+    private void unsubscribe(String key, Waiters waiters) {
+        waiting.computeIfPresent(key, (k, w) -> w.count.decrementAndGet() == 0 ? null : w);
+    }
+
+    private void onReleased(String key) {
+        Waiters waiters = waiting.get(key);
+        if (waiters != null) {
+            // 唤醒本节点所有等待这把锁的线程重新竞争
+            wakeupCount.incrementAndGet();
+            waiters.latch.release(Math.max(waiters.count.get(), 1));
+        }
+    }
+
+    private static String owner(long threadId) {
+        return NODE_ID + ":" + threadId;
+    }
+
+    private static String holdKey(String key, String owner) {
+        return key + "|" + owner;
+    }
+
+    /**
+     * 查询锁的统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("acquired", acquiredCount.get());
+        result.put("failed", failedCount.get());
+        result.put("waited", waitedCount.get());
+        result.put("wakeups", wakeupCount.get());
+        result.put("renewals", renewCount.get());
+        result.put("renewFailures", renewFailedCount.get());
+        result.put("releaseFailures", releaseFailedCount.get());
+        result.put("held", holds.size());
+        result.put("waitingKeys", waiting.size());
+        return result;
+    }
+
+    private static class Hold {
+        private final long leaseMillis;
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile ScheduledFuture<?> renewal;
+
+        private Hold(long leaseMillis) {
+            this.leaseMillis = leaseMillis;
+        }
+    }
+
+    private static class Waiters {
+        private final Semaphore latch = new Semaphore(0);
+        private final AtomicInteger count = new AtomicInteger();
+    }
+}
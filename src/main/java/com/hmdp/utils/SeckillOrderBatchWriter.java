@@ -0,0 +1,175 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 秒杀订单组提交：整批写入，整批失败时退化为逐条写入
+ *
+ * 1. 整批在一个事务中写入，成功后所有消息一起ACK
+ * 2. 整批被拒绝（SeckillOrderRejectedException：某张券数据库库存不足、某个用户已经有其他订单）是正常情况，
+ *    退化为逐条写入，只有被拒绝的订单转入死信队列，其余订单正常写入
+ * 3. 整批因为其他异常失败（数据库不可用等）同样逐条尝试，但第一条失败就停止：
+ *    剩余消息留在pending-list中退避重试，不会每条订单都再等一次数据库超时
+ * 4. 重复投递的消息（订单已经写入）由写入方法直接跳过，和写入成功一样ACK
+ *
+ * 只负责整批/逐条的拆分，不访问Redis：ACK、转入死信队列由调用方根据返回结果执行
+ *
+ * @param <R> 订单消息类型
+ * @author sqkstwj
+ * @since 2025-10-28
+ */
+public class SeckillOrderBatchWriter<R> {
+
+    /**
+     * 整批写入（一个事务）
+     */
+    private final Consumer<List<VoucherOrder>> batchWriter;
+
+    /**
+     * 逐条写入（每条一个事务）
+     */
+    private final Consumer<VoucherOrder> singleWriter;
+
+    public SeckillOrderBatchWriter(Consumer<List<VoucherOrder>> batchWriter, Consumer<VoucherOrder> singleWriter) {
+        this.batchWriter = batchWriter;
+        this.singleWriter = singleWriter;
+    }
+
+    /**
+     * 写入一批订单
+     *
+     * @param records 订单消息
+     * @param orders 和消息一一对应的订单
+     * @return 写入结果
+     */
+    public Outcome<R> write(List<R> records, List<VoucherOrder> orders) {
+        Outcome<R> outcome = new Outcome<>();
+        try {
+            batchWriter.accept(orders);
+            outcome.written.addAll(records);
+            outcome.batched = true;
+            return outcome;
+        } catch (SeckillOrderRejectedException e) {
+            outcome.batchRejection = e;
+        } catch (RuntimeException e) {
+            outcome.batchFailure = e;
+        }
+        for (int i = 0; i < records.size(); i++) {
+            try {
+                singleWriter.accept(orders.get(i));
+                outcome.written.add(records.get(i));
+            } catch (SeckillOrderRejectedException e) {
+                outcome.rejected.put(records.get(i), e.getMessage());
+            } catch (RuntimeException e) {
+                // 数据库不可用等暂时性故障，剩余订单大概率也会失败，留到退避之后重试
+                outcome.failure = e;
+                outcome.failedOrder = orders.get(i);
+                break;
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * 批内去重（整批写入前调用）
+     *
+     * 同一条消息重复投递（订单ID相同）只保留一条；同一用户同一张券的不同订单只能有一个成功，
+     * 抛出 SeckillOrderRejectedException，由逐条写入决定哪一个被拒绝
+     *
+     * @return 用户ID:优惠券ID -> 订单，保持原有顺序
+     */
+    public static Map<String, VoucherOrder> dedupe(List<VoucherOrder> orders) {
+        Map<String, VoucherOrder> orderMap = new LinkedHashMap<>(orders.size() * 2);
+        for (VoucherOrder order : orders) {
+            VoucherOrder previous = orderMap.putIfAbsent(key(order), order);
+            if (previous != null && !previous.getId().equals(order.getId())) {
+                throw new SeckillOrderRejectedException("同一用户的多个订单，userId=" + order.getUserId() + ", voucherId=" + order.getVoucherId());
+            }
+        }
+        return orderMap;
+    }
+
+    /**
+     * 一人一单的key：用户ID:优惠券ID
+     */
+    public static String key(VoucherOrder order) {
+        return order.getUserId() + ":" + order.getVoucherId();
+    }
+
+    /**
+     * 一批订单的写入结果
+     */
+    public static class Outcome<R> {
+
+        private final List<R> written = new ArrayList<>();
+        private final Map<R, String> rejected = new LinkedHashMap<>();
+        private boolean batched;
+        private SeckillOrderRejectedException batchRejection;
+        private RuntimeException batchFailure;
+        private RuntimeException failure;
+        private VoucherOrder failedOrder;
+
+        /**
+         * 已经写入（包括重复投递、订单已经存在）的消息，可以ACK
+         */
+        public List<R> getWritten() {
+            return Collections.unmodifiableList(written);
+        }
+
+        /**
+         * 被拒绝的消息 -> 拒绝原因，需要转入死信队列
+         */
+        public Map<R, String> getRejected() {
+            return Collections.unmodifiableMap(rejected);
+        }
+
+        /**
+         * 是否整批写入成功
+         */
+        public boolean isBatched() {
+            return batched;
+        }
+
+        /**
+         * 整批被拒绝的原因（退化为逐条写入），没有时为null
+         */
+        public SeckillOrderRejectedException getBatchRejection() {
+            return batchRejection;
+        }
+
+        /**
+         * 整批因为拒绝以外的异常失败的原因（退化为逐条写入），没有时为null
+         */
+        public RuntimeException getBatchFailure() {
+            return batchFailure;
+        }
+
+        /**
+         * 逐条写入时的暂时性故障，没有时为null
+         */
+        public RuntimeException getFailure() {
+            return failure;
+        }
+
+        /**
+         * 逐条写入时失败的订单
+         */
+        public VoucherOrder getFailedOrder() {
+            return failedOrder;
+        }
+
+        /**
+         * 所有消息是否都已经处理完（写入或被拒绝），false表示有消息需要留在pending-list中重试
+         */
+        public boolean isComplete() {
+            return failure == null;
+        }
+    }
+}
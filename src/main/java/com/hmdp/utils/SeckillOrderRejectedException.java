@@ -0,0 +1,17 @@
+package com.hmdp.utils;
+
+/**
+ * 异步下单时数据库拒绝了Lua脚本已经接受的订单（数据库库存不足、用户已经有其他订单、订单数据违反约束）
+ *
+ * 重试也不会成功，调用方把消息转入死信队列并记录原因，不能当作下单成功ACK；
+ * 其他异常（数据库不可用等）视为暂时性故障，消息留在pending-list中退避重试
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+public class SeckillOrderRejectedException extends RuntimeException {
+
+    public SeckillOrderRejectedException(String message) {
+        super(message);
+    }
+}
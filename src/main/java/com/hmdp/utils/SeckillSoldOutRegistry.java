@@ -0,0 +1,146 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀券售罄标记（JVM本地）
+ *
+ * 为什么需要？
+ * - 秒杀券卖完之后，后续请求仍然要访问Redis（Lua脚本）或MySQL才能得到"库存不足"
+ * - 售罄后的请求量往往是库存的几十上百倍，全部打到Redis上毫无意义
+ * - 本地标记一次 ConcurrentHashMap 查询即可拒绝，耗时纳秒级
+ *
+ * 集群同步：
+ * - 第一个发现库存为0的节点通过 Redis 发布订阅广播 SOLD_OUT 消息，所有节点同时打上标记
+ * - 补充库存时广播 RESTOCK 消息，所有节点清除标记
+ *
+ * 防止标记错误导致永远卖不出去：
+ * - 每次补库存都会让该券的"版本号"加1，补库存之前发起的查询结果不能再标记售罄
+ * - 标记有有效期（默认5分钟），过期后重新以Redis为准，兜底处理广播消息乱序、丢失的情况
+ *
+ * @author sqkstwj
+ * @since 2025-10-24
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry {
+
+    private static final String SOLD_OUT = "SOLD_OUT:";
+    private static final String RESTOCK = "RESTOCK:";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 售罄标记有效期（秒）
+     */
+    @Value("${hmdp.seckill.sold-out-ttl-seconds:300}")
+    private long soldOutTtlSeconds;
+
+    /**
+     * 优惠券ID -> 售罄标记过期时间（毫秒时间戳）
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    /**
+     * 优惠券ID -> 库存版本号（每次补库存加1）
+     */
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(
+                (Message message, byte[] pattern) -> onMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 判断优惠券是否已经售罄（纯内存操作）
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long until = soldOut.get(voucherId);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            soldOut.remove(voucherId, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 获取当前库存版本号，在查询库存之前调用，查询结果为售罄时作为 markSoldOut 的参数
+     */
+    public long version(Long voucherId) {
+        AtomicLong version = versions.get(voucherId);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * 标记售罄并广播给其他节点
+     *
+     * @param voucherId 优惠券ID
+     * @param version   查询库存之前获取的版本号，期间有补库存则忽略本次标记
+     */
+    public void markSoldOut(Long voucherId, long version) {
+        if (version != version(voucherId)) {
+            return;
+        }
+        if (putSoldOut(voucherId)) {
+            // 本节点第一次发现售罄，通知其他节点
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, SOLD_OUT + voucherId);
+            log.info("秒杀券已售罄，广播售罄标记，voucherId={}", voucherId);
+        }
+    }
+
+    /**
+     * 补充库存后清除售罄标记并广播给其他节点
+     */
+    public void clearSoldOut(Long voucherId) {
+        clearLocal(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, RESTOCK + voucherId);
+        log.info("秒杀券补充库存，广播清除售罄标记，voucherId={}", voucherId);
+    }
+
+    private boolean putSoldOut(Long voucherId) {
+        long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(soldOutTtlSeconds);
+        return soldOut.put(voucherId, until) == null;
+    }
+
+    private void clearLocal(Long voucherId) {
+        versions.computeIfAbsent(voucherId, k -> new AtomicLong()).incrementAndGet();
+        soldOut.remove(voucherId);
+    }
+
+    private void onMessage(String body) {
+        try {
+            if (body.startsWith(SOLD_OUT)) {
+                putSoldOut(Long.valueOf(body.substring(SOLD_OUT.length())));
+            } else if (body.startsWith(RESTOCK)) {
+                clearLocal(Long.valueOf(body.substring(RESTOCK.length())));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的售罄广播消息：{}", body);
+        }
+    }
+}
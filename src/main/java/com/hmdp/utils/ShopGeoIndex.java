@@ -0,0 +1,415 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 商铺坐标的本地网格索引
+ *
+ * 大城市的附近商铺查询都落在同一个 shop:geo:{typeId} 上，这个key所在的Redis分片会成为热点，
+ * Redis异常时附近商铺查询也会完全不可用。每个节点在内存中按类型维护一份商铺坐标的网格索引：
+ * - 经纬度按 cell-degrees 划分为均匀网格，每个网格用基本类型数组保存商铺id和坐标（没有装箱对象）
+ * - 查询时从坐标所在的网格开始一圈一圈向外扫描，计算每个商铺的距离；
+ *   某一圈的最近可能距离已经超过半径或第K个结果的距离时停止扫描
+ * - 距离和Redis GEO使用相同的公式（Haversine，地球半径6372797.560856米），两种方式的结果一致
+ *
+ * 写入（新增、修改商铺）很少，按类型加写锁；查询加读锁，互不阻塞
+ * 全量构建期间的写入记录商铺id，构建完成替换时按旧索引中的最新状态重放，不会被构建结果覆盖
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Component
+public class ShopGeoIndex {
+
+    /**
+     * 地球半径（米），与Redis GEO一致
+     */
+    public static final double EARTH_RADIUS_METERS = 6372797.560856;
+
+    /**
+     * 每度纬度对应的距离（米）
+     */
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    /**
+     * 网格边长（度），0.01度约1.1公里
+     */
+    @Value("${hmdp.shop.geo.index.cell-degrees:0.01}")
+    private double cellDegrees;
+
+    /**
+     * 商铺类型 -> 网格索引
+     */
+    private volatile Map<Long, TypeIndex> types = new ConcurrentHashMap<>();
+
+    /**
+     * 商铺id -> 类型和坐标（修改、删除商铺时找到原来所在的网格）
+     */
+    private volatile Map<Long, Position> positions = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * 全量构建期间新增、修改、删除的商铺id，不在构建中时为null（读写都在 synchronized 中）
+     */
+    private Set<Long> changedDuringRebuild;
+
+    /**
+     * 统计：查询次数、总耗时
+     */
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+
+    /**
+     * 从数据库全量构建索引，构建完成后一次性替换
+     *
+     * 构建期间 put/remove 仍然写入旧索引，同时记录商铺id；替换时这些商铺以旧索引中的最新状态为准
+     * （加载时读到的可能是修改前的数据，或者还没有读到新增的商铺）
+     *
+     * @param loader 按id分批查询商铺（参数为上一批最后一个id，第一批为0），只需要 id、type_id、x、y
+     */
+    public void rebuild(Function<Long, List<Shop>> loader) {
+        synchronized (this) {
+            changedDuringRebuild = new HashSet<>();
+        }
+        try {
+            Map<Long, TypeIndex> newTypes = new ConcurrentHashMap<>();
+            Map<Long, Position> newPositions = new ConcurrentHashMap<>();
+            long lastId = 0;
+            List<Shop> shops;
+            while (!(shops = loader.apply(lastId)).isEmpty()) {
+                for (Shop shop : shops) {
+                    if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                        add(newTypes, newPositions, shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+                    }
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            synchronized (this) {
+                // 重放构建期间的写入
+                for (Long id : changedDuringRebuild) {
+                    remove(newTypes, newPositions, id);
+                    Position latest = positions.get(id);
+                    if (latest != null) {
+                        add(newTypes, newPositions, id, latest.typeId, latest.x, latest.y);
+                    }
+                }
+                types = newTypes;
+                positions = newPositions;
+                ready = true;
+            }
+        } finally {
+            synchronized (this) {
+                changedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * 索引是否已经构建完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 新增或修改商铺的坐标、类型
+     */
+    public synchronized void put(Long id, Long typeId, Double x, Double y) {
+        remove(id);
+        if (typeId != null && x != null && y != null) {
+            add(types, positions, id, typeId, x, y);
+        }
+    }
+
+    /**
+     * 删除商铺
+     */
+    public synchronized void remove(Long id) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(id);
+        }
+        remove(types, positions, id);
+    }
+
+    private void remove(Map<Long, TypeIndex> types, Map<Long, Position> positions, long id) {
+        Position old = positions.remove(id);
+        if (old == null) {
+            return;
+        }
+        TypeIndex index = types.get(old.typeId);
+        if (index != null) {
+            index.remove(id, cellKey(old.x, old.y));
+        }
+    }
+
+    private void add(Map<Long, TypeIndex> types, Map<Long, Position> positions, long id, long typeId, double x, double y) {
+        types.computeIfAbsent(typeId, k -> new TypeIndex()).add(id, x, y, cellKey(x, y));
+        positions.put(id, new Position(typeId, x, y));
+    }
+
+    /**
+     * 查询附近的商铺
+     *
+     * @param typeId       商铺类型
+     * @param x            经度
+     * @param y            纬度
+     * @param radiusMeters 半径（米）
+     * @param limit        最多返回的数量
+     * @return 按距离升序的商铺id和距离
+     */
+    public List<Hit> nearby(Long typeId, double x, double y, double radiusMeters, int limit) {
+        TypeIndex index = types.get(typeId);
+        if (index == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long begin = System.nanoTime();
+        // 一个网格在经度、纬度方向上较短的一边（米），第r圈的网格到查询点的距离至少是 (r-1) 个网格。
+        // 经度方向的边长随纬度增大而变短，半径内的商铺最远到 |y| + 半径对应的纬度，按这个纬度（再留两个网格）计算，
+        // 外圈的网格不会比估算的更窄，提前结束扫描时不会漏掉商铺
+        double maxLatitude = Math.min(Math.abs(y) + radiusMeters / METERS_PER_DEGREE + 2 * cellDegrees, 89);
+        double cellMeters = cellDegrees * METERS_PER_DEGREE
+                * Math.max(Math.cos(Math.toRadians(maxLatitude)), 0.01);
+        int maxRing = (int) Math.ceil(radiusMeters / cellMeters) + 1;
+        int cx = cell(x);
+        int cy = cell(y);
+        Candidates candidates = new Candidates();
+        index.lock.readLock().lock();
+        try {
+            for (int ring = 0; ring <= maxRing; ring++) {
+                double ringMinMeters = (ring - 1) * cellMeters;
+                if (ring > 1 && candidates.size >= limit && ringMinMeters > candidates.kth(limit)) {
+                    break;
+                }
+                if (ring == 0) {
+                    index.scan(cellKey(cx, cy), x, y, radiusMeters, candidates);
+                    continue;
+                }
+                for (int dx = -ring; dx <= ring; dx++) {
+                    index.scan(cellKey(cx + dx, cy - ring), x, y, radiusMeters, candidates);
+                    index.scan(cellKey(cx + dx, cy + ring), x, y, radiusMeters, candidates);
+                }
+                for (int dy = -ring + 1; dy < ring; dy++) {
+                    index.scan(cellKey(cx - ring, cy + dy), x, y, radiusMeters, candidates);
+                    index.scan(cellKey(cx + ring, cy + dy), x, y, radiusMeters, candidates);
+                }
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        List<Hit> hits = candidates.sorted(limit);
+        queryCount.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - begin);
+        return hits;
+    }
+
+    /**
+     * 查询索引状态
+     *
+     * - types / shops / cells：类型数、商铺数、非空网格数
+     * - queries / avgQueryMicros：查询次数、平均耗时（微秒）
+     */
+    public Map<String, Object> stats() {
+        long cells = 0;
+        for (TypeIndex index : types.values()) {
+            cells += index.cells.size();
+        }
+        long queries = queryCount.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ready", ready);
+        result.put("cellDegrees", cellDegrees);
+        result.put("types", types.size());
+        result.put("shops", positions.size());
+        result.put("cells", cells);
+        result.put("queries", queries);
+        result.put("avgQueryMicros", queries == 0 ? 0 : queryNanos.get() / queries / 1000.0);
+        return result;
+    }
+
+    private int cell(double degrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private long cellKey(double x, double y) {
+        return cellKey(cell(x), cell(y));
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 两点之间的距离（米），与Redis GEO的计算方式一致
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    /**
+     * 查询结果：商铺id和距离（米）
+     */
+    public static class Hit {
+        private final long id;
+        private final double distance;
+
+        public Hit(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    private static class Position {
+        private final long typeId;
+        private final double x;
+        private final double y;
+
+        private Position(long typeId, double x, double y) {
+            this.typeId = typeId;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * 一个类型的网格索引
+     */
+    private static class TypeIndex {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Cell> cells = new HashMap<>();
+
+        private void add(long id, double x, double y, long cellKey) {
+            lock.writeLock().lock();
+            try {
+                cells.computeIfAbsent(cellKey, k -> new Cell()).add(id, x, y);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long id, long cellKey) {
+            lock.writeLock().lock();
+            try {
+                Cell cell = cells.get(cellKey);
+                if (cell != null && cell.remove(id) && cell.size == 0) {
+                    cells.remove(cellKey);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void scan(long cellKey, double x, double y, double radiusMeters, Candidates candidates) {
+            Cell cell = cells.get(cellKey);
+            if (cell == null) {
+                return;
+            }
+            for (int i = 0; i < cell.size; i++) {
+                double d = distance(x, y, cell.xs[i], cell.ys[i]);
+                if (d <= radiusMeters) {
+                    candidates.add(cell.ids[i], d);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个网格中的商铺，删除时用最后一个元素填补空位
+     */
+    private static class Cell {
+        private long[] ids = new long[4];
+        private double[] xs = new double[4];
+        private double[] ys = new double[4];
+        private int size;
+
+        private void add(long id, double x, double y) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+                xs = Arrays.copyOf(xs, size << 1);
+                ys = Arrays.copyOf(ys, size << 1);
+            }
+            ids[size] = id;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+
+        private boolean remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    size--;
+                    ids[i] = ids[size];
+                    xs[i] = xs[size];
+                    ys[i] = ys[size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 查询过程中半径内的候选商铺
+     */
+    private static class Candidates {
+        private long[] ids = new long[16];
+        private double[] distances = new double[16];
+        private int size;
+
+        private void add(long id, double distance) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+                distances = Arrays.copyOf(distances, size << 1);
+            }
+            ids[size] = id;
+            distances[size] = distance;
+            size++;
+        }
+
+        /**
+         * 第k近的距离
+         */
+        private double kth(int k) {
+            double[] copy = Arrays.copyOf(distances, size);
+            Arrays.sort(copy);
+            return copy[k - 1];
+        }
+
+        private List<Hit> sorted(int limit) {
+            List<Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                hits.add(new Hit(ids[i], distances[i]));
+            }
+            hits.sort(Comparator.comparingDouble(Hit::getDistance));
+            return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 商铺名称、地址的本地倒排索引
+ *
+ * 原来的名称搜索是 LIKE '%name%'，每次输入都要全表扫描 tb_shop 并执行一次COUNT。
+ * 中文没有空格分词，这里按字切分：
+ * - 名称、地址中每个字（单字）和相邻两个字（二元组）作为词项，倒排表保存文档序号（int数组，按序号递增）
+ * - 查询词只有一个字时按单字查询，否则按二元组查询；文档必须包含查询词的所有词项（名称或地址中）
+ * - 二元组都命中不代表相邻，候选文档还要校验名称或地址包含完整的查询词（与 LIKE '%keyword%' 一致）
+ * - 查询时只遍历查询词项的倒排表，耗时与命中的文档数有关，与商铺总数无关
+ *
+ * 与原来只 LIKE 名称不同，地址包含查询词的商铺也会返回（排在名称命中的商铺之后），
+ * 索引未就绪时的 LIKE 查询也同时匹配名称和地址
+ *
+ * 排序：名称以查询词开头 > 名称包含完整查询词 > 名称命中的词项多 > 名称短 > 商铺id小
+ *
+ * 商铺修改时旧文档标记删除，新内容追加为新文档（倒排表只追加，保持有序）；
+ * 已删除的文档超过总数的 1/5 时重新构建索引。
+ * 全量构建期间的写入记录商铺id，构建完成时以写入后的最新内容为准，不会被构建结果覆盖
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+@Component
+public class ShopNameIndex {
+
+    /**
+     * 查询词最多使用的词项数量（每个词项在匹配时占用一位）
+     */
+    private static final int MAX_QUERY_TERMS = 63;
+
+    /**
+     * 已删除文档达到该数量且超过总数的 1/5 时重新构建
+     */
+    private static final int MIN_COMPACT_DELETED = 1000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 词项 -> 倒排表，名称和地址分开保存（名称命中的权重更高）
+     */
+    private Map<Integer, Postings> namePostings = new HashMap<>();
+    private Map<Integer, Postings> addressPostings = new HashMap<>();
+
+    /**
+     * 文档序号 -> 商铺id、规范化后的名称和地址、是否已删除
+     */
+    private long[] shopIds = new long[1024];
+    private String[] names = new String[1024];
+    private String[] addresses = new String[1024];
+    private boolean[] deleted = new boolean[1024];
+    private int docCount;
+    private int deletedCount;
+
+    /**
+     * 商铺id -> 当前的文档序号
+     */
+    private Map<Long, Integer> docsByShopId = new HashMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * 全量构建期间新增、修改、删除的商铺id，不在构建中时为null（在写锁中读写）
+     */
+    private Set<Long> changedDuringRebuild;
+
+    /**
+     * 统计：查询次数、总耗时
+     */
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+
+    /**
+     * 从数据库全量构建索引
+     *
+     * 从数据库加载时不加锁，期间 put/remove 照常写入当前索引并记录商铺id；
+     * 重建时这些商铺使用当前索引中的最新内容（已删除的不再加入），而不是加载到的可能过时的数据
+     *
+     * @param loader 按id分批查询商铺（参数为上一批最后一个id，第一批为0），只需要 id、name、address
+     */
+    public void rebuild(Function<Long, List<Shop>> loader) {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            List<Shop> all = new ArrayList<>();
+            long lastId = 0;
+            List<Shop> shops;
+            while (!(shops = loader.apply(lastId)).isEmpty()) {
+                all.addAll(shops);
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            lock.writeLock().lock();
+            try {
+                // 构建期间写入过的商铺：当前索引中的名称和地址，已删除时为null
+                Map<Long, String[]> latest = new HashMap<>();
+                for (Long id : changedDuringRebuild) {
+                    Integer doc = docsByShopId.get(id);
+                    latest.put(id, doc == null ? null : new String[]{names[doc], addresses[doc]});
+                }
+                reset(all.size());
+                for (Shop shop : all) {
+                    if (!latest.containsKey(shop.getId())) {
+                        append(shop.getId(), normalize(shop.getName()), normalize(shop.getAddress()));
+                    }
+                }
+                latest.forEach((id, doc) -> {
+                    if (doc != null) {
+                        append(id, doc[0], doc[1]);
+                    }
+                });
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 索引是否已经构建完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 新增或修改商铺的名称、地址
+     */
+    public void put(Long id, String name, String address) {
+        lock.writeLock().lock();
+        try {
+            markDeleted(id);
+            append(id, normalize(name), normalize(address));
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除商铺
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            markDeleted(id);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索商铺
+     *
+     * @param keyword 关键字
+     * @param from    跳过的结果数量
+     * @param size    返回的数量
+     * @return 排序后的商铺id
+     */
+    public List<Long> search(String keyword, int from, int size) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || size <= 0) {
+            return Collections.emptyList();
+        }
+        long begin = System.nanoTime();
+        int[] terms = queryTerms(query);
+        List<Long> result;
+        lock.readLock().lock();
+        try {
+            result = rank(query, terms, from, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        queryCount.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - begin);
+        return result;
+    }
+
+    /**
+     * 合并查询词项的倒排表，计算每个文档命中的词项并排序
+     *
+     * 每条命中记录编码为一个long：文档序号(高位) | 词项序号(6位) | 是否名称(1位)，
+     * 排序后同一个文档的记录相邻，依次统计即可，不需要按文档总数分配数组
+     */
+    private List<Long> rank(String query, int[] terms, int from, int size) {
+        int total = 0;
+        Postings[][] lists = new Postings[terms.length][2];
+        for (int i = 0; i < terms.length; i++) {
+            lists[i][0] = addressPostings.get(terms[i]);
+            lists[i][1] = namePostings.get(terms[i]);
+            if (lists[i][0] == null && lists[i][1] == null) {
+                // 有一个词项没有任何文档包含，不会有结果
+                return Collections.emptyList();
+            }
+            for (Postings postings : lists[i]) {
+                total += postings == null ? 0 : postings.size;
+            }
+        }
+        long[] hits = new long[total];
+        int n = 0;
+        for (int i = 0; i < terms.length; i++) {
+            for (int field = 0; field < 2; field++) {
+                Postings postings = lists[i][field];
+                if (postings == null) {
+                    continue;
+                }
+                for (int j = 0; j < postings.size; j++) {
+                    hits[n++] = ((long) postings.docs[j] << 7) | ((long) i << 1) | field;
+                }
+            }
+        }
+        Arrays.sort(hits);
+
+        long allTerms = (1L << terms.length) - 1;
+        List<long[]> candidates = new ArrayList<>();
+        for (int i = 0; i < n; ) {
+            int doc = (int) (hits[i] >>> 7);
+            long matched = 0;
+            long nameMatched = 0;
+            for (; i < n && (int) (hits[i] >>> 7) == doc; i++) {
+                long bit = 1L << ((hits[i] >>> 1) & 0x3F);
+                matched |= bit;
+                if ((hits[i] & 1) == 1) {
+                    nameMatched |= bit;
+                }
+            }
+            if (matched != allTerms || deleted[doc]) {
+                continue;
+            }
+            String name = names[doc];
+            if (query.length() > 1 && !name.contains(query) && !addresses[doc].contains(query)) {
+                // 二元组都出现了，但不相邻（例如查询"火锅店"，名称"火锅 · 锅店"）
+                continue;
+            }
+            long score = Long.bitCount(nameMatched);
+            if (name.startsWith(query)) {
+                score += 200;
+            } else if (name.contains(query)) {
+                score += 100;
+            }
+            candidates.add(new long[]{score, doc});
+        }
+        if (from >= candidates.size()) {
+            return Collections.emptyList();
+        }
+        candidates.sort((a, b) -> {
+            if (a[0] != b[0]) {
+                return Long.compare(b[0], a[0]);
+            }
+            int la = names[(int) a[1]].length();
+            int lb = names[(int) b[1]].length();
+            if (la != lb) {
+                return Integer.compare(la, lb);
+            }
+            return Long.compare(shopIds[(int) a[1]], shopIds[(int) b[1]]);
+        });
+        int end = Math.min(candidates.size(), from + size);
+        List<Long> ids = new ArrayList<>(end - from);
+        for (long[] candidate : candidates.subList(from, end)) {
+            ids.add(shopIds[(int) candidate[1]]);
+        }
+        return ids;
+    }
+
+    /**
+     * 查询索引状态
+     *
+     * - docs / deletedDocs：文档数（包括已删除的）、已删除的文档数
+     * - nameTerms / addressTerms / postings：名称、地址的词项数，倒排表总长度
+     * - queries / avgQueryMicros：查询次数、平均耗时（微秒）
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            long postings = 0;
+            for (Postings p : namePostings.values()) {
+                postings += p.size;
+            }
+            for (Postings p : addressPostings.values()) {
+                postings += p.size;
+            }
+            result.put("ready", ready);
+            result.put("docs", docCount);
+            result.put("deletedDocs", deletedCount);
+            result.put("nameTerms", namePostings.size());
+            result.put("addressTerms", addressPostings.size());
+            result.put("postings", postings);
+        } finally {
+            lock.readLock().unlock();
+        }
+        long queries = queryCount.get();
+        result.put("queries", queries);
+        result.put("avgQueryMicros", queries == 0 ? 0 : queryNanos.get() / queries / 1000.0);
+        return result;
+    }
+
+    private void reset(int capacity) {
+        int n = Math.max(capacity, 1024);
+        namePostings = new HashMap<>();
+        addressPostings = new HashMap<>();
+        shopIds = new long[n];
+        names = new String[n];
+        addresses = new String[n];
+        deleted = new boolean[n];
+        docCount = 0;
+        deletedCount = 0;
+        docsByShopId = new HashMap<>(n * 4 / 3 + 1);
+    }
+
+    private void append(long shopId, String name, String address) {
+        if (docCount == shopIds.length) {
+            int n = docCount << 1;
+            shopIds = Arrays.copyOf(shopIds, n);
+            names = Arrays.copyOf(names, n);
+            addresses = Arrays.copyOf(addresses, n);
+            deleted = Arrays.copyOf(deleted, n);
+        }
+        int doc = docCount++;
+        shopIds[doc] = shopId;
+        names[doc] = name;
+        addresses[doc] = address;
+        docsByShopId.put(shopId, doc);
+        addTerms(namePostings, name, doc);
+        addTerms(addressPostings, address, doc);
+    }
+
+    private void markDeleted(Long shopId) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(shopId);
+        }
+        Integer doc = docsByShopId.remove(shopId);
+        if (doc != null) {
+            deleted[doc] = true;
+            deletedCount++;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (deletedCount < MIN_COMPACT_DELETED || deletedCount * 5 < docCount) {
+            return;
+        }
+        long[] oldIds = shopIds;
+        String[] oldNames = names;
+        String[] oldAddresses = addresses;
+        boolean[] oldDeleted = deleted;
+        int oldCount = docCount;
+        reset(oldCount - deletedCount);
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (!oldDeleted[doc]) {
+                append(oldIds[doc], oldNames[doc], oldAddresses[doc]);
+            }
+        }
+    }
+
+    /**
+     * 把文本的所有单字和二元组加入倒排表（同一个文档的相同词项只加一次）
+     */
+    private static void addTerms(Map<Integer, Postings> index, String text, int doc) {
+        for (int i = 0; i < text.length(); i++) {
+            index.computeIfAbsent(unigram(text.charAt(i)), k -> new Postings()).add(doc);
+            if (i + 1 < text.length()) {
+                index.computeIfAbsent(bigram(text.charAt(i), text.charAt(i + 1)), k -> new Postings()).add(doc);
+            }
+        }
+    }
+
+    /**
+     * 查询词的词项：一个字时为单字，否则为所有不重复的二元组
+     */
+    private static int[] queryTerms(String query) {
+        if (query.length() == 1) {
+            return new int[]{unigram(query.charAt(0))};
+        }
+        int[] terms = new int[Math.min(query.length() - 1, MAX_QUERY_TERMS)];
+        int n = 0;
+        for (int i = 0; i + 1 < query.length() && n < terms.length; i++) {
+            int term = bigram(query.charAt(i), query.charAt(i + 1));
+            boolean duplicate = false;
+            for (int j = 0; j < n && !duplicate; j++) {
+                duplicate = terms[j] == term;
+            }
+            if (!duplicate) {
+                terms[n++] = term;
+            }
+        }
+        return Arrays.copyOf(terms, n);
+    }
+
+    /**
+     * 单字词项：字符本身（高16位为0）；二元组：第一个字符在高16位（字符不会为0，不会和单字冲突）
+     */
+    private static int unigram(char c) {
+        return c;
+    }
+
+    private static int bigram(char c1, char c2) {
+        return (c1 << 16) | c2;
+    }
+
+    /**
+     * 规范化：去掉空白字符，英文转为小写
+     */
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != 0 && !Character.isWhitespace(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 倒排表：按文档序号递增的int数组
+     */
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        private void add(int doc) {
+            // 同一个文档的相同词项连续出现，只记录一次
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size << 1);
+            }
+            docs[size++] = doc;
+        }
+    }
+}
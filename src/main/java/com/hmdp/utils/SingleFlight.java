@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）
+ *
+ * 同一个key同时有多个请求时，只有第一个请求（leader）真正执行加载，
+ * 其余请求等待leader的结果，而不是各自去抢锁、查库
+ *
+ * 和互斥锁方案的区别：
+ * - 互斥锁：每个请求都要访问Redis抢锁，抢不到的线程sleep后重试
+ * - single-flight：本节点同一个key只有leader访问Redis锁和数据库，
+ *   其余线程挂在同一个Future上，结果一出来立即返回，没有轮询
+ *
+ * leader执行结束后立即移除key，后续请求重新走缓存，不会拿到旧结果
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 统计：执行加载的次数、合并（等待别人结果）的次数、等待超时的次数
+     */
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * 执行加载，同一个key同时只有一个加载在执行
+     *
+     * @param key     合并的key
+     * @param loader  加载逻辑（在leader线程中执行）
+     * @param timeout 非leader线程的最长等待时间
+     * @param unit    时间单位
+     * @return 加载结果
+     * @throws TimeoutException 等待超时
+     */
+    public V execute(K key, Supplier<V> loader, long timeout, TimeUnit unit) throws TimeoutException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            // 已经有请求在加载，等待它的结果
+            sharedCount.incrementAndGet();
+            return await(existing, timeout, unit);
+        }
+
+        // 当前线程是leader，执行加载
+        loadCount.incrementAndGet();
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 批量执行加载：已经有请求在加载的key等待其结果，其余key由当前线程一次性加载
+     *
+     * 和单个key的 execute 共用同一组正在加载的key，批量请求和单个请求之间也会合并
+     *
+     * @param keys    需要加载的key
+     * @param loader  批量加载逻辑（参数为当前线程负责加载的key），返回结果中没有的key视为不存在
+     * @param timeout 等待其他线程加载结果的最长时间
+     * @param unit    时间单位
+     * @return key -> 加载结果（不包含不存在的key）
+     * @throws TimeoutException 等待超时
+     */
+    public Map<K, V> executeAll(Collection<K> keys, Function<List<K>, Map<K, V>> loader,
+                                long timeout, TimeUnit unit) throws TimeoutException {
+        Map<K, CompletableFuture<V>> leading = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (leading.containsKey(key) || waiting.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                sharedCount.incrementAndGet();
+                waiting.put(key, existing);
+            } else {
+                leading.put(key, future);
+            }
+        }
+
+        Map<K, V> result = new HashMap<>();
+        // 先完成自己负责的key，再等待其他线程，两个批量请求互相等待对方的key时不会死锁
+        if (!leading.isEmpty()) {
+            loadCount.incrementAndGet();
+            try {
+                Map<K, V> loaded = loader.apply(new ArrayList<>(leading.keySet()));
+                leading.forEach((key, future) -> {
+                    V value = loaded.get(key);
+                    future.complete(value);
+                    if (value != null) {
+                        result.put(key, value);
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                leading.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                leading.forEach(inFlight::remove);
+            }
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Map.Entry<K, CompletableFuture<V>> entry : waiting.entrySet()) {
+            V value = await(entry.getValue(), Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    private V await(CompletableFuture<V> future, long timeout, TimeUnit unit) throws TimeoutException {
+        try {
+            return future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            timeoutCount.incrementAndGet();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待加载结果时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 查询统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("loads", loadCount.get());
+        result.put("shared", sharedCount.get());
+        result.put("timeouts", timeoutCount.get());
+        result.put("inFlight", inFlight.size());
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务提交后执行的操作
+ *
+ * 在 @Transactional 方法中修改Redis（库存、GEO集合、广播等），事务回滚后Redis中的修改不会回滚。
+ * 这类操作注册到事务提交之后执行，事务回滚时不执行；不在事务中调用时立即执行
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * 事务提交后执行
+     *
+     * 注意：afterCommit 中抛出的异常会传给调用方，但事务已经提交，调用方需要自己处理失败
+     */
+    public static void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,185 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.LOCK_USER_KEY;
+
+/**
+ * 按用户加锁（一人一单等需要同一用户串行执行的业务）
+ *
+ * 为什么不再用 synchronized (userId.toString().intern())？
+ * - 每个下单用户都会在JVM字符串常量池中留下一个字符串，用户越多占用越大
+ * - 只能保证单个JVM内互斥，集群部署时同一用户的请求打到不同节点仍然会并发执行
+ *
+ * 两种模式（hmdp.lock.user.mode）：
+ * - local：固定大小的分段锁数组，用户ID哈希到其中一把锁，内存占用固定，不同用户偶尔共用一把锁
+ * - redis：Redis分布式锁（RedisLockService），集群内互斥，获取不到锁时最多等待 wait-ms 毫秒
+ *
+ * 每个业务（flow）单独统计加锁次数、发生竞争的次数、等待时间，用于评估串行化的代价
+ *
+ * @author sqkstwj
+ * @since 2025-10-25
+ */
+@Component
+public class UserLockRegistry {
+
+    @Resource
+    private RedisLockService redisLockService;
+
+    /**
+     * 加锁模式：local / redis
+     */
+    @Value("${hmdp.lock.user.mode:local}")
+    private String mode;
+
+    /**
+     * local模式的锁数量（向上取整为2的幂）
+     */
+    @Value("${hmdp.lock.user.stripes:1024}")
+    private int stripeCount;
+
+    /**
+     * redis模式获取锁的最长等待时间（毫秒）
+     */
+    @Value("${hmdp.lock.user.wait-ms:200}")
+    private long waitMillis;
+
+    private ReentrantLock[] stripes;
+
+    private final Map<String, LockStats> statsByFlow = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 持有用户锁执行业务
+     *
+     * @param flow   业务名称，用于区分锁和统计，例如 seckill
+     * @param userId 用户ID
+     * @param action 持有锁时执行的业务
+     * @param onBusy 获取锁失败时（redis模式等待超时）的返回值
+     * @return 业务结果
+     */
+    public <T> T executeWithLock(String flow, Long userId, Supplier<T> action, Supplier<T> onBusy) {
+        LockStats stats = statsByFlow.computeIfAbsent(flow, k -> new LockStats());
+        if ("redis".equalsIgnoreCase(mode)) {
+            return executeWithRedisLock(flow, userId, action, onBusy, stats);
+        }
+        return executeWithLocalLock(userId, action, stats);
+    }
+
+    private <T> T executeWithLocalLock(Long userId, Supplier<T> action, LockStats stats) {
+        ReentrantLock lock = stripes[stripeIndex(userId)];
+        stats.acquired.incrementAndGet();
+        // 先尝试无等待加锁，失败说明发生了竞争，再阻塞等待并统计等待时间
+        if (!lock.tryLock()) {
+            stats.contended.incrementAndGet();
+            long begin = System.nanoTime();
+            lock.lock();
+            stats.recordWait(System.nanoTime() - begin);
+        }
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <T> T executeWithRedisLock(String flow, Long userId, Supplier<T> action, Supplier<T> onBusy, LockStats stats) {
+        String key = LOCK_USER_KEY + flow + ":" + userId;
+        stats.acquired.incrementAndGet();
+        if (!redisLockService.tryLock(key)) {
+            stats.contended.incrementAndGet();
+            long begin = System.nanoTime();
+            // 等待锁释放通知，最多等待 wait-ms 毫秒（锁的有效期由看门狗维持）
+            boolean locked = redisLockService.tryLock(key, waitMillis, -1, TimeUnit.MILLISECONDS);
+            stats.recordWait(System.nanoTime() - begin);
+            if (!locked) {
+                stats.failed.incrementAndGet();
+                return onBusy.get();
+            }
+        }
+        try {
+            return action.get();
+        } finally {
+            // 事务已经提交，释放失败（锁已过期、Redis不可用）不能覆盖下单结果
+            redisLockService.unlockQuietly(key);
+        }
+    }
+
+    /**
+     * 用户ID哈希到锁数组下标（高位参与运算，避免连续ID集中在少数几把锁上）
+     */
+    private int stripeIndex(Long userId) {
+        int h = Long.hashCode(userId) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * 查询各业务的加锁统计
+     *
+     * - acquired：加锁次数
+     * - contended：发生竞争（需要等待）的次数
+     * - contentionRate：竞争比例
+     * - failed：等待超时获取锁失败的次数（仅redis模式）
+     * - avgWaitMs / maxWaitMs：发生竞争时的平均/最长等待时间
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", mode);
+        result.put("stripes", stripes.length);
+        Map<String, Object> flows = new LinkedHashMap<>();
+        statsByFlow.forEach((flow, stats) -> flows.put(flow, stats.toMap()));
+        result.put("flows", flows);
+        if ("redis".equalsIgnoreCase(mode)) {
+            result.put("redisLock", redisLockService.stats());
+        }
+        return result;
+    }
+
+    private static class LockStats {
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong contended = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private void recordWait(long nanos) {
+            waitNanos.addAndGet(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private Map<String, Object> toMap() {
+            long acquiredCount = acquired.get();
+            long contendedCount = contended.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("acquired", acquiredCount);
+            map.put("contended", contendedCount);
+            map.put("contentionRate", acquiredCount == 0 ? 0 : (double) contendedCount / acquiredCount);
+            map.put("failed", failed.get());
+            map.put("avgWaitMs", contendedCount == 0 ? 0 : waitNanos.get() / contendedCount / 1_000_000.0);
+            map.put("maxWaitMs", maxWaitNanos.get() / 1_000_000.0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+-- 点赞或取消点赞（已点赞时取消），同时记录点赞数的增量，由后台任务批量写回数据库
+-- KEYS[1]: 博客的点赞集合（用户id -> 点赞时间）
+-- KEYS[2]: 点赞数增量（博客id -> 增量）
+-- ARGV[1]: 用户id
+-- ARGV[2]: 点赞时间（毫秒）
+-- ARGV[3]: 博客id
+--
+-- 返回值：1 点赞；-1 取消点赞
+if redis.call('zscore', KEYS[1], ARGV[1]) then
+    redis.call('zrem', KEYS[1], ARGV[1])
+    redis.call('hincrby', KEYS[2], ARGV[3], -1)
+    return -1
+end
+redis.call('zadd', KEYS[1], ARGV[2], ARGV[1])
+redis.call('hincrby', KEYS[2], ARGV[3], 1)
+return 1
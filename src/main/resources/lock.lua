@@ -0,0 +1,12 @@
+-- 获取可重入锁（锁是一个hash：持有者标识 -> 重入次数）
+-- KEYS[1]: 锁的key
+-- ARGV[1]: 锁的有效期（毫秒）
+-- ARGV[2]: 持有者标识（节点ID:线程ID）
+--
+-- 返回值：nil 获取成功；否则返回锁的剩余有效期（毫秒），调用方据此决定最多等待多久
+if redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[2]) == 1 then
+    redis.call('hincrby', KEYS[1], ARGV[2], 1)
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    return nil
+end
+return redis.call('pttl', KEYS[1])
@@ -0,0 +1,9 @@
+-- 看门狗续期：仍然是锁的持有者时重置有效期
+-- KEYS[1]: 锁的key
+-- ARGV[1]: 锁的有效期（毫秒）
+-- ARGV[2]: 持有者标识（节点ID:线程ID）
+if redis.call('hexists', KEYS[1], ARGV[2]) == 1 then
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    return 1
+end
+return 0
@@ -0,0 +1,59 @@
+-- 秒杀资格判断脚本（库存 + 一人一单 + 时间窗口，整体原子执行）
+-- KEYS[1]: 库存key        seckill:stock:{voucherId}
+-- KEYS[2]: 已购用户集合key  seckill:order:{voucherId}
+-- KEYS[3]: 秒杀时间key     seckill:time:{voucherId}（hash: begin/end，毫秒时间戳）
+-- KEYS[4]: 订单消息队列     stream.orders
+-- ARGV[1]: 用户ID
+-- ARGV[2]: 当前时间（毫秒）
+-- ARGV[3]: 优惠券ID
+-- ARGV[4]: 订单ID
+-- ARGV[5]: 数据库库存分段编号（可选，仅分段库存的秒杀券）
+--
+-- 分段库存只拆分数据库的库存行（分散行锁），Redis中仍然是一个库存key（各分段库存之和）和一个购买记录集合，
+-- 每次秒杀只执行一次脚本；分段编号随订单消息发送，消费者从这个分段开始扣减数据库库存
+--
+-- 返回值：
+--  0 成功（已扣减Redis库存、记录用户，并把订单发送到Stream）
+--  1 库存不足
+--  2 重复下单
+--  3 秒杀尚未开始
+--  4 秒杀已经结束
+-- -1 秒杀券未预热到Redis（调用方需要先从数据库加载）
+
+local stock = redis.call('get', KEYS[1])
+if not stock then
+    return -1
+end
+
+-- 1. 判断秒杀时间
+local beginTime = redis.call('hget', KEYS[3], 'begin')
+local endTime = redis.call('hget', KEYS[3], 'end')
+local now = tonumber(ARGV[2])
+if beginTime and now < tonumber(beginTime) then
+    return 3
+end
+if endTime and now > tonumber(endTime) then
+    return 4
+end
+
+-- 2. 判断库存
+if tonumber(stock) <= 0 then
+    return 1
+end
+
+-- 3. 判断用户是否已经下过单
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    return 2
+end
+
+-- 4. 扣减库存，记录下单用户
+redis.call('incrby', KEYS[1], -1)
+redis.call('sadd', KEYS[2], ARGV[1])
+
+-- 5. 发送订单消息（和扣库存在同一个脚本里，要么都成功要么都不执行）
+if ARGV[5] then
+    redis.call('xadd', KEYS[4], '*', 'userId', ARGV[1], 'voucherId', ARGV[3], 'id', ARGV[4], 'stockSegment', ARGV[5])
+else
+    redis.call('xadd', KEYS[4], '*', 'userId', ARGV[1], 'voucherId', ARGV[3], 'id', ARGV[4])
+end
+return 0
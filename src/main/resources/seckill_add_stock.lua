@@ -0,0 +1,16 @@
+-- 补充秒杀库存（数据库事务提交后执行）
+-- KEYS[1]: 补充次数key     seckill:replenish:{voucherId}
+-- KEYS[2]: 库存key        seckill:stock:{voucherId}
+-- ARGV[1]: 增加的数量
+--
+-- 1. 补充次数加1：正在从数据库加载这张券的节点发现次数变了，会重新读取数据库库存
+-- 2. 库存key存在时才增加：还没有预热到Redis的券，首次秒杀时从数据库加载（已经包含补充的库存），不能凭空创建key
+-- 判断和增加在同一个脚本中，不会在判断之后被加载写入的旧库存覆盖
+--
+-- 返回值：1 已增加；0 库存key不存在
+redis.call('incr', KEYS[1])
+if redis.call('exists', KEYS[2]) == 1 then
+    redis.call('incrby', KEYS[2], ARGV[1])
+    return 1
+end
+return 0
@@ -0,0 +1,16 @@
+-- 从数据库加载秒杀库存到Redis（SETNX，多个节点同时加载也只会有一个生效）
+-- KEYS[1]: 补充次数key     seckill:replenish:{voucherId}
+-- KEYS[2]: 库存key        seckill:stock:{voucherId}
+-- ARGV[1]: 读取数据库库存之前读到的补充次数（key不存在为0）
+-- ARGV[2]: 数据库库存（分段库存的券为各分段库存之和）
+--
+-- 补充次数变了，说明读取数据库期间有库存补充：读到的可能是补充之前的库存，
+-- 而补充时库存key还不存在，没有加到Redis上，写入就会丢失补充的库存，返回0由调用方重新读取
+--
+-- 返回值：1 已写入（或库存key已经存在）；0 补充次数变了，需要重新读取数据库
+local replenished = redis.call('get', KEYS[1]) or '0'
+if replenished ~= ARGV[1] then
+    return 0
+end
+redis.call('setnx', KEYS[2], ARGV[2])
+return 1
@@ -0,0 +1,18 @@
+-- 释放可重入锁：只有持有者才能释放，重入次数减到0时删除锁并通知等待者
+-- KEYS[1]: 锁的key
+-- KEYS[2]: 锁释放通知频道
+-- ARGV[1]: 持有者标识（节点ID:线程ID）
+-- ARGV[2]: 锁的有效期（毫秒），重入次数未减到0时重置有效期
+--
+-- 返回值：-1 不是锁的持有者；0 重入次数减1，仍然持有；1 已经释放
+if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
+    return -1
+end
+local counter = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if counter > 0 then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 0
+end
+redis.call('del', KEYS[1])
+redis.call('publish', KEYS[2], KEYS[1])
+return 1
@@ -0,0 +1,11 @@
+-- 有序集合存在时才添加成员：集合不存在时由下一次查询从数据库全量重建，避免创建只有部分成员的集合
+-- KEYS[1]: 有序集合的key
+-- ARGV[1]: 分数
+-- ARGV[2]: 成员
+--
+-- 返回值：0 集合不存在；1 已添加或更新
+if redis.call('exists', KEYS[1]) == 0 then
+    return 0
+end
+redis.call('zadd', KEYS[1], ARGV[1], ARGV[2])
+return 1
@@ -0,0 +1,50 @@
+package com.hmdp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 秒杀券分段库存拆分测试类
+ *
+ * 测试目标：
+ * 1. 各分段库存之和等于总库存
+ * 2. 各分段库存最多相差1，余数分给前面的分段
+ * 3. 库存少于分段数时，后面的分段库存为0
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+class SeckillVoucherSegmentSplitTest {
+
+    /**
+     * 测试1：典型拆分
+     */
+    @Test
+    void testSplit() {
+        assertArrayEquals(new int[]{4, 3, 3}, ISeckillVoucherSegmentService.split(10, 3), "余数应该分给前面的分段");
+        assertArrayEquals(new int[]{25, 25, 25, 25}, ISeckillVoucherSegmentService.split(100, 4), "整除时各分段相同");
+        assertArrayEquals(new int[]{1, 1, 0, 0}, ISeckillVoucherSegmentService.split(2, 4), "库存少于分段数时后面的分段为0");
+        assertArrayEquals(new int[]{0, 0}, ISeckillVoucherSegmentService.split(0, 2), "库存为0时各分段都为0");
+    }
+
+    /**
+     * 测试2：各种库存和分段数下的总和与均匀性
+     */
+    @Test
+    void testSumAndBalance() {
+        for (int stock = 0; stock <= 500; stock++) {
+            for (int segments = 1; segments <= 16; segments++) {
+                int[] result = ISeckillVoucherSegmentService.split(stock, segments);
+                assertEquals(segments, result.length, "分段数量不正确");
+                assertEquals(stock, Arrays.stream(result).sum(), "各分段之和应该等于总库存：stock=" + stock + "，segments=" + segments);
+                for (int i = 1; i < result.length; i++) {
+                    assertTrue(result[i - 1] >= result[i] && result[i - 1] - result[i] <= 1,
+                            "各分段最多相差1且前面的不少于后面的：" + Arrays.toString(result));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.TypeReference;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 缓存编解码测试类（不需要Redis、MySQL）
+ *
+ * 测试目标：
+ * 1. 二进制编码：普通数据、逻辑过期数据、List 编码后解码得到相同的对象，null字段保持为null
+ * 2. 二进制编码：格式标识、版本号、逻辑过期标志不匹配或数据被截断时返回null（按未命中处理）
+ * 3. JSON编码：普通数据、逻辑过期数据的往返
+ * 4. JSON编码：能读取旧版本 CacheClient 直接写入的 RedisData 数据
+ * 5. 两种编码的格式标识互不冲突，CacheClient 可以按数据开头选择编码
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+class CacheCodecTest {
+
+    private static final Type SHOP_LIST_TYPE = new TypeReference<List<Shop>>() {}.getType();
+
+    private final BinaryCacheCodec binaryCodec = new BinaryCacheCodec();
+
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+
+    /**
+     * 测试1：二进制编码普通数据往返
+     *
+     * 验证：
+     * - 解码结果与原对象相同（包括负数、中文、纳秒）
+     * - 普通数据没有逻辑过期时间
+     */
+    @Test
+    void testBinaryRoundTrip() {
+        Shop shop = newShop(1L, "103茶餐厅");
+        shop.setAvgPrice(-1L).setUpdateTime(LocalDateTime.of(2025, 10, 27, 12, 30, 15, 123456789));
+
+        byte[] raw = binaryCodec.encode(shop);
+        System.out.println("二进制编码长度: " + raw.length + "，JSON编码长度: " + jsonCodec.encode(shop).length);
+
+        assertTrue(binaryCodec.canDecode(raw), "二进制编码的数据应该能被二进制编码解码");
+        assertFalse(jsonCodec.canDecode(raw), "二进制编码的数据不应该被JSON编码解码");
+        assertNull(binaryCodec.readExpireAt(raw), "普通数据没有逻辑过期时间");
+        assertEquals(shop, binaryCodec.decode(raw, Shop.class, false), "解码结果应该与原对象相同");
+    }
+
+    /**
+     * 测试2：二进制编码的null字段
+     */
+    @Test
+    void testBinaryNullFields() {
+        Shop shop = new Shop().setId(2L);
+
+        Shop decoded = binaryCodec.decode(binaryCodec.encode(shop), Shop.class, false);
+
+        assertEquals(shop, decoded, "null字段解码后应该仍然为null");
+    }
+
+    /**
+     * 测试3：二进制编码逻辑过期数据
+     *
+     * 验证：
+     * - 不解码数据就能读出逻辑过期时间
+     * - 按普通数据解码返回null，不会把过期时间当成数据
+     */
+    @Test
+    void testBinaryLogicalExpire() {
+        Shop shop = newShop(3L, "蔡馬洪涛烤肉");
+        long expireAt = System.currentTimeMillis() + 30_000;
+
+        byte[] raw = binaryCodec.encodeWithLogicalExpire(shop, expireAt);
+
+        assertEquals(expireAt, binaryCodec.readExpireAt(raw), "逻辑过期时间应该与写入时相同");
+        assertEquals(shop, binaryCodec.decode(raw, Shop.class, true), "逻辑过期数据解码结果应该与原对象相同");
+        assertNull(binaryCodec.decode(raw, Shop.class, false), "逻辑过期数据不能按普通数据解码");
+        assertNull(binaryCodec.decode(binaryCodec.encode(shop), Shop.class, true), "普通数据不能按逻辑过期数据解码");
+    }
+
+    /**
+     * 测试4：二进制编码List
+     */
+    @Test
+    void testBinaryList() {
+        List<Shop> shops = Arrays.asList(newShop(1L, "a"), newShop(2L, "b"), newShop(3L, "c"));
+
+        assertTrue(binaryCodec.canEncode(shops), "注册类型的List应该能编码");
+        List<Shop> decoded = binaryCodec.decode(binaryCodec.encode(shops), SHOP_LIST_TYPE, false);
+        assertEquals(shops, decoded, "List解码结果应该与原List相同");
+
+        List<Shop> empty = binaryCodec.decode(binaryCodec.encode(Collections.emptyList()), SHOP_LIST_TYPE, false);
+        assertEquals(Collections.emptyList(), empty, "空List解码后应该仍然为空");
+
+        assertNull(binaryCodec.decode(binaryCodec.encode(shops), Shop.class, false), "List不能按单个对象解码");
+        assertNull(binaryCodec.decode(binaryCodec.encode(shops.get(0)), SHOP_LIST_TYPE, false), "单个对象不能按List解码");
+    }
+
+    /**
+     * 测试5：二进制编码不支持的类型、错误的数据
+     *
+     * 验证：
+     * - 未注册的类型不能编码（由 CacheClient 改用JSON）
+     * - 类型不一致、版本号不一致、数据被截断时返回null，不抛出异常
+     */
+    @Test
+    void testBinaryRejectsMismatch() {
+        assertFalse(binaryCodec.canEncode("text"), "未注册的类型不能编码");
+        assertFalse(binaryCodec.canEncode(Collections.singletonList("text")), "未注册类型的List不能编码");
+
+        byte[] raw = binaryCodec.encode(newShop(1L, "a"));
+        assertNull(binaryCodec.decode(raw, ShopType.class, false), "类型不一致时应该返回null");
+
+        byte[] otherVersion = raw.clone();
+        otherVersion[1]++;
+        assertNull(binaryCodec.decode(otherVersion, Shop.class, false), "版本号不一致时应该返回null");
+
+        byte[] truncated = Arrays.copyOf(raw, raw.length / 2);
+        assertNull(binaryCodec.decode(truncated, Shop.class, false), "数据被截断时应该返回null");
+    }
+
+    /**
+     * 测试6：JSON编码普通数据、逻辑过期数据往返
+     */
+    @Test
+    void testJsonRoundTrip() {
+        Shop shop = newShop(4L, "开乐迪KTV");
+        long expireAt = System.currentTimeMillis() + 30_000;
+
+        byte[] raw = jsonCodec.encode(shop);
+        assertTrue(jsonCodec.canDecode(raw), "JSON编码的数据应该能被JSON编码解码");
+        assertFalse(binaryCodec.canDecode(raw), "JSON编码的数据不应该被二进制编码解码");
+        assertEquals(shop, jsonCodec.decode(raw, Shop.class, false), "解码结果应该与原对象相同");
+
+        byte[] logical = jsonCodec.encodeWithLogicalExpire(shop, expireAt);
+        assertEquals(expireAt, jsonCodec.readExpireAt(logical), "逻辑过期时间应该与写入时相同");
+        assertEquals(shop, jsonCodec.decode(logical, Shop.class, true), "逻辑过期数据解码结果应该与原对象相同");
+
+        List<Shop> shops = Arrays.asList(newShop(1L, "a"), newShop(2L, "b"));
+        assertEquals(shops, jsonCodec.decode(jsonCodec.encode(shops), SHOP_LIST_TYPE, false), "List解码结果应该与原List相同");
+    }
+
+    /**
+     * 测试7：读取旧版本写入的 RedisData
+     *
+     * 切换编码前 CacheClient 直接把 RedisData 转成JSON写入Redis，升级后这些数据仍然要能读取，
+     * 不能因为格式变化让所有逻辑过期的热点数据同时失效
+     */
+    @Test
+    void testJsonReadsLegacyRedisData() {
+        Shop shop = newShop(5L, "海底捞火锅");
+        LocalDateTime expireTime = LocalDateTime.of(2025, 10, 27, 12, 0, 0);
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(expireTime);
+        byte[] legacy = JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+
+        assertTrue(jsonCodec.canDecode(legacy), "旧数据应该由JSON编码解码");
+        assertEquals(expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), jsonCodec.readExpireAt(legacy),
+                "应该能读取旧数据的逻辑过期时间");
+        assertEquals(shop, jsonCodec.decode(legacy, Shop.class, true), "应该能读取旧数据中的商铺");
+    }
+
+    private static Shop newShop(Long id, String name) {
+        return new Shop()
+                .setId(id)
+                .setName(name)
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/a.jpg,https://qcloud.dpfile.com/pc/b.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
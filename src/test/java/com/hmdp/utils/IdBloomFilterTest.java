@@ -0,0 +1,183 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ID布隆过滤器测试类（local模式，不需要Redis）
+ *
+ * 测试目标：
+ * 1. 构建完成前所有ID都放行，不会误拒绝正常请求
+ * 2. 构建后所有放入的ID都判断为可能存在（没有漏判）
+ * 3. 不存在的ID的误判率接近配置的 fpp
+ * 4. 构建后新增的ID、构建期间新增的ID都能通过
+ * 5. 新增ID的广播丢失时，定时重新构建后能通过
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+class IdBloomFilterTest {
+
+    private static final int EXPECTED = 100_000;
+
+    private static final double FPP = 0.01;
+
+    /**
+     * 测试1：构建完成前全部放行
+     */
+    @Test
+    void testPassAllBeforeRebuild() {
+        IdBloomFilter filter = newFilter();
+
+        assertTrue(filter.mightContain(1L), "构建完成前应该放行");
+        assertTrue(filter.mightContain(Long.MAX_VALUE), "构建完成前应该放行");
+        assertTrue(filter.mightContain(null), "null应该放行，由后续逻辑处理");
+        assertEquals(false, filter.stats().get("ready"), "构建完成前不应该就绪");
+    }
+
+    /**
+     * 测试2：构建后的漏判和误判
+     *
+     * 验证：
+     * - 放入的 EXPECTED 个ID全部判断为可能存在
+     * - 另外 EXPECTED 个不存在的ID，误判率不超过 fpp 的两倍
+     */
+    @Test
+    void testNoFalseNegativesAndFpp() {
+        System.out.println("========== 测试2：漏判和误判 ==========");
+        IdBloomFilter filter = newFilter();
+        filter.rebuild(range(1, EXPECTED, 1000));
+
+        for (long id = 1; id <= EXPECTED; id++) {
+            assertTrue(filter.mightContain(id), "放入的ID不能被拒绝：" + id);
+        }
+
+        int falsePositives = 0;
+        for (long id = EXPECTED + 1; id <= EXPECTED * 2L; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / EXPECTED;
+        System.out.println("误判数: " + falsePositives + "，误判率: " + rate);
+        assertTrue(rate <= FPP * 2, "误判率应该接近 fpp，实际：" + rate);
+
+        Map<String, Object> stats = filter.stats();
+        System.out.println("过滤器状态: " + stats);
+        assertEquals((long) EXPECTED, stats.get("inserted"), "放入的元素数量应该等于构建的ID数量");
+        assertEquals((long) (EXPECTED - falsePositives), stats.get("rejected"), "拦截次数应该等于判断为不存在的次数");
+        System.out.println("✅ 漏判和误判测试通过！\n");
+    }
+
+    /**
+     * 测试3：构建后新增的ID
+     */
+    @Test
+    void testPutAfterRebuild() {
+        IdBloomFilter filter = newFilter();
+        filter.rebuild(range(1, 1000, 100));
+
+        long id = 5_000_000L;
+        filter.put(id);
+        filter.put(null);
+
+        assertTrue(filter.mightContain(id), "新增的ID应该能通过");
+        assertEquals(1001L, filter.stats().get("inserted"), "null不应该计入放入的元素数量");
+    }
+
+    /**
+     * 测试4：构建期间新增的ID
+     *
+     * 构建期间的 put 写入旧的位数组，替换时要合并到新位数组，不能被构建结果覆盖
+     */
+    @Test
+    void testPutDuringRebuild() {
+        IdBloomFilter filter = newFilter();
+        filter.rebuild(range(1, 1000, 100));
+
+        long during = 7_000_000L;
+        Function<Long, List<Long>> loader = range(1001, 2000, 100);
+        filter.rebuild(lastId -> {
+            if (lastId == 1500L) {
+                filter.put(during);
+            }
+            return loader.apply(lastId);
+        });
+
+        assertTrue(filter.mightContain(during), "构建期间新增的ID应该能通过");
+        assertTrue(filter.mightContain(1L), "上一次构建时已有的ID应该仍然能通过");
+        assertTrue(filter.mightContain(2000L), "本次构建的ID应该能通过");
+    }
+
+    /**
+     * 测试5：定时重新构建
+     *
+     * 其他节点新增的ID广播丢失（没有调用 put），定时重新构建从数据库加载后应该能通过
+     */
+    @Test
+    void testResyncPicksUpMissedIds() throws InterruptedException {
+        IdBloomFilter filter = new IdBloomFilter("test", "local", EXPECTED, FPP, null, null, 50);
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            ids.add(id);
+        }
+        try {
+            filter.rebuild(lastId -> {
+                List<Long> batch = new ArrayList<>();
+                synchronized (ids) {
+                    for (Long id : ids) {
+                        if (id > lastId && batch.size() < 100) {
+                            batch.add(id);
+                        }
+                    }
+                }
+                return batch;
+            });
+
+            long missed = 9_000_000L;
+            while (filter.mightContain(missed)) {
+                missed++;
+            }
+            synchronized (ids) {
+                ids.add(missed);
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!filter.mightContain(missed) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(filter.mightContain(missed), "定时重新构建后，广播丢失的ID应该能通过");
+            assertTrue(filter.mightContain(1L), "已有的ID应该仍然能通过");
+        } finally {
+            filter.close();
+        }
+    }
+
+    private static IdBloomFilter newFilter() {
+        return new IdBloomFilter("test", "local", EXPECTED, FPP, null, null);
+    }
+
+    /**
+     * 模拟按id分批查询：返回 (lastId, to] 中的前 batchSize 个id
+     */
+    private static Function<Long, List<Long>> range(long from, long to, int batchSize) {
+        return lastId -> {
+            long start = Math.max(lastId + 1, from);
+            if (start > to) {
+                return Collections.emptyList();
+            }
+            List<Long> ids = new ArrayList<>(batchSize);
+            for (long id = start; id <= to && ids.size() < batchSize; id++) {
+                ids.add(id);
+            }
+            return ids;
+        };
+    }
+}
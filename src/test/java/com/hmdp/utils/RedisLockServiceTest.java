@@ -0,0 +1,125 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Redis分布式锁测试类（需要本地Redis）
+ *
+ * 测试目标：
+ * 1. 可重入：同一线程获取两次，释放两次后才真正释放
+ * 2. 非持有者释放：抛出异常（unlockQuietly返回false），不影响持有者
+ * 3. 等待者被释放通知唤醒，不需要等到超时
+ *
+ * @author sqkstwj
+ * @since 2025-10-28
+ */
+@SpringBootTest
+class RedisLockServiceTest {
+
+    private static final String KEY = "lock:test:redis-lock-service";
+
+    @Resource
+    private RedisLockService redisLockService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @AfterEach
+    void tearDown() {
+        stringRedisTemplate.delete(KEY);
+    }
+
+    /**
+     * 测试1：可重入获取和释放
+     */
+    @Test
+    void testReentrant() {
+        assertTrue(redisLockService.tryLock(KEY), "第一次获取应该成功");
+        assertTrue(redisLockService.tryLock(KEY), "同一线程重入应该成功");
+
+        redisLockService.unlock(KEY);
+        assertTrue(redisLockService.isHeldByCurrentThread(KEY), "只释放一次，仍然持有锁");
+        assertEquals(Boolean.TRUE, stringRedisTemplate.hasKey(KEY), "只释放一次，锁不应该被删除");
+
+        redisLockService.unlock(KEY);
+        assertFalse(redisLockService.isHeldByCurrentThread(KEY), "释放两次后不再持有锁");
+        assertNotEquals(Boolean.TRUE, stringRedisTemplate.hasKey(KEY), "释放两次后锁应该被删除");
+    }
+
+    /**
+     * 测试2：非持有者释放
+     *
+     * 其他线程不能释放当前线程的锁：unlock 抛出 IllegalMonitorStateException，unlockQuietly 返回false，锁仍然有效
+     */
+    @Test
+    void testUnlockByNonHolder() {
+        assertTrue(redisLockService.tryLock(KEY));
+        try {
+            Throwable error = CompletableFuture.supplyAsync(() -> {
+                try {
+                    redisLockService.unlock(KEY);
+                    return null;
+                } catch (Throwable e) {
+                    return e;
+                }
+            }).join();
+            assertTrue(error instanceof IllegalMonitorStateException, "非持有者释放应该抛出 IllegalMonitorStateException");
+
+            Boolean released = CompletableFuture.supplyAsync(() -> redisLockService.unlockQuietly(KEY)).join();
+            assertFalse(released, "非持有者 unlockQuietly 应该返回false");
+
+            assertTrue(redisLockService.isHeldByCurrentThread(KEY), "非持有者释放后，锁仍然属于持有者");
+            assertFalse(CompletableFuture.supplyAsync(() -> redisLockService.tryLock(KEY)).join(),
+                    "其他线程仍然不能获取锁");
+        } finally {
+            redisLockService.unlock(KEY);
+        }
+        // 已经释放的锁再释放一次不抛出异常
+        assertFalse(redisLockService.unlockQuietly(KEY));
+    }
+
+    /**
+     * 测试3：等待者被释放通知唤醒
+     *
+     * 锁的有效期由看门狗维持（30秒），等待者最多等待5秒；
+     * 持有者释放后等待者应该马上获取到锁，而不是等到超时或锁过期
+     */
+    @Test
+    void testWaiterWokenByRelease() throws Exception {
+        assertTrue(redisLockService.tryLock(KEY));
+        long wakeupsBefore = (Long) redisLockService.stats().get("wakeups");
+        CountDownLatch waiting = new CountDownLatch(1);
+        CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() -> {
+            waiting.countDown();
+            long begin = System.currentTimeMillis();
+            boolean locked = redisLockService.tryLock(KEY, 5, -1, TimeUnit.SECONDS);
+            long elapsed = System.currentTimeMillis() - begin;
+            if (locked) {
+                redisLockService.unlock(KEY);
+                return elapsed;
+            }
+            return -1L;
+        });
+
+        assertTrue(waiting.await(1, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        long releasedAt = System.currentTimeMillis();
+        redisLockService.unlock(KEY);
+
+        long elapsed = waiter.get(10, TimeUnit.SECONDS);
+        System.out.println("等待者获取锁耗时: " + elapsed + "ms，释放后: " + (System.currentTimeMillis() - releasedAt) + "ms");
+        assertTrue(elapsed > 0, "等待者应该在释放后获取到锁");
+        assertTrue(elapsed < 2000, "等待者应该被释放通知唤醒，而不是等到超时，实际：" + elapsed + "ms");
+        assertTrue((Long) redisLockService.stats().get("wakeups") > wakeupsBefore, "应该记录一次唤醒");
+    }
+}
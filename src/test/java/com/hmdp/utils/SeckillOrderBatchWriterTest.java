@@ -0,0 +1,232 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 秒杀订单组提交测试类
+ *
+ * 测试目标：
+ * 1. 整批写入成功时所有消息都可以ACK，不逐条写入
+ * 2. 批内去重：同一条消息重复投递只保留一条，同一用户的不同订单整批拒绝
+ * 3. 重复投递的消息（订单已经写入）和写入成功一样ACK
+ * 4. 整批被拒绝时退化为逐条写入，被拒绝的订单转入死信队列，不影响其他订单
+ * 5. 数据库不可用时和业务拒绝区分开：第一条失败就停止，剩余消息留待重试
+ *
+ * @author sqkstwj
+ * @since 2025-10-28
+ */
+class SeckillOrderBatchWriterTest {
+
+    private static final long VOUCHER_ID = 10L;
+
+    /**
+     * 内存中的订单库：和 createVoucherOrderBatch / createVoucherOrder 的校验规则一致
+     */
+    private static class FakeOrderStore {
+
+        final Map<String, Long> orders = new HashMap<>();
+        int stock;
+        boolean available = true;
+        int batchCalls;
+        int singleCalls;
+
+        FakeOrderStore(int stock) {
+            this.stock = stock;
+        }
+
+        void writeBatch(List<VoucherOrder> voucherOrders) {
+            batchCalls++;
+            checkAvailable();
+            Map<String, VoucherOrder> orderMap = SeckillOrderBatchWriter.dedupe(voucherOrders);
+            for (Map.Entry<String, Long> existing : orders.entrySet()) {
+                VoucherOrder pending = orderMap.get(existing.getKey());
+                if (pending == null) {
+                    continue;
+                }
+                if (!pending.getId().equals(existing.getValue())) {
+                    throw new SeckillOrderRejectedException("用户已经购买过一次");
+                }
+                orderMap.remove(existing.getKey());
+            }
+            if (stock < orderMap.size()) {
+                throw new SeckillOrderRejectedException("数据库库存不足");
+            }
+            stock -= orderMap.size();
+            orderMap.forEach((key, order) -> orders.put(key, order.getId()));
+        }
+
+        void writeSingle(VoucherOrder order) {
+            singleCalls++;
+            checkAvailable();
+            Long existing = orders.get(SeckillOrderBatchWriter.key(order));
+            if (existing != null) {
+                if (existing.equals(order.getId())) {
+                    return;
+                }
+                throw new SeckillOrderRejectedException("用户已经购买过一次");
+            }
+            if (stock < 1) {
+                throw new SeckillOrderRejectedException("数据库库存不足");
+            }
+            stock--;
+            orders.put(SeckillOrderBatchWriter.key(order), order.getId());
+        }
+
+        private void checkAvailable() {
+            if (!available) {
+                throw new IllegalStateException("数据库不可用");
+            }
+        }
+    }
+
+    private static VoucherOrder order(long id, long userId) {
+        VoucherOrder order = new VoucherOrder();
+        order.setId(id);
+        order.setUserId(userId);
+        order.setVoucherId(VOUCHER_ID);
+        return order;
+    }
+
+    private static List<String> recordsOf(List<VoucherOrder> orders) {
+        List<String> records = new ArrayList<>(orders.size());
+        orders.forEach(order -> records.add("record-" + order.getId()));
+        return records;
+    }
+
+    private static SeckillOrderBatchWriter<String> writerOf(FakeOrderStore store) {
+        return new SeckillOrderBatchWriter<>(store::writeBatch, store::writeSingle);
+    }
+
+    /**
+     * 测试1：整批写入成功
+     */
+    @Test
+    void testBatchSucceeds() {
+        FakeOrderStore store = new FakeOrderStore(10);
+        List<VoucherOrder> orders = Arrays.asList(order(1, 101), order(2, 102), order(3, 103));
+
+        SeckillOrderBatchWriter.Outcome<String> outcome = writerOf(store).write(recordsOf(orders), orders);
+
+        assertTrue(outcome.isBatched());
+        assertTrue(outcome.isComplete());
+        assertEquals(recordsOf(orders), outcome.getWritten());
+        assertTrue(outcome.getRejected().isEmpty());
+        assertEquals(0, store.singleCalls, "整批成功时不应该逐条写入");
+        assertEquals(7, store.stock);
+    }
+
+    /**
+     * 测试2：批内去重
+     */
+    @Test
+    void testDedupe() {
+        // 同一条消息重复投递（例如被认领后又从pending-list读到）只保留一条
+        Map<String, VoucherOrder> orderMap = SeckillOrderBatchWriter.dedupe(
+                Arrays.asList(order(1, 101), order(2, 102), order(1, 101)));
+        assertEquals(2, orderMap.size());
+
+        // 同一用户同一张券的不同订单，整批拒绝
+        assertThrows(SeckillOrderRejectedException.class,
+                () -> SeckillOrderBatchWriter.dedupe(Arrays.asList(order(1, 101), order(2, 101))));
+
+        // 重复投递的两条消息都可以ACK，库存只扣一次
+        FakeOrderStore store = new FakeOrderStore(10);
+        List<VoucherOrder> orders = Arrays.asList(order(1, 101), order(2, 102), order(1, 101));
+        SeckillOrderBatchWriter.Outcome<String> outcome = writerOf(store).write(recordsOf(orders), orders);
+        assertTrue(outcome.isBatched());
+        assertEquals(3, outcome.getWritten().size());
+        assertEquals(8, store.stock);
+    }
+
+    /**
+     * 测试3：重复投递的消息（订单已经写入）
+     */
+    @Test
+    void testRedeliveredOrderIsAcknowledged() {
+        FakeOrderStore store = new FakeOrderStore(10);
+        store.writeSingle(order(1, 101));
+
+        List<VoucherOrder> orders = Arrays.asList(order(1, 101), order(2, 102));
+        SeckillOrderBatchWriter.Outcome<String> outcome = writerOf(store).write(recordsOf(orders), orders);
+
+        assertTrue(outcome.isBatched(), "重复投递不是拒绝，整批应该写入成功");
+        assertEquals(recordsOf(orders), outcome.getWritten());
+        assertEquals(8, store.stock, "已经写入的订单不应该重复扣库存");
+    }
+
+    /**
+     * 测试4：整批被拒绝，退化为逐条写入
+     *
+     * 第二条订单的用户已经有其他订单：只有它转入死信队列，前后的订单（包括重复投递的订单）都正常写入
+     */
+    @Test
+    void testRejectedOrderDoesNotBlockOthers() {
+        FakeOrderStore store = new FakeOrderStore(10);
+        store.writeSingle(order(1, 101));
+        store.writeSingle(order(99, 102));
+        store.singleCalls = 0;
+
+        List<VoucherOrder> orders = Arrays.asList(order(1, 101), order(2, 102), order(3, 103), order(4, 104));
+        List<String> records = recordsOf(orders);
+        SeckillOrderBatchWriter.Outcome<String> outcome = writerOf(store).write(records, orders);
+
+        assertFalse(outcome.isBatched());
+        assertNotNull(outcome.getBatchRejection(), "业务拒绝应该和数据库故障区分开");
+        assertNull(outcome.getBatchFailure());
+        assertTrue(outcome.isComplete(), "被拒绝的订单转入死信队列，这批消息已经处理完");
+        assertEquals(Arrays.asList("record-1", "record-3", "record-4"), outcome.getWritten());
+        assertEquals(1, outcome.getRejected().size());
+        assertEquals("用户已经购买过一次", outcome.getRejected().get("record-2"));
+        assertEquals(4, store.singleCalls);
+        assertEquals(6, store.stock);
+    }
+
+    /**
+     * 测试5：库存不足时只拒绝卖不出去的订单
+     */
+    @Test
+    void testInsufficientStockRejectsOnlyOverflow() {
+        FakeOrderStore store = new FakeOrderStore(2);
+        List<VoucherOrder> orders = Arrays.asList(order(1, 101), order(2, 102), order(3, 103));
+
+        SeckillOrderBatchWriter.Outcome<String> outcome = writerOf(store).write(recordsOf(orders), orders);
+
+        assertNotNull(outcome.getBatchRejection());
+        assertTrue(outcome.isComplete());
+        assertEquals(Arrays.asList("record-1", "record-2"), outcome.getWritten());
+        assertEquals("数据库库存不足", outcome.getRejected().get("record-3"));
+        assertEquals(0, store.stock);
+    }
+
+    /**
+     * 测试6：数据库不可用
+     *
+     * 整批失败不是业务拒绝：逐条写入第一条失败就停止，没有消息被ACK或转入死信队列，全部留待重试
+     */
+    @Test
+    void testOutageLeavesOrdersForRetry() {
+        FakeOrderStore store = new FakeOrderStore(10);
+        store.available = false;
+        List<VoucherOrder> orders = Arrays.asList(order(1, 101), order(2, 102), order(3, 103));
+
+        SeckillOrderBatchWriter.Outcome<String> outcome = writerOf(store).write(recordsOf(orders), orders);
+
+        assertFalse(outcome.isBatched());
+        assertNull(outcome.getBatchRejection());
+        assertNotNull(outcome.getBatchFailure());
+        assertFalse(outcome.isComplete());
+        assertEquals(1, store.singleCalls, "第一条失败后不应该继续尝试剩余订单");
+        assertEquals(1L, outcome.getFailedOrder().getId());
+        assertTrue(outcome.getWritten().isEmpty());
+        assertTrue(outcome.getRejected().isEmpty(), "数据库故障不能把订单转入死信队列");
+    }
+}
@@ -0,0 +1,205 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商铺坐标本地网格索引测试类（不需要Redis、MySQL）
+ *
+ * 测试目标：
+ * 1. 查询结果与暴力计算（遍历所有商铺，按 distance 排序）完全一致
+ * 2. 高纬度地区经度方向的网格变窄，提前结束扫描时不会漏掉商铺
+ * 3. 修改坐标、修改类型、删除商铺后查询结果正确
+ * 4. 全量构建期间的修改不会被构建结果覆盖
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+class ShopGeoIndexTest {
+
+    private ShopGeoIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopGeoIndex();
+        ReflectionTestUtils.setField(index, "cellDegrees", 0.01);
+    }
+
+    /**
+     * 测试1：与暴力计算对比
+     *
+     * 验证：
+     * - 随机生成的商铺和查询点，不同半径、不同数量下，返回的商铺id和顺序都与暴力计算相同
+     */
+    @Test
+    void testMatchesBruteForce() {
+        System.out.println("========== 测试1：与暴力计算对比 ==========");
+        Random random = new Random(20251027L);
+        List<Shop> shops = randomShops(random, 20_000, 120.15, 30.28, 0.3);
+        index.rebuild(loader(shops));
+        assertTrue(index.isReady(), "构建后应该就绪");
+
+        double[] radii = {300, 1000, 5000, 30000};
+        int[] limits = {1, 10, 100};
+        for (int i = 0; i < 200; i++) {
+            long typeId = 1 + random.nextInt(3);
+            double x = 120.15 + (random.nextDouble() - 0.5) * 0.6;
+            double y = 30.28 + (random.nextDouble() - 0.5) * 0.6;
+            double radius = radii[i % radii.length];
+            int limit = limits[i % limits.length];
+            assertEquals(bruteForce(shops, typeId, x, y, radius, limit), ids(index.nearby(typeId, x, y, radius, limit)),
+                    "查询结果应该与暴力计算相同：typeId=" + typeId + "，x=" + x + "，y=" + y + "，radius=" + radius);
+        }
+        System.out.println("索引状态: " + index.stats());
+        System.out.println("✅ 与暴力计算对比测试通过！\n");
+    }
+
+    /**
+     * 测试2：高纬度地区
+     *
+     * 纬度越高经度方向的网格越窄，半径内北侧商铺所在的网格比查询点所在的网格窄得多，
+     * 扫描的圈数要按半径内的最高纬度估算，否则会漏掉东西两侧偏北的商铺
+     */
+    @Test
+    void testHighLatitude() {
+        ReflectionTestUtils.setField(index, "cellDegrees", 0.5);
+        Random random = new Random(7L);
+        List<Shop> shops = new ArrayList<>();
+        for (long id = 1; id <= 5_000; id++) {
+            shops.add(new Shop()
+                    .setId(id)
+                    .setTypeId(1L)
+                    .setX((random.nextDouble() - 0.5) * 180)
+                    .setY(83 + random.nextDouble() * 6));
+        }
+        index.rebuild(loader(shops));
+
+        for (int i = 0; i < 50; i++) {
+            double x = (random.nextDouble() - 0.5) * 20;
+            double y = 84 + random.nextDouble() * 2;
+            assertEquals(bruteForce(shops, 1L, x, y, 500_000, 10_000), ids(index.nearby(1L, x, y, 500_000, 10_000)),
+                    "高纬度查询结果应该与暴力计算相同：x=" + x + "，y=" + y);
+        }
+    }
+
+    /**
+     * 测试3：修改和删除
+     */
+    @Test
+    void testPutAndRemove() {
+        index.rebuild(loader(Collections.emptyList()));
+        index.put(1L, 1L, 120.150, 30.280);
+        index.put(2L, 1L, 120.151, 30.280);
+
+        assertEquals(listOf(1L, 2L), ids(index.nearby(1L, 120.150, 30.280, 1000, 10)), "新增的商铺应该能查到");
+
+        // 修改坐标：商铺1移动到10公里外
+        index.put(1L, 1L, 120.250, 30.280);
+        assertEquals(listOf(2L), ids(index.nearby(1L, 120.150, 30.280, 1000, 10)), "移走的商铺不应该在原位置查到");
+        assertEquals(listOf(1L), ids(index.nearby(1L, 120.250, 30.280, 1000, 10)), "移走的商铺应该在新位置查到");
+
+        // 修改类型
+        index.put(2L, 2L, 120.151, 30.280);
+        assertTrue(index.nearby(1L, 120.150, 30.280, 1000, 10).isEmpty(), "修改类型后不应该在旧类型中查到");
+        assertEquals(listOf(2L), ids(index.nearby(2L, 120.150, 30.280, 1000, 10)), "修改类型后应该在新类型中查到");
+
+        // 坐标为空视为删除
+        index.put(2L, 2L, null, null);
+        assertTrue(index.nearby(2L, 120.150, 30.280, 1000, 10).isEmpty(), "坐标为空的商铺不应该被查到");
+
+        index.remove(1L);
+        assertTrue(index.nearby(1L, 120.250, 30.280, 1000, 10).isEmpty(), "删除的商铺不应该被查到");
+    }
+
+    /**
+     * 测试4：构建期间的修改
+     *
+     * 验证：
+     * - 构建期间新增的商铺（加载时还没有读到）仍然存在
+     * - 构建期间修改的商铺使用修改后的坐标，而不是加载到的旧坐标
+     * - 构建期间删除的商铺不会被加载到的旧数据加回来
+     */
+    @Test
+    void testWritesDuringRebuild() {
+        List<Shop> shops = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            shops.add(new Shop().setId(id).setTypeId(1L).setX(120.15 + id * 0.0001).setY(30.28));
+        }
+        index.rebuild(loader(shops));
+
+        Function<Long, List<Shop>> loader = loader(shops);
+        index.rebuild(lastId -> {
+            if (lastId == 100L) {
+                // 加载到一半时：新增商铺1000，把商铺200移到10公里外，删除商铺250
+                index.put(1000L, 1L, 120.16, 30.28);
+                index.put(200L, 1L, 120.25, 30.28);
+                index.remove(250L);
+            }
+            return loader.apply(lastId);
+        });
+
+        List<Long> near = ids(index.nearby(1L, 120.16, 30.28, 5000, 1000));
+        assertTrue(near.contains(1000L), "构建期间新增的商铺应该存在");
+        assertFalse(near.contains(200L), "构建期间修改的商铺不应该在旧位置");
+        assertFalse(near.contains(250L), "构建期间删除的商铺不应该存在");
+        assertEquals(299, near.size(), "其余商铺都应该存在");
+        assertEquals(listOf(200L), ids(index.nearby(1L, 120.25, 30.28, 100, 10)), "构建期间修改的商铺应该在新位置");
+    }
+
+    private static List<Shop> randomShops(Random random, int count, double x, double y, double spanDegrees) {
+        List<Shop> shops = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            shops.add(new Shop()
+                    .setId(id)
+                    .setTypeId(1L + random.nextInt(3))
+                    .setX(x + (random.nextDouble() - 0.5) * spanDegrees)
+                    .setY(y + (random.nextDouble() - 0.5) * spanDegrees));
+        }
+        return shops;
+    }
+
+    /**
+     * 遍历所有商铺，按距离排序后取前 limit 个
+     */
+    private static List<Long> bruteForce(List<Shop> shops, long typeId, double x, double y, double radius, int limit) {
+        return shops.stream()
+                .filter(shop -> shop.getTypeId() == typeId)
+                .filter(shop -> ShopGeoIndex.distance(x, y, shop.getX(), shop.getY()) <= radius)
+                .sorted(Comparator.comparingDouble(shop -> ShopGeoIndex.distance(x, y, shop.getX(), shop.getY())))
+                .limit(limit)
+                .map(Shop::getId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 模拟按id分批查询（商铺按id升序）
+     */
+    private static Function<Long, List<Shop>> loader(List<Shop> shops) {
+        return lastId -> shops.stream()
+                .filter(shop -> shop.getId() > lastId)
+                .limit(100)
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<ShopGeoIndex.Hit> hits) {
+        return hits.stream().map(ShopGeoIndex.Hit::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> listOf(Long... ids) {
+        List<Long> list = new ArrayList<>();
+        Collections.addAll(list, ids);
+        return list;
+    }
+}
@@ -0,0 +1,187 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商铺名称本地倒排索引测试类（不需要MySQL）
+ *
+ * 测试目标：
+ * 1. 排序：名称以查询词开头 > 名称包含查询词 > 只有地址包含查询词，同分时名称短、id小的在前
+ * 2. 匹配与 LIKE '%keyword%' 一致：二元组都出现但不相邻时不返回，忽略空白和大小写
+ * 3. 分页：各页拼接后与一次查询全部结果相同，没有重复和遗漏
+ * 4. 修改、删除商铺后查询结果正确，已删除的文档过多时自动压缩
+ * 5. 全量构建期间的修改不会被构建结果覆盖
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+class ShopNameIndexTest {
+
+    private ShopNameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopNameIndex();
+    }
+
+    /**
+     * 测试1：排序
+     */
+    @Test
+    void testRanking() {
+        index.rebuild(loader(Arrays.asList(
+                shop(1L, "海底捞火锅", "滨江区江南大道"),
+                shop(2L, "火锅店", "西湖区文三路"),
+                shop(3L, "小龙坎火锅", "上城区解放路"),
+                shop(4L, "锅火烧烤", "拱墅区湖墅南路"),
+                shop(5L, "川味小馆", "火锅街1号"),
+                shop(6L, "火 锅", "余杭区文一西路"))));
+        assertTrue(index.isReady(), "构建后应该就绪");
+
+        // 6、2 以"火锅"开头（6的名称更短）；1、3 包含"火锅"（长度相同按id）；5 只有地址包含；4 只有单字
+        assertEquals(Arrays.asList(6L, 2L, 1L, 3L, 5L), index.search("火锅", 0, 10), "排序不正确");
+        assertEquals(Arrays.asList(4L, 6L, 2L, 1L, 3L, 5L), index.search("锅", 0, 10), "单字查询的排序不正确");
+        assertTrue(index.search("涮肉", 0, 10).isEmpty(), "没有商铺包含的词不应该有结果");
+        assertTrue(index.search("  ", 0, 10).isEmpty(), "空白查询词不应该有结果");
+    }
+
+    /**
+     * 测试2：与 LIKE '%keyword%' 一致
+     *
+     * 验证：
+     * - 查询词的二元组都出现但不相邻时不返回
+     * - 重复字组成的查询词（二元组去重后只有一个）也要求完整包含
+     * - 忽略空白，英文不区分大小写
+     */
+    @Test
+    void testMatchesLike() {
+        index.rebuild(loader(Arrays.asList(
+                shop(1L, "火锅·锅店", "杭州"),
+                shop(2L, "老火锅店", "杭州"),
+                shop(3L, "aa小吃", "杭州"),
+                shop(4L, "aaa小吃", "杭州"),
+                shop(5L, "KFC 肯德基", "杭州"))));
+
+        assertEquals(Collections.singletonList(2L), index.search("火锅店", 0, 10), "二元组不相邻时不应该返回");
+        assertEquals(Collections.singletonList(4L), index.search("aaa", 0, 10), "应该要求完整包含重复字组成的查询词");
+        assertEquals(Collections.singletonList(5L), index.search("kfc肯德基", 0, 10), "应该忽略空白和大小写");
+    }
+
+    /**
+     * 测试3：分页
+     */
+    @Test
+    void testPagination() {
+        List<Shop> shops = new ArrayList<>();
+        for (long id = 1; id <= 53; id++) {
+            shops.add(shop(id, (id % 3 == 0 ? "咖啡" : "精品咖啡") + id, "杭州"));
+        }
+        index.rebuild(loader(shops));
+
+        List<Long> all = index.search("咖啡", 0, 100);
+        assertEquals(53, all.size(), "应该返回所有包含查询词的商铺");
+        List<Long> paged = new ArrayList<>();
+        for (int from = 0; ; from += 10) {
+            List<Long> page = index.search("咖啡", from, 10);
+            if (page.isEmpty()) {
+                break;
+            }
+            assertTrue(page.size() <= 10, "每页不应该超过size");
+            paged.addAll(page);
+        }
+        assertEquals(all, paged, "分页拼接后应该与一次查询相同");
+        assertTrue(index.search("咖啡", 53, 10).isEmpty(), "超出结果数量的页应该为空");
+    }
+
+    /**
+     * 测试4：修改、删除和压缩
+     */
+    @Test
+    void testPutRemoveAndCompact() {
+        System.out.println("========== 测试4：修改、删除和压缩 ==========");
+        List<Shop> shops = new ArrayList<>();
+        for (long id = 1; id <= 2000; id++) {
+            shops.add(shop(id, "面馆" + id, "杭州"));
+        }
+        index.rebuild(loader(shops));
+
+        index.put(1L, "牛肉面", "杭州");
+        assertFalse(index.search("面馆", 0, 3000).contains(1L), "修改后不应该按旧名称查到");
+        assertEquals(Collections.singletonList(1L), index.search("牛肉面", 0, 10), "修改后应该按新名称查到");
+
+        index.remove(2L);
+        assertFalse(index.search("面馆", 0, 3000).contains(2L), "删除后不应该查到");
+
+        // 修改的商铺越来越多，已删除的文档达到阈值后压缩
+        for (long id = 3; id <= 1000; id++) {
+            index.put(id, "拉面" + id, "杭州");
+        }
+        Map<String, Object> stats = index.stats();
+        System.out.println("索引状态: " + stats);
+        assertEquals(1999, stats.get("docs"), "压缩后只保留未删除的文档");
+        assertEquals(0, stats.get("deletedDocs"), "压缩后没有已删除的文档");
+        assertEquals(1000, index.search("面馆", 0, 3000).size(), "压缩后未修改的商铺仍然能查到");
+        assertEquals(Collections.singletonList(500L), index.search("拉面500", 0, 10), "压缩后修改的商铺仍然能查到");
+        System.out.println("✅ 修改、删除和压缩测试通过！\n");
+    }
+
+    /**
+     * 测试5：构建期间的修改
+     *
+     * 验证：
+     * - 构建期间新增的商铺（加载时还没有读到）仍然存在
+     * - 构建期间修改的商铺使用修改后的名称，而不是加载到的旧名称
+     * - 构建期间删除的商铺不会被加载到的旧数据加回来
+     */
+    @Test
+    void testWritesDuringRebuild() {
+        List<Shop> shops = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            shops.add(shop(id, "茶餐厅" + id, "杭州"));
+        }
+        index.rebuild(loader(shops));
+
+        Function<Long, List<Shop>> loader = loader(shops);
+        index.rebuild(lastId -> {
+            if (lastId == 100L) {
+                index.put(1000L, "茶餐厅1000", "杭州");
+                index.put(200L, "甜品店", "杭州");
+                index.remove(250L);
+            }
+            return loader.apply(lastId);
+        });
+
+        List<Long> ids = index.search("茶餐厅", 0, 1000);
+        assertTrue(ids.contains(1000L), "构建期间新增的商铺应该存在");
+        assertFalse(ids.contains(200L), "构建期间修改的商铺不应该按旧名称查到");
+        assertFalse(ids.contains(250L), "构建期间删除的商铺不应该存在");
+        assertEquals(299, ids.size(), "其余商铺都应该存在");
+        assertEquals(Collections.singletonList(200L), index.search("甜品店", 0, 10), "构建期间修改的商铺应该按新名称查到");
+    }
+
+    private static Shop shop(Long id, String name, String address) {
+        return new Shop().setId(id).setName(name).setAddress(address);
+    }
+
+    /**
+     * 模拟按id分批查询（商铺按id升序）
+     */
+    private static Function<Long, List<Shop>> loader(List<Shop> shops) {
+        return lastId -> shops.stream()
+                .filter(shop -> shop.getId() > lastId)
+                .limit(100)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,212 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求合并测试类
+ *
+ * 测试目标：
+ * 1. 同一个key并发请求时只加载一次，所有请求拿到同一个结果
+ * 2. 加载失败时等待的请求收到同样的异常
+ * 3. 加载结束后移除key，后续请求重新加载
+ * 4. 等待超时抛出 TimeoutException
+ * 5. 批量请求只加载没有在加载中的key
+ *
+ * @author sqkstwj
+ * @since 2025-10-27
+ */
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    /**
+     * 测试1：并发请求只加载一次
+     */
+    @Test
+    void testConcurrentLoadOnce() throws Exception {
+        System.out.println("========== 测试1：并发请求只加载一次 ==========");
+        int waiters = 9;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(waiters + 1);
+        try {
+            // leader 加载时阻塞，直到所有请求都在等待
+            Future<String> leader = pool.submit(() -> singleFlight.execute("shop:1", () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "value";
+            }, 5, TimeUnit.SECONDS));
+            waitUntil(() -> ((Number) singleFlight.stats().get("inFlight")).intValue() == 1);
+
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < waiters; i++) {
+                results.add(pool.submit(() -> singleFlight.execute("shop:1", () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                }, 5, TimeUnit.SECONDS)));
+            }
+            waitUntil(() -> ((Number) singleFlight.stats().get("shared")).intValue() == waiters);
+            release.countDown();
+
+            assertEquals("value", leader.get(5, TimeUnit.SECONDS), "leader应该返回加载结果");
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS), "等待的请求应该拿到leader的结果");
+            }
+            assertEquals(1, loads.get(), "只应该加载一次");
+            System.out.println("统计: " + singleFlight.stats());
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.println("✅ 并发请求只加载一次测试通过！\n");
+    }
+
+    /**
+     * 测试2：加载失败
+     */
+    @Test
+    void testFailurePropagates() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = pool.submit(() -> singleFlight.execute("shop:1", () -> {
+                await(release);
+                throw new IllegalStateException("数据库异常");
+            }, 5, TimeUnit.SECONDS));
+            waitUntil(() -> ((Number) singleFlight.stats().get("inFlight")).intValue() == 1);
+            Future<String> waiter = pool.submit(() -> singleFlight.execute("shop:1", () -> "other", 5, TimeUnit.SECONDS));
+            waitUntil(() -> ((Number) singleFlight.stats().get("shared")).intValue() == 1);
+            release.countDown();
+
+            for (Future<String> future : Arrays.asList(leader, waiter)) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("加载失败时应该抛出异常");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException, "应该收到加载时的异常");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals("retry", singleFlight.execute("shop:1", () -> "retry", 1, TimeUnit.SECONDS),
+                "失败后key应该被移除，后续请求重新加载");
+    }
+
+    /**
+     * 测试3：加载结束后重新加载
+     */
+    @Test
+    void testReloadAfterComplete() throws TimeoutException {
+        assertEquals("v1", singleFlight.execute("shop:1", () -> "v1", 1, TimeUnit.SECONDS), "第一次加载");
+        assertEquals("v2", singleFlight.execute("shop:1", () -> "v2", 1, TimeUnit.SECONDS), "加载结束后不应该拿到旧结果");
+        assertEquals(0, ((Number) singleFlight.stats().get("inFlight")).intValue(), "加载结束后不应该有正在加载的key");
+    }
+
+    /**
+     * 测试4：等待超时
+     */
+    @Test
+    void testWaiterTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            pool.submit(() -> singleFlight.execute("shop:1", () -> {
+                await(release);
+                return "value";
+            }, 5, TimeUnit.SECONDS));
+            waitUntil(() -> ((Number) singleFlight.stats().get("inFlight")).intValue() == 1);
+
+            assertThrows(TimeoutException.class,
+                    () -> singleFlight.execute("shop:1", () -> "other", 50, TimeUnit.MILLISECONDS),
+                    "leader没有返回时应该等待超时");
+            assertEquals(1L, singleFlight.stats().get("timeouts"), "应该记录一次超时");
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 测试5：批量请求
+     *
+     * 验证：
+     * - 重复的key只加载一次
+     * - 加载结果中没有的key视为不存在，不出现在返回结果中
+     * - 其他线程正在加载的key不再加载，等待其结果
+     */
+    @Test
+    void testExecuteAll() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        Map<String, String> result = singleFlight.executeAll(Arrays.asList("a", "b", "a", "missing"), keys -> {
+            batches.add(keys);
+            Map<String, String> values = new HashMap<>();
+            keys.stream().filter(key -> !"missing".equals(key)).forEach(key -> values.put(key, key.toUpperCase()));
+            return values;
+        }, 1, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "missing")), batches, "重复的key应该只加载一次");
+        assertEquals(2, result.size(), "不存在的key不应该出现在结果中");
+        assertEquals("A", result.get("a"), "批量加载结果不正确");
+
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            pool.submit(() -> singleFlight.execute("c", () -> {
+                await(release);
+                return "C";
+            }, 5, TimeUnit.SECONDS));
+            waitUntil(() -> ((Number) singleFlight.stats().get("inFlight")).intValue() == 1);
+            batches.clear();
+            Future<Map<String, String>> future = pool.submit(() ->
+                    singleFlight.executeAll(Arrays.asList("c", "d"), keys -> {
+                        batches.add(keys);
+                        Map<String, String> values = new HashMap<>();
+                        keys.forEach(key -> values.put(key, key.toUpperCase()));
+                        return values;
+                    }, 5, TimeUnit.SECONDS));
+            waitUntil(() -> !batches.isEmpty());
+            release.countDown();
+
+            Map<String, String> mixed = future.get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(Arrays.asList("d")), batches, "正在加载的key不应该再次加载");
+            assertEquals("C", mixed.get("c"), "应该拿到其他线程的加载结果");
+            assertEquals("D", mixed.get("d"), "应该拿到自己的加载结果");
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+}